@@ -1,8 +1,17 @@
 package dt.core;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * This class provides a skeletal implementation of the
@@ -17,6 +26,26 @@ abstract public class AbstractDecisionTreeLearner {
 	
 	protected Problem problem;
 	
+	/**
+	 * By default, nodes with fewer examples than this are not worth
+	 * scoring in parallel.
+	 */
+	public static final int DEFAULT_MIN_PARALLEL_NODE_SIZE = 10000;
+	
+	/**
+	 * By default, an attribute chosen from a sample is wrong with at
+	 * most about this probability (see setSampleSize).
+	 */
+	public static final double DEFAULT_SAMPLE_DELTA = 1e-7;
+	
+	protected ExecutorService executor;
+	protected int minParallelNodeSize = DEFAULT_MIN_PARALLEL_NODE_SIZE;
+	protected MetricsSink metrics;
+	protected SplitCriterion criterion = SplitCriterion.INFORMATION_GAIN;
+	protected int sampleSize = 0;
+	protected double sampleDelta = DEFAULT_SAMPLE_DELTA;
+	protected long sampleSeed = 1;
+	
 	/**
 	 * Construct and return a new DecisionTreeLearner for the given Problem.
 	 */
@@ -24,12 +53,114 @@ abstract public class AbstractDecisionTreeLearner {
 		this.problem = problem;
 	}
 	
+	/**
+	 * Score candidate attributes in parallel using the given executor
+	 * (typically a ForkJoinPool), or serially if it is null (the default).
+	 * The chosen attribute is always the same as the serial one.
+	 */
+	public void setExecutor(ExecutorService executor) {
+		this.executor = executor;
+	}
+	
+	/**
+	 * Set the number of examples below which a node's attributes are
+	 * scored serially even if there is an executor, since for small nodes
+	 * the scheduling costs more than it saves.
+	 */
+	public void setMinParallelNodeSize(int minParallelNodeSize) {
+		this.minParallelNodeSize = minParallelNodeSize;
+	}
+	
+	/**
+	 * Tell the given MetricsSink (for example a TreeMetrics) about the
+	 * nodes built, the splits chosen and the rows scanned as trees are
+	 * learned, or nothing if it's null (the default).
+	 */
+	public void setMetrics(MetricsSink metrics) {
+		this.metrics = metrics;
+	}
+	
+	/**
+	 * Choose the attribute to split on (and the threshold, for a
+	 * NumericVariable) by the given SplitCriterion rather than by
+	 * information gain (the default).
+	 */
+	public void setSplitCriterion(SplitCriterion criterion) {
+		this.criterion = criterion;
+	}
+	
+	/**
+	 * Choose the attribute for nodes with more examples than the given
+	 * number from a random sample of that many of them, or from all of
+	 * them if it's 0 (the default). The sample's choice is only taken if
+	 * its score beats the next best by more than the Hoeffding bound for
+	 * the sample size (see HoeffdingTreeLearner and setSampleDelta);
+	 * otherwise the attributes are scored on all the examples after all.
+	 * For a NumericVariable, the threshold always comes from all of them.
+	 * <p>
+	 * Near the root, where there are many examples and usually a clear
+	 * winner, this saves a pass over all of them for every attribute at
+	 * the cost of a small chance of a different tree. Rows with weights
+	 * are sampled like any others and keep their weights, and the bound is
+	 * for the sample's effective size, (sum of weights)^2 / (sum of squared
+	 * weights), which is less than its number of rows if they differ.
+	 * HistogramDecisionTreeLearner and OutOfCoreDecisionTreeLearner, which
+	 * choose from counts they keep anyway, ignore this.
+	 */
+	public void setSampleSize(int sampleSize) {
+		this.sampleSize = sampleSize;
+	}
+	
+	/**
+	 * Set the allowed chance of choosing a different attribute from a
+	 * sample than from all the examples (default DEFAULT_SAMPLE_DELTA).
+	 */
+	public void setSampleDelta(double sampleDelta) {
+		this.sampleDelta = sampleDelta;
+	}
+	
+	/**
+	 * Set the seed for the random numbers used to draw samples. Each
+	 * node's sample is drawn with its own Random, seeded from this and
+	 * the node's examples (see nodeSeed), so the same examples give the
+	 * same tree even if the nodes are learned in parallel.
+	 */
+	public void setSampleSeed(long sampleSeed) {
+		this.sampleSeed = sampleSeed;
+	}
+	
 	/**
 	 * Compute and return a DecisionTree for this DecisionTreeLearner's
 	 * Problem using the given Set of Examples.
+	 * If they are all views of the same Dataset, they are learned from
+	 * as a new RowSet of their rows (the given Set is left as it is).
 	 */
 	public DecisionTree learn(Set<Example> examples) {
-		return learn(examples, problem.getInputs(), Collections.emptySet());
+		long start = System.nanoTime();
+		Dataset dataset = CountTable.commonDataset(examples);
+		if (dataset != null) {
+			examples = new RowSet(dataset, CountTable.rowsOf(examples));
+		}
+		return learned(learn(examples, problem.getInputs(), Collections.emptySet()), start);
+	}
+	
+	/**
+	 * Tell the MetricsSink, if there is one, that the given DecisionTree
+	 * was learned starting at the given System.nanoTime, and return it.
+	 */
+	protected DecisionTree learned(DecisionTree tree, long start) {
+		if (metrics != null) {
+			metrics.treeLearned(tree, System.nanoTime() - start);
+		}
+		return tree;
+	}
+	
+	/**
+	 * Compute and return a DecisionTree for this DecisionTreeLearner's
+	 * Problem using the rows of the given Dataset as Examples.
+	 */
+	public DecisionTree learn(Dataset dataset) {
+		return learn(new RowSet(dataset));
 	}
 	
 	/**
@@ -57,19 +188,329 @@ abstract public class AbstractDecisionTreeLearner {
 	/**
 	 * Return the variable with the maximum information gain based on the
 	 * given examples, per AIMA Section 18.3.4.
-	 * Note that this is not cheap to compute...
+	 * This fills in a CountTable for all the attributes (see
+	 * CountTable.count) and computes all the gains from it.
+	 * The gain of a NumericVariable is that of its best threshold (see
+	 * NumericSplitter). If there's a SplitCriterion other than information
+	 * gain (see setSplitCriterion), its scores are used instead of gains.
+	 * For nodes with many examples, they may be scored on a sample (see
+	 * setSampleSize).
 	 */
 	protected Variable mostImportantVariable(List<Variable> attributes, Set<Example> examples) {
-		Variable maxvar = null;
+		return mostImportantVariable(attributes, examples, null);
+	}
+	
+	/**
+	 * Return the variable with the maximum information gain, as above. If
+	 * it's a NumericVariable whose best split was found on all the given
+	 * examples, and the given array isn't null, also put the split in its
+	 * first element, so that it needn't be found again.
+	 */
+	protected Variable mostImportantVariable(List<Variable> attributes, Set<Example> examples, NumericSplitter.Split[] split) {
+		if (sampleSize > 0 && attributes.size() > 1 && examples.size() > sampleSize) {
+			Variable a = mostImportantVariableFromSample(attributes, examples);
+			if (a != null) {
+				return a;
+			}
+		}
+		if (metrics == null) {
+			return bestVariable(attributes, examples, split);
+		}
+		long start = System.nanoTime();
+		Variable a = bestVariable(attributes, examples, split);
+		splitSearched(attributes, examples, System.nanoTime() - start);
+		return a;
+	}
+	
+	/**
+	 * Return the variable with the maximum information gain, as for
+	 * mostImportantVariable (including its split), scoring the attributes
+	 * in parallel if there's an executor and enough examples.
+	 */
+	protected Variable bestVariable(List<Variable> attributes, Set<Example> examples, NumericSplitter.Split[] split) {
+		NumericSplitter.Split[] splits = new NumericSplitter.Split[attributes.size()];
+		int best;
+		if (executor != null && attributes.size() > 1 && examples.size() >= minParallelNodeSize) {
+			best = indexOfMaxInParallel(attributes, examples, splits);
+		} else {
+			best = indexOfMax(gains(attributes, examples, splits));
+		}
+		if (split != null) {
+			split[0] = splits[best];
+		}
+		return attributes.get(best);
+	}
+	
+	/**
+	 * Return the variable with the maximum information gain (or score) on
+	 * a random sample of sampleSize of the given examples, if it beats the
+	 * next best by more than the Hoeffding bound for that many examples,
+	 * otherwise null.
+	 */
+	protected Variable mostImportantVariableFromSample(List<Variable> attributes, Set<Example> examples) {
+		long start = metrics != null ? System.nanoTime() : 0;
+		Set<Example> sample = sample(examples, sampleSize, new Random(nodeSeed(attributes, examples)));
+		double[] gains = gains(attributes, sample);
+		if (metrics != null) {
+			splitSearched(attributes, sample, System.nanoTime() - start);
+		}
+		int best = indexOfMax(gains);
+		double second = Double.NEGATIVE_INFINITY;
+		for (int i=0; i < gains.length; i++) {
+			if (i != best && gains[i] > second) {
+				second = gains[i];
+			}
+		}
+		if (gains[best] == Double.NEGATIVE_INFINITY) {
+			return null;
+		}
+		double r = criterion.range(problem.getOutput().domain.size());
+		double epsilon = Math.sqrt(r*r * Math.log(1.0/sampleDelta) / (2.0*effectiveSize(sample)));
+		return gains[best] - second > epsilon ? attributes.get(best) : null;
+	}
+	
+	/**
+	 * Return the number of unweighted examples the given ones are worth
+	 * for the Hoeffding bound: (sum of weights)^2 / (sum of squared
+	 * weights), which is their number if their weights are all the same.
+	 */
+	protected static double effectiveSize(Set<Example> examples) {
+		double sum = 0;
+		double sumOfSquares = 0;
+		for (Example e : examples) {
+			double w = e.getWeight();
+			sum += w;
+			sumOfSquares += w*w;
+		}
+		return sum * sum / sumOfSquares;
+	}
+	
+	/**
+	 * Return the seed for the Random drawing the sample of the node with
+	 * the given attributes and examples: sampleSeed mixed with how many of
+	 * each there are and the rows of its first few examples, so that
+	 * different nodes of the same size get different samples.
+	 */
+	protected long nodeSeed(List<Variable> attributes, Set<Example> examples) {
+		long seed = (sampleSeed * 31 + attributes.size()) * 31 + examples.size();
+		if (examples instanceof RowSet) {
+			RowSet rs = (RowSet)examples;
+			for (int i=0; i < Math.min(8, rs.size()); i++) {
+				seed = seed * 31 + rs.getRow(i);
+			}
+		} else {
+			Iterator<Example> iterator = examples.iterator();
+			for (int i=0; i < 8 && iterator.hasNext(); i++) {
+				Example e = iterator.next();
+				seed = seed * 31 + (e.dataset != null ? e.row : 0);
+			}
+		}
+		return seed;
+	}
+	
+	/**
+	 * Return a uniform random sample of k of the given examples, drawn
+	 * with the given Random. For a RowSet, or examples that are all views
+	 * of one Dataset, it's a RowSet of their rows.
+	 */
+	protected static Set<Example> sample(Set<Example> examples, int k, Random random) {
+		int[] positions = reservoir(examples.size(), k, random);
+		if (examples instanceof RowSet) {
+			RowSet rs = (RowSet)examples;
+			int[] rows = new int[k];
+			for (int i=0; i < k; i++) {
+				rows[i] = rs.getRow(positions[i]);
+			}
+			return new RowSet(rs.getDataset(), rows);
+		}
+		// Otherwise pick them out as they go by
+		List<Example> picked = new ArrayList<Example>(k);
+		Iterator<Example> iterator = examples.iterator();
+		int position = 0;
+		for (int i=0; i < k; i++) {
+			Example e;
+			do {
+				e = iterator.next();
+			} while (position++ < positions[i]);
+			picked.add(e);
+		}
+		Dataset dataset = CountTable.commonDataset(examples);
+		if (dataset != null) {
+			int[] rows = new int[k];
+			for (int i=0; i < k; i++) {
+				rows[i] = picked.get(i).row;
+			}
+			return new RowSet(dataset, rows);
+		}
+		return new HashSet<Example>(picked);
+	}
+	
+	/**
+	 * Return k distinct positions chosen uniformly from 0 to n-1, in order,
+	 * where k is at most n. They're drawn by reservoir sampling (Li's
+	 * Algorithm L), which skips over the positions not chosen, so it
+	 * takes time proportional to k log(n/k) rather than to n.
+	 */
+	protected static int[] reservoir(int n, int k, Random random) {
+		int[] reservoir = RowSet.identity(k);
+		if (k < n) {
+			double w = Math.exp(Math.log(1.0 - random.nextDouble()) / k);
+			long i = k - 1;
+			while (true) {
+				// Skip ahead to the next position to replace one with
+				double next = i + 1 + Math.floor(Math.log(1.0 - random.nextDouble()) / Math.log(1.0 - w));
+				if (next >= n) {
+					break;
+				}
+				i = (long)next;
+				reservoir[random.nextInt(k)] = (int)i;
+				w *= Math.exp(Math.log(1.0 - random.nextDouble()) / k);
+			}
+			Arrays.sort(reservoir);
+		}
+		return reservoir;
+	}
+	
+	/**
+	 * Tell the MetricsSink that choosing among the given attributes for the
+	 * given examples took the given time, and about how many rows it
+	 * scanned and bytes it allocated: a pass and a CountTable for the
+	 * categorical attributes (or a pass each, in parallel), and a pass
+	 * and an array of rows for each numeric one.
+	 */
+	protected void splitSearched(List<Variable> attributes, Set<Example> examples, long nanos) {
+		int n = examples.size();
+		boolean parallel = executor != null && attributes.size() > 1 && n >= minParallelNodeSize;
+		int noutputs = problem.getOutput().domain.size();
+		int ncategorical = 0;
+		long cells = 0;
+		long nrows = 0;
+		long nbytes = 0;
+		for (Variable v : attributes) {
+			if (v instanceof NumericVariable) {
+				nrows += n;
+				nbytes += 4L * n;
+			} else {
+				ncategorical += 1;
+				cells += (long)(v.domain.size() + 1) * noutputs;
+			}
+		}
+		if (ncategorical > 0) {
+			nrows += parallel ? (long)ncategorical * n : n;
+		}
+		nbytes += 4 * cells;
+		metrics.splitSearched(n, attributes.size(), nanos);
+		metrics.rowsScanned(nrows, nbytes);
+	}
+	
+	/**
+	 * Return the information gains (or scores by the SplitCriterion) of the
+	 * given attributes based on the given examples, in the same order.
+	 */
+	protected double[] gains(List<Variable> attributes, Set<Example> examples) {
+		return gains(attributes, examples, null);
+	}
+	
+	/**
+	 * Return the gains of the given attributes as above, and if the given
+	 * array isn't null, put the best split of each NumericVariable in it
+	 * at the same index (null if there isn't one).
+	 */
+	protected double[] gains(List<Variable> attributes, Set<Example> examples, NumericSplitter.Split[] splits) {
+		double[] gains = new double[attributes.size()];
+		List<Variable> categorical = new ArrayList<Variable>(attributes.size());
+		NumericSplitter splitter = null;
+		for (int i=0; i < gains.length; i++) {
+			Variable a = attributes.get(i);
+			if (a instanceof NumericVariable) {
+				if (splitter == null) {
+					splitter = new NumericSplitter(problem.getOutput(), examples, criterion);
+				}
+				NumericSplitter.Split split = splitter.bestSplit((NumericVariable)a);
+				gains[i] = split == null ? Double.NEGATIVE_INFINITY : split.gain;
+				if (splits != null) {
+					splits[i] = split;
+				}
+			} else {
+				categorical.add(a);
+			}
+		}
+		if (!categorical.isEmpty()) {
+			CountTable table = new CountTable(categorical, problem.getOutput()).count(examples);
+			double h = table.impurity(criterion);
+			int j = 0;
+			for (int i=0; i < gains.length; i++) {
+				if (!(attributes.get(i) instanceof NumericVariable)) {
+					gains[i] = table.score(j++, criterion, h);
+				}
+			}
+		}
+		return gains;
+	}
+	
+	/**
+	 * Return the index of the maximum of the given gains.
+	 * Ties go to the one that comes first.
+	 */
+	protected static int indexOfMax(double[] gains) {
+		int best = -1;
 		double maxgain = 0;
-		for (Variable a : attributes) {
-			double g = gain(a, examples);
-			if (maxvar == null || g > maxgain) {
-				maxvar = a;
-				maxgain = g;
+		for (int i=0; i < gains.length; i++) {
+			if (best == -1 || gains[i] > maxgain) {
+				best = i;
+				maxgain = gains[i];
 			}
 		}
-		return maxvar;
+		return best;
+	}
+	
+	/**
+	 * Score each of the given attributes as a separate task on this
+	 * DecisionTreeLearner's executor, then return the index of the best in
+	 * attribute order, exactly like indexOfMax, so that ties are broken
+	 * the same way and the tree is the same as the serial one. The best
+	 * split of each NumericVariable is put in the given array at the same
+	 * index.
+	 */
+	protected int indexOfMaxInParallel(List<Variable> attributes, final Set<Example> examples, final NumericSplitter.Split[] splits) {
+		final Variable output = problem.getOutput();
+		final Dataset dataset = CountTable.commonDataset(examples);
+		final int[] rows = dataset != null ? CountTable.rowsOf(examples) : null;
+		List<Callable<Double>> tasks = new ArrayList<Callable<Double>>(attributes.size());
+		for (int i=0; i < attributes.size(); i++) {
+			final Variable a = attributes.get(i);
+			final int index = i;
+			tasks.add(new Callable<Double>() {
+				public Double call() {
+					if (a instanceof NumericVariable) {
+						// Each task sets its own element; get() makes it visible
+						NumericSplitter.Split split = new NumericSplitter(output, examples, criterion).bestSplit((NumericVariable)a);
+						splits[index] = split;
+						return split == null ? Double.NEGATIVE_INFINITY : split.gain;
+					}
+					CountTable table = new CountTable(Collections.singletonList(a), output);
+					if (dataset != null) {
+						table.count(dataset, rows, 0, rows.length);
+					} else {
+						table.count(examples);
+					}
+					return table.score(0, criterion, table.impurity(criterion));
+				}
+			});
+		}
+		try {
+			List<Future<Double>> futures = executor.invokeAll(tasks);
+			double[] gains = new double[futures.size()];
+			for (int i=0; i < gains.length; i++) {
+				gains[i] = futures.get(i).get();
+			}
+			return indexOfMax(gains);
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("interrupted while scoring attributes", ex);
+		} catch (ExecutionException ex) {
+			throw new RuntimeException("error scoring attributes", ex.getCause());
+		}
 	}
 	
 	//
@@ -85,7 +526,7 @@ abstract public class AbstractDecisionTreeLearner {
 	 */
 	protected double gain_boolean(Variable a, Variable outputVar, Set<Example> examples) {
 		int p = countPositiveExamples(examples);
-		int n = examples.size() - p;
+		int n = CountTable.weightOf(examples) - p;
 		return B((double)p/(p+n)) - remainder_boolean(a, outputVar, examples, p, n);
 	}
 	
@@ -103,7 +544,7 @@ abstract public class AbstractDecisionTreeLearner {
 				continue;
 			}
 			int pk = countPositiveExamples(ek);
-			int nk = ek.size() - pk;
+			int nk = CountTable.weightOf(ek) - pk;
 			result += (double)(pk+nk)/(p+n) * B((double)pk/(pk+nk));
 		}
 		return result;
@@ -127,14 +568,15 @@ abstract public class AbstractDecisionTreeLearner {
 	}
 	
 	/**
-	 * Return the number of examples with "Yes" for the output value.
+	 * Return the number of examples with "Yes" for the output value,
+	 * counting each as many times as its weight.
 	 * Not used in the general case, just the AIMA Boolean example.
 	 */
 	protected int countPositiveExamples(Set<Example> examples) {
 		int result = 0;
 		for (Example e : examples) {
 			if (e.getOutputValue().equals(YesNoDomain.YES)) {
-				result += 1;
+				result += e.getWeight();
 			}
 		}
 		return result;
@@ -150,10 +592,11 @@ abstract public class AbstractDecisionTreeLearner {
 	 * of its values from the given Examples.
 	 * For variable V with values vk:
 	 * H(V) = \sum_k P(vk)*log_2(1/P(vk)) = -\sum_k P(vk)*log_2(Pvk)
+	 * The probabilities are weighted by the Examples' weights.
 	 */
 	protected double H(Variable var, Set<Example> examples) {
 		double result = 0;
-		int n = examples.size();
+		int n = CountTable.weightOf(examples);
 		for (String vk : var.domain) {
 			int nk = countExamplesWithValueForAttribute(examples, var, vk);
 			double pk = (double)nk / n;
@@ -167,7 +610,7 @@ abstract public class AbstractDecisionTreeLearner {
 	 */
 	protected double H(Set<Example> examples) {
 		double result = 0;
-		int n = examples.size();
+		int n = CountTable.weightOf(examples);
 		for (String vk : problem.getOutput().domain) {
 			int nk = countExamplesWithValueForOutput(examples, vk);
 			if (nk > 0) {
@@ -183,32 +626,34 @@ abstract public class AbstractDecisionTreeLearner {
 	 * and Ek = subset of T for which a=vk:
 	 * IG(T,a) = H(T) - \sum_vk { |Ek|/|T| * H(Ek) }
 	 * This is the general case of the Boolean version done in AIMA.
+	 * Computed from a CountTable rather than the subsets Ek.
 	 */
 	protected double gain(Variable a, Set<Example> examples) {
-		return H(examples) - remainder(a, examples);
+		if (a instanceof NumericVariable) {
+			return new NumericSplitter(problem.getOutput(), examples).gain((NumericVariable)a);
+		}
+		return new CountTable(Collections.singletonList(a), problem.getOutput()).count(examples).gain(0);
 	}
 	
 	/**
 	 * Return the expected entropy remaining after testing attribute a. 
 	 * This is the general case of the Boolean version done in AIMA.
+	 * Computed from a CountTable rather than the subsets Ek.
 	 */
 	protected double remainder(Variable a, Set<Example> examples) {
-		double result = 0;
-		for (String vk : a.domain) {
-			Set<Example> Ek = examplesWithValueForAttribute(examples, a, vk);
-			if (Ek.size() == 0) {
-				continue;
-			}
-			result += (double)Ek.size()/examples.size() * H(Ek);
+		if (a instanceof NumericVariable) {
+			return H(examples) - gain(a, examples);
 		}
-		return result;
+		return new CountTable(Collections.singletonList(a), problem.getOutput()).count(examples).remainder(0);
 	}
 	
+	protected static final double LN2 = Math.log(2.0);
+	
 	/**
 	 * Return log base 2 of the given number.
 	 */
 	protected double log2(double x) {
-		return Math.log(x) / Math.log(2.0);
+		return Math.log(x) / LN2;
 	}
 	
 	/**
@@ -217,12 +662,14 @@ abstract public class AbstractDecisionTreeLearner {
 	abstract protected Set<Example> examplesWithValueForAttribute(Set<Example> examples, Variable a, String vk);
 	
 	/**
-	 * Return the number of the given examples for which Variable a has value vk.
+	 * Return the number of the given examples for which Variable a has value vk,
+	 * counting each as many times as its weight.
 	 */
 	abstract protected int countExamplesWithValueForAttribute(Set<Example> examples, Variable a, String vk);
 
 	/**
-	 * Return the number of the given examples for which the output has value vk.
+	 * Return the number of the given examples for which the output has value vk,
+	 * counting each as many times as its weight.
 	 */
 	abstract protected int countExamplesWithValueForOutput(Set<Example> examples, String vk);
 
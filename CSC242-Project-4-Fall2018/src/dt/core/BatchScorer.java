@@ -0,0 +1,254 @@
+package dt.core;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A BatchScorer runs a CompiledDecisionTree over a data file without
+ * reading it all into memory. The file is in the format read by
+ * Problem.readExamplesFromCSVFile, except that the output value at the
+ * end of each line is optional. Lines are read in chunks, the chunks
+ * are scored on a pool of threads, and the predictions are written to
+ * an output file, one per line in the same order as the input, with an
+ * empty line for each blank line so that the lines still match up.
+ * Only a few chunks per thread are in memory at any time.
+ * <p>
+ * Rather than printing every row like DecisionTree.test, it returns
+ * summary statistics (see Result).
+ */
+public class BatchScorer {
+
+	/**
+	 * By default, this many lines are scored as one task.
+	 */
+	public static final int DEFAULT_CHUNK_SIZE = 8192;
+
+	protected CompiledDecisionTree tree;
+	protected int nthreads;
+	protected int chunkSize;
+
+	/**
+	 * Construct and return a new BatchScorer for the given
+	 * CompiledDecisionTree using the given number of threads and lines
+	 * per chunk.
+	 */
+	public BatchScorer(CompiledDecisionTree tree, int nthreads, int chunkSize) {
+		this.tree = tree;
+		this.nthreads = nthreads;
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Construct and return a new BatchScorer for the given
+	 * CompiledDecisionTree with one thread per available processor.
+	 */
+	public BatchScorer(CompiledDecisionTree tree) {
+		this(tree, Runtime.getRuntime().availableProcessors(), DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * Summary statistics for a run of a BatchScorer.
+	 */
+	public static class Result {
+		/** Number of rows scored */
+		public long nrows;
+		/** Number of rows that had an output value to compare to */
+		public long nlabelled;
+		/** Number of those for which the prediction was correct */
+		public long ncorrect;
+		/** Elapsed time in nanoseconds */
+		public long nanos;
+
+		/**
+		 * Return the proportion of labelled rows predicted correctly.
+		 */
+		public double accuracy() {
+			return nlabelled == 0 ? Double.NaN : (double)ncorrect / nlabelled;
+		}
+
+		/**
+		 * Return the number of rows scored per second.
+		 */
+		public double rowsPerSecond() {
+			return nrows / (nanos / 1e9);
+		}
+
+		public String toString() {
+			return String.format("rows: %d, correct: %d/%d (%.2f%%), %.3fs, %.0f rows/s",
+					nrows, ncorrect, nlabelled, accuracy() * 100, nanos / 1e9, rowsPerSecond());
+		}
+	}
+
+	/**
+	 * A chunk of lines, with the line number of the first one,
+	 * and the results of scoring them (null for blank lines).
+	 */
+	protected class Chunk implements Callable<Chunk> {
+		long firstLine;
+		List<String> lines;
+		String[] predictions;
+		long nlabelled;
+		long ncorrect;
+
+		Chunk(long firstLine, List<String> lines) {
+			this.firstLine = firstLine;
+			this.lines = lines;
+		}
+
+		public Chunk call() throws IOException {
+			Variable output = tree.problem.getOutput();
+			int ninputs = tree.inputs.length;
+			int[] codes = new int[ninputs];
+			double[] numbers = new double[ninputs];
+			predictions = new String[lines.size()];
+			for (int i=0; i < lines.size(); i++) {
+				String line = lines.get(i);
+				if (line.isEmpty()) {
+					// Blank lines aren't scored, as by readExamplesFromCSVFile
+					continue;
+				}
+				int start = 0;
+				int outputCode = -1;
+				for (int j=0; j <= ninputs; j++) {
+					int end = line.indexOf(',', start);
+					if (end < 0) {
+						end = line.length();
+					}
+					if (j == ninputs) {
+						if (start < line.length()) {
+							outputCode = code(output, line.substring(start, end), i);
+						}
+					} else {
+						if (start > line.length()) {
+							throw new IOException("line " + (firstLine+i) + ": expected " + ninputs + " values");
+						}
+						if (tree.numeric[j]) {
+							numbers[j] = number(tree.inputs[j], line.substring(start, end), i);
+						} else {
+							codes[j] = code(tree.inputs[j], line.substring(start, end), i);
+						}
+					}
+					start = end + 1;
+				}
+				if (start <= line.length()) {
+					throw new IOException("line " + (firstLine+i) + ": expected at most " + (ninputs+1) + " values, got more");
+				}
+				int prediction = tree.evalCode(codes, numbers);
+				predictions[i] = output.domain.get(prediction);
+				if (outputCode >= 0) {
+					nlabelled += 1;
+					if (outputCode == prediction) {
+						ncorrect += 1;
+					}
+				}
+			}
+			lines = null;
+			return this;
+		}
+
+		protected int code(Variable var, String value, int i) throws IOException {
+			int code = var.domain.indexOf(value);
+			if (code < 0) {
+				throw new IOException("line " + (firstLine+i) + ": unknown value for " + var + ": " + value);
+			}
+			return code;
+		}
+
+		protected double number(Variable var, String value, int i) throws IOException {
+			double x;
+			try {
+				x = Double.parseDouble(value);
+			} catch (NumberFormatException ex) {
+				x = Double.NaN;
+			}
+			if (Double.isNaN(x)) {
+				throw new IOException("line " + (firstLine+i) + ": not a number for " + var + ": " + value);
+			}
+			return x;
+		}
+	}
+
+	/**
+	 * Score the lines of the given input file, write the predictions to the
+	 * given output file, and return the summary statistics.
+	 * Throws IOException if a line can't be read or has an unknown value.
+	 */
+	public Result score(File input, File output) throws IOException {
+		long start = System.nanoTime();
+		Result result = new Result();
+		ExecutorService executor = Executors.newFixedThreadPool(nthreads);
+		Deque<Future<Chunk>> pending = new ArrayDeque<Future<Chunk>>();
+		int maxPending = 2 * nthreads;
+		try (BufferedReader in = new BufferedReader(new FileReader(input));
+			 Writer out = new BufferedWriter(new FileWriter(output))) {
+			long lineno = 0;
+			List<String> lines = new ArrayList<String>(chunkSize);
+			String line;
+			while ((line = in.readLine()) != null) {
+				lineno += 1;
+				lines.add(line);
+				if (lines.size() == chunkSize) {
+					pending.add(executor.submit(new Chunk(lineno - chunkSize + 1, lines)));
+					lines = new ArrayList<String>(chunkSize);
+					// Write the oldest chunk once enough are in flight
+					if (pending.size() >= maxPending) {
+						write(pending.remove(), out, result);
+					}
+				}
+			}
+			if (!lines.isEmpty()) {
+				pending.add(executor.submit(new Chunk(lineno - lines.size() + 1, lines)));
+			}
+			while (!pending.isEmpty()) {
+				write(pending.remove(), out, result);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		result.nanos = System.nanoTime() - start;
+		return result;
+	}
+
+	/**
+	 * Wait for the given Chunk to be scored, write its predictions, and
+	 * add its counts to the given Result.
+	 */
+	protected void write(Future<Chunk> future, Writer out, Result result) throws IOException {
+		Chunk chunk;
+		try {
+			chunk = future.get();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted while scoring", ex);
+		} catch (ExecutionException ex) {
+			if (ex.getCause() instanceof IOException) {
+				throw (IOException)ex.getCause();
+			}
+			throw new IOException(ex.getCause());
+		}
+		for (String prediction : chunk.predictions) {
+			if (prediction != null) {
+				out.write(prediction);
+				result.nrows += 1;
+			}
+			out.write('\n');
+		}
+		result.nlabelled += chunk.nlabelled;
+		result.ncorrect += chunk.ncorrect;
+	}
+
+}
@@ -0,0 +1,42 @@
+package dt.core;
+
+/**
+ * A ColumnSource is rows of value codes, one column per input Variable
+ * of a Problem (in order) plus one for the output, that can be read a
+ * block of rows of one column at a time. Dataset and DiskDataset are
+ * ColumnSources, so the level-wise learners (see
+ * OutOfCoreDecisionTreeLearner) can learn from either by scanning them.
+ */
+public interface ColumnSource {
+
+	public Problem getProblem();
+
+	/**
+	 * Return the number of rows.
+	 */
+	public int size();
+
+	/**
+	 * Return the number of input columns.
+	 */
+	public int getNumColumns();
+
+	/**
+	 * Copy the codes of the given input column for the n rows starting at
+	 * the given one into the given array.
+	 */
+	public void readInputCodes(int column, int from, byte[] codes, int n);
+
+	/**
+	 * Copy the output codes for the n rows starting at the given one into
+	 * the given array.
+	 */
+	public void readOutputCodes(int from, byte[] codes, int n);
+
+	/**
+	 * Copy the weights of the n rows starting at the given one (see
+	 * Dataset.getWeight) into the given array.
+	 */
+	public void readWeights(int from, int[] weights, int n);
+
+}
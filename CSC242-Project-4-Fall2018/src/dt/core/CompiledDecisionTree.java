@@ -0,0 +1,181 @@
+package dt.core;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A CompiledDecisionTree is a DecisionTree compiled down to a flat,
+ * immutable table of nodes stored in primitive arrays.
+ * Nodes are numbered breadth-first from the root (node 0), so the
+ * children of a node are consecutive and child k of node i is node
+ * next[i]+k. For a leaf, next[i] is the code of its output value.
+ * A node testing a NumericVariable has two children, and thresholds[i]
+ * is its threshold.
+ * <p>
+ * Evaluation is a loop over value codes rather than a recursive walk
+ * comparing Strings, allocates nothing, and since nothing ever changes
+ * after construction, any number of threads can use one at once.
+ * It also takes two ints and a double per node rather than an object,
+ * a list and its array.
+ */
+public class CompiledDecisionTree {
+
+	protected final Problem problem;
+	protected final Variable[] inputs;
+	// Which input columns are for NumericVariables
+	protected final boolean[] numeric;
+	// The input column tested at each node, or -1 for leaves
+	protected final int[] columns;
+	// The first child of each internal node, or the output code of each leaf
+	protected final int[] next;
+	// The threshold of each numeric node
+	protected final double[] thresholds;
+
+	/**
+	 * Compile the given DecisionTree for the given Problem.
+	 */
+	public CompiledDecisionTree(DecisionTree tree, Problem problem) {
+		this.problem = problem;
+		List<Variable> vars = problem.getInputs();
+		this.inputs = vars.toArray(new Variable[vars.size()]);
+		this.numeric = new boolean[inputs.length];
+		Map<Variable,Integer> columnIndices = new IdentityHashMap<Variable,Integer>();
+		for (int i=0; i < inputs.length; i++) {
+			columnIndices.put(inputs[i], i);
+			numeric[i] = inputs[i] instanceof NumericVariable;
+		}
+		// Number the nodes breadth-first
+		List<DecisionTree> nodes = new ArrayList<DecisionTree>();
+		nodes.add(tree);
+		for (int i=0; i < nodes.size(); i++) {
+			DecisionTree node = nodes.get(i);
+			if (node.value == null) {
+				nodes.addAll(node.children);
+			}
+		}
+		this.columns = new int[nodes.size()];
+		this.next = new int[nodes.size()];
+		this.thresholds = new double[nodes.size()];
+		int nextChild = 1;
+		for (int i=0; i < nodes.size(); i++) {
+			DecisionTree node = nodes.get(i);
+			if (node.value != null) {
+				columns[i] = -1;
+				next[i] = problem.getOutput().domain.indexOf(node.value);
+			} else {
+				Integer column = columnIndices.get(node.variable);
+				if (column == null) {
+					throw new IllegalArgumentException("not an input of the problem: " + node.variable);
+				}
+				columns[i] = column;
+				thresholds[i] = node.threshold;
+				next[i] = nextChild;
+				nextChild += node.children.size();
+			}
+		}
+	}
+
+	public Problem getProblem() {
+		return problem;
+	}
+
+	/**
+	 * Return the number of nodes in this CompiledDecisionTree.
+	 */
+	public int size() {
+		return columns.length;
+	}
+
+	/**
+	 * Return the output code computed by this CompiledDecisionTree for the
+	 * given row of the given Dataset, which must be for the same Problem.
+	 */
+	public int evalCode(Dataset dataset, int row) {
+		int node = 0;
+		int c;
+		while ((c = columns[node]) >= 0) {
+			if (numeric[c]) {
+				node = next[node] + (dataset.getNumericValue(row, c) <= thresholds[node] ? 0 : 1);
+			} else {
+				node = next[node] + dataset.getInputCode(row, c);
+			}
+		}
+		return next[node];
+	}
+
+	/**
+	 * Return the output code computed by this CompiledDecisionTree for the
+	 * given input codes, one per input Variable of its Problem in order.
+	 * This is only for Problems without NumericVariables.
+	 */
+	public int evalCode(int[] codes) {
+		return evalCode(codes, null);
+	}
+
+	/**
+	 * Return the output code computed by this CompiledDecisionTree for the
+	 * given input codes and numbers, both indexed by input column. Only
+	 * the codes of columns for Variables with Domains and the numbers of
+	 * columns for NumericVariables are used.
+	 */
+	public int evalCode(int[] codes, double[] numbers) {
+		int node = 0;
+		int c;
+		while ((c = columns[node]) >= 0) {
+			if (numeric[c]) {
+				node = next[node] + (numbers[c] <= thresholds[node] ? 0 : 1);
+			} else {
+				node = next[node] + codes[c];
+			}
+		}
+		return next[node];
+	}
+
+	/**
+	 * Return the output code computed by this CompiledDecisionTree for the
+	 * given Example, or -1 if it is missing a value that is needed.
+	 */
+	public int evalCode(Example example) {
+		if (example.dataset != null && example.dataset.problem == problem) {
+			return evalCode(example.dataset, example.row);
+		}
+		int node = 0;
+		int c;
+		while ((c = columns[node]) >= 0) {
+			if (numeric[c]) {
+				double x = example.getNumericValue(inputs[c]);
+				if (Double.isNaN(x)) {
+					return -1;
+				}
+				node = next[node] + (x <= thresholds[node] ? 0 : 1);
+			} else {
+				int k = example.getInputCode(inputs[c]);
+				if (k < 0) {
+					return -1;
+				}
+				node = next[node] + k;
+			}
+		}
+		return next[node];
+	}
+
+	/**
+	 * Return the value computed by this CompiledDecisionTree for the given
+	 * Example, or null if it is missing a value that is needed.
+	 */
+	public String eval(Example example) {
+		int code = evalCode(example);
+		return code < 0 ? null : problem.getOutput().domain.get(code);
+	}
+
+	/**
+	 * Return the value computed by this CompiledDecisionTree for the given
+	 * row of the given Dataset.
+	 */
+	public String eval(Dataset dataset, int row) {
+		return problem.getOutput().domain.get(evalCode(dataset, row));
+	}
+
+}
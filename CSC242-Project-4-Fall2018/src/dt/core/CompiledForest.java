@@ -0,0 +1,199 @@
+package dt.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * A CompiledForest is a RandomForest compiled into one flat table of
+ * nodes, like a CompiledDecisionTree but with the trees one after
+ * another. The tables of all the trees are packed into one int array of
+ * (column, next) pairs, so following a branch touches one place in
+ * memory rather than two, and the thresholds are in a separate array
+ * only read by numeric nodes.
+ * <p>
+ * Rows of a Dataset are evaluated in blocks of BLOCK_SIZE: each tree in
+ * turn is run on all the rows of the block, with the votes for each
+ * row kept in a small table. That way the nodes of one tree stay in the
+ * cache while it's being used, rather than every tree being brought in
+ * for every row, which matters when there are hundreds of trees.
+ * Blocks are independent, so they can be evaluated on several threads.
+ */
+public class CompiledForest {
+
+	/**
+	 * The number of rows evaluated together by each tree in turn.
+	 */
+	public static final int BLOCK_SIZE = 256;
+
+	protected final Problem problem;
+	protected final int noutputs;
+	// Which input columns are for NumericVariables
+	protected final boolean[] numeric;
+	// The root node of each tree
+	protected final int[] roots;
+	// nodes[2*i] is the input column tested by node i, or -1 for a leaf;
+	// nodes[2*i+1] is its first child, or the output code of a leaf
+	protected final int[] nodes;
+	// The threshold of each numeric node
+	protected final double[] thresholds;
+
+	/**
+	 * Compile the given RandomForest.
+	 */
+	public CompiledForest(RandomForest forest) {
+		this.problem = forest.problem;
+		this.noutputs = problem.getOutput().domain.size();
+		List<Variable> inputs = problem.getInputs();
+		this.numeric = new boolean[inputs.size()];
+		for (int c=0; c < numeric.length; c++) {
+			numeric[c] = inputs.get(c) instanceof NumericVariable;
+		}
+		List<CompiledDecisionTree> compiled = new ArrayList<CompiledDecisionTree>(forest.size());
+		int nnodes = 0;
+		for (DecisionTree tree : forest.trees) {
+			CompiledDecisionTree ct = tree.compile(problem);
+			compiled.add(ct);
+			nnodes += ct.size();
+		}
+		this.roots = new int[compiled.size()];
+		this.nodes = new int[2*nnodes];
+		this.thresholds = new double[nnodes];
+		int base = 0;
+		for (int t=0; t < roots.length; t++) {
+			CompiledDecisionTree ct = compiled.get(t);
+			roots[t] = base;
+			for (int i=0; i < ct.size(); i++) {
+				int column = ct.columns[i];
+				nodes[2*(base+i)] = column;
+				nodes[2*(base+i)+1] = column < 0 ? ct.next[i] : base + ct.next[i];
+				thresholds[base+i] = ct.thresholds[i];
+			}
+			base += ct.size();
+		}
+	}
+
+	public Problem getProblem() {
+		return problem;
+	}
+
+	/**
+	 * Return the number of trees in this CompiledForest.
+	 */
+	public int getNumTrees() {
+		return roots.length;
+	}
+
+	/**
+	 * Return the total number of nodes of the trees in this CompiledForest.
+	 */
+	public int size() {
+		return thresholds.length;
+	}
+
+	/**
+	 * Return the output code voted for by the most trees for the given row
+	 * of the given Dataset, which must be for the same Problem.
+	 */
+	public int evalCode(Dataset dataset, int row) {
+		int[] result = new int[1];
+		evalCodes(dataset, row, row+1, result);
+		return result[0];
+	}
+
+	/**
+	 * Return the value voted for by the most trees for the given row of
+	 * the given Dataset.
+	 */
+	public String eval(Dataset dataset, int row) {
+		return problem.getOutput().domain.get(evalCode(dataset, row));
+	}
+
+	/**
+	 * Store the output codes voted for by the most trees for the rows of
+	 * the given Dataset from from up to to in result[0..to-from), one
+	 * block of rows at a time.
+	 */
+	public void evalCodes(Dataset dataset, int from, int to, int[] result) {
+		byte[][] codes = new byte[numeric.length][];
+		double[][] numbers = new double[numeric.length][];
+		for (int c=0; c < numeric.length; c++) {
+			if (numeric[c]) {
+				numbers[c] = dataset.getNumericColumn(c);
+			} else {
+				codes[c] = dataset.getColumn(c);
+			}
+		}
+		int[] votes = new int[BLOCK_SIZE * noutputs];
+		for (int start=from; start < to; start += BLOCK_SIZE) {
+			int end = Math.min(start + BLOCK_SIZE, to);
+			Arrays.fill(votes, 0);
+			for (int t=0; t < roots.length; t++) {
+				int root = roots[t];
+				for (int row=start; row < end; row++) {
+					int node = root;
+					int c;
+					while ((c = nodes[2*node]) >= 0) {
+						if (numeric[c]) {
+							node = nodes[2*node+1] + (numbers[c][row] <= thresholds[node] ? 0 : 1);
+						} else {
+							node = nodes[2*node+1] + (codes[c][row] & 0xFF);
+						}
+					}
+					votes[(row-start)*noutputs + nodes[2*node+1]] += 1;
+				}
+			}
+			for (int row=start; row < end; row++) {
+				int base = (row-start)*noutputs;
+				int best = 0;
+				for (int k=1; k < noutputs; k++) {
+					if (votes[base+k] > votes[base+best]) {
+						best = k;
+					}
+				}
+				result[row-from] = best;
+			}
+		}
+	}
+
+	/**
+	 * Return the output codes voted for by the most trees for all the rows
+	 * of the given Dataset, evaluating blocks of them as separate tasks on
+	 * the given executor.
+	 */
+	public int[] evalCodes(final Dataset dataset, ExecutorService executor) {
+		final int[] result = new int[dataset.size()];
+		// A few tasks per thread is plenty, but each should be whole blocks
+		int ntasks = Math.max(1, dataset.size() / BLOCK_SIZE);
+		int perTask = BLOCK_SIZE * Math.max(1, ntasks / (4 * Runtime.getRuntime().availableProcessors()));
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (int start=0; start < dataset.size(); start += perTask) {
+			final int from = start;
+			final int to = Math.min(start + perTask, dataset.size());
+			tasks.add(new Callable<Void>() {
+				public Void call() {
+					int[] codes = new int[to - from];
+					evalCodes(dataset, from, to, codes);
+					System.arraycopy(codes, 0, result, from, codes.length);
+					return null;
+				}
+			});
+		}
+		try {
+			for (Future<Void> future : executor.invokeAll(tasks)) {
+				future.get();
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("interrupted while evaluating", ex);
+		} catch (ExecutionException ex) {
+			throw new RuntimeException("error evaluating", ex.getCause());
+		}
+		return result;
+	}
+
+}
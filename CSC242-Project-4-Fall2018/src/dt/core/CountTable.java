@@ -0,0 +1,428 @@
+package dt.core;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A CountTable is a contingency table of counts of examples by
+ * attribute, attribute value, and output value, for some set of
+ * candidate attributes. It is filled in from a node's examples one at a
+ * time (see add), or, for rows of a Dataset, one attribute column at a
+ * time, going through the rows once per attribute (see count), after
+ * which the entropy, remainder and information gain
+ * of every attribute (AIMA Sect. 18.3.4), or its score by any other
+ * SplitCriterion, come straight from the counts, without building any
+ * subsets of the examples.
+ * An example counts as many times as its weight (see Example.getWeight).
+ * The attributes must not be NumericVariables (see NumericSplitter).
+ */
+public class CountTable {
+
+	protected Variable[] attributes;
+	protected Variable output;
+	protected int noutputs;
+	// counts[offsets[a] + vk*noutputs + ok] is the number of examples with
+	// value vk for attribute a and output value ok
+	protected int[] offsets;
+	protected int[] counts;
+	protected int[] outputCounts;
+	protected int total;
+
+	/**
+	 * Construct and return a new, empty CountTable for the given candidate
+	 * attributes and output Variable.
+	 */
+	public CountTable(List<Variable> attributes, Variable output) {
+		this.attributes = attributes.toArray(new Variable[attributes.size()]);
+		this.output = output;
+		this.noutputs = output.domain.size();
+		this.offsets = new int[this.attributes.length];
+		int n = 0;
+		for (int a=0; a < this.attributes.length; a++) {
+			offsets[a] = n;
+			n += this.attributes[a].domain.size() * noutputs;
+		}
+		this.counts = new int[n];
+		this.outputCounts = new int[noutputs];
+	}
+
+	/**
+	 * Add the counts for the given Examples to this CountTable.
+	 * If they are a RowSet or otherwise all views of the same Dataset,
+	 * this scans its columns directly, one attribute at a time.
+	 */
+	public CountTable count(Set<Example> examples) {
+		if (examples instanceof RowSet) {
+			RowSet rs = (RowSet)examples;
+			count(rs.dataset, rs.rows, rs.from, rs.to);
+			return this;
+		}
+		Dataset dataset = commonDataset(examples);
+		if (dataset != null) {
+			int[] rows = rowsOf(examples);
+			count(dataset, rows, 0, rows.length);
+		} else {
+			for (Example e : examples) {
+				add(e);
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Return the Dataset that all the given Examples are views of,
+	 * or null if there isn't one.
+	 */
+	protected static Dataset commonDataset(Set<Example> examples) {
+		if (examples instanceof RowSet) {
+			return ((RowSet)examples).dataset;
+		}
+		Dataset dataset = null;
+		for (Example e : examples) {
+			if (e.dataset == null || (dataset != null && e.dataset != dataset)) {
+				return null;
+			}
+			dataset = e.dataset;
+		}
+		return dataset;
+	}
+
+	/**
+	 * Return the rows of the given Examples, which must all be views
+	 * of some Dataset, in a new array.
+	 */
+	protected static int[] rowsOf(Set<Example> examples) {
+		if (examples instanceof RowSet) {
+			return ((RowSet)examples).toRowArray();
+		}
+		int[] rows = new int[examples.size()];
+		int i = 0;
+		for (Example e : examples) {
+			rows[i++] = e.row;
+		}
+		return rows;
+	}
+
+	/**
+	 * Return the sum of the weights of the given Examples (see
+	 * Example.getWeight), which is their number unless some have weights.
+	 */
+	protected static int weightOf(Set<Example> examples) {
+		if (examples instanceof RowSet) {
+			return ((RowSet)examples).getWeight();
+		}
+		int total = 0;
+		for (Example e : examples) {
+			total += e.getWeight();
+		}
+		return total;
+	}
+
+	/**
+	 * Add the counts for the given range of the given rows of the given
+	 * Dataset to this CountTable. Each row counts as many times as its
+	 * weight. The rows are gone through once for the outputs and then once
+	 * per attribute, reading that attribute's column.
+	 */
+	public void count(Dataset dataset, int[] rows, int from, int to) {
+		int[] weights = dataset.getWeightColumn();
+		if (weights != null) {
+			countWeighted(dataset, weights, rows, from, to);
+			return;
+		}
+		byte[] outcol = dataset.getOutputColumn();
+		for (int i=from; i < to; i++) {
+			outputCounts[outcol[rows[i]] & 0xFF] += 1;
+		}
+		for (int a=0; a < attributes.length; a++) {
+			byte[] col = dataset.getColumn(dataset.getColumnIndex(attributes[a]));
+			int base = offsets[a];
+			for (int i=from; i < to; i++) {
+				int row = rows[i];
+				counts[base + (col[row] & 0xFF)*noutputs + (outcol[row] & 0xFF)] += 1;
+			}
+		}
+		total += to - from;
+	}
+
+	/**
+	 * Add the counts for the given range of the given rows of the given
+	 * Dataset, which has the given weights, to this CountTable.
+	 */
+	protected void countWeighted(Dataset dataset, int[] weights, int[] rows, int from, int to) {
+		byte[] outcol = dataset.getOutputColumn();
+		for (int i=from; i < to; i++) {
+			int row = rows[i];
+			outputCounts[outcol[row] & 0xFF] += weights[row];
+			total += weights[row];
+		}
+		for (int a=0; a < attributes.length; a++) {
+			byte[] col = dataset.getColumn(dataset.getColumnIndex(attributes[a]));
+			int base = offsets[a];
+			for (int i=from; i < to; i++) {
+				int row = rows[i];
+				counts[base + (col[row] & 0xFF)*noutputs + (outcol[row] & 0xFF)] += weights[row];
+			}
+		}
+	}
+
+	/**
+	 * Add the counts for the given Example to this CountTable.
+	 */
+	public void add(Example e) {
+		int ok = e.getOutputCode(output);
+		int w = e.getWeight();
+		outputCounts[ok] += w;
+		for (int a=0; a < attributes.length; a++) {
+			counts[offsets[a] + e.getInputCode(attributes[a])*noutputs + ok] += w;
+		}
+		total += w;
+	}
+
+	/**
+	 * Return the number of attributes in this CountTable.
+	 */
+	public int getNumAttributes() {
+		return attributes.length;
+	}
+
+	public Variable getAttribute(int a) {
+		return attributes[a];
+	}
+
+	/**
+	 * Return the total number of examples counted.
+	 */
+	public int getTotal() {
+		return total;
+	}
+
+	/**
+	 * Return the number of examples with the given output value code.
+	 */
+	public int getOutputCount(int ok) {
+		return outputCounts[ok];
+	}
+
+	/**
+	 * Return the number of examples with value code vk for attribute a
+	 * and output value code ok.
+	 */
+	public int getCount(int a, int vk, int ok) {
+		return counts[offsets[a] + vk*noutputs + ok];
+	}
+
+	/**
+	 * Return the number of examples with value code vk for attribute a.
+	 */
+	public int getCount(int a, int vk) {
+		int base = offsets[a] + vk*noutputs;
+		int result = 0;
+		for (int ok=0; ok < noutputs; ok++) {
+			result += counts[base + ok];
+		}
+		return result;
+	}
+
+	/**
+	 * Return the entropy of the output variable over all the examples.
+	 */
+	public double entropy() {
+		return entropy(outputCounts, 0, total);
+	}
+
+	/**
+	 * Return the expected entropy remaining after testing attribute a.
+	 */
+	public double remainder(int a) {
+		return InformationGain.remainder(counts, offsets[a], attributes[a].domain.size(), noutputs, total);
+	}
+
+	/**
+	 * Return the information gain of attribute a.
+	 */
+	public double gain(int a) {
+		return entropy() - remainder(a);
+	}
+
+	/**
+	 * Return the impurity of the output variable over all the examples,
+	 * according to the given SplitCriterion.
+	 */
+	public double impurity(SplitCriterion criterion) {
+		return criterion.impurity(outputCounts, 0, noutputs, total);
+	}
+
+	/**
+	 * Return the score of attribute a according to the given
+	 * SplitCriterion, given the impurity over all the examples.
+	 */
+	public double score(int a, SplitCriterion criterion, double impurity) {
+		return criterion.score(impurity, counts, offsets[a], attributes[a].domain.size(), noutputs, total);
+	}
+
+	/**
+	 * Return the index of the attribute with the maximum information gain.
+	 * Ties go to the attribute that comes first.
+	 */
+	public int bestAttribute() {
+		return bestAttribute(SplitCriterion.INFORMATION_GAIN);
+	}
+
+	/**
+	 * Return the index of the attribute with the maximum score according
+	 * to the given SplitCriterion. Ties go to the attribute that comes
+	 * first.
+	 */
+	public int bestAttribute(SplitCriterion criterion) {
+		double h = impurity(criterion);
+		int best = -1;
+		double maxgain = 0;
+		for (int a=0; a < attributes.length; a++) {
+			double g = score(a, criterion, h);
+			if (best == -1 || g > maxgain) {
+				best = a;
+				maxgain = g;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Return the entropy of the output distribution given by the noutputs
+	 * counts starting at the given offset, which sum to n.
+	 */
+	protected double entropy(int[] counts, int offset, int n) {
+		return entropy(counts, offset, noutputs, n);
+	}
+
+	/**
+	 * Return the entropy of the output distribution given by the noutputs
+	 * counts starting at the given offset in the given array, which sum to n.
+	 */
+	static double entropy(int[] counts, int offset, int noutputs, int n) {
+		return InformationGain.entropy(counts, offset, noutputs, n);
+	}
+
+	/**
+	 * Return the p-value of Pearson's chi-squared test of independence
+	 * for the given table, where counts[k*noutputs+ok] is the number of
+	 * examples with value k (of nvalues) and output code ok: the chance of
+	 * a deviation from independence at least as large as the table's if
+	 * the output didn't depend on the value (AIMA 18.3.5). Values and
+	 * outputs with no examples don't count as degrees of freedom, and a
+	 * table with none is no evidence, so its p-value is 1.
+	 */
+	static double chiSquaredPValue(int[] counts, int nvalues, int noutputs) {
+		int[] valueCounts = new int[nvalues];
+		int[] outputCounts = new int[noutputs];
+		int total = 0;
+		for (int vk=0; vk < nvalues; vk++) {
+			for (int ok=0; ok < noutputs; ok++) {
+				int n = counts[vk*noutputs + ok];
+				valueCounts[vk] += n;
+				outputCounts[ok] += n;
+				total += n;
+			}
+		}
+		int nv = 0;
+		for (int vk=0; vk < nvalues; vk++) {
+			if (valueCounts[vk] > 0) {
+				nv += 1;
+			}
+		}
+		int no = 0;
+		for (int ok=0; ok < noutputs; ok++) {
+			if (outputCounts[ok] > 0) {
+				no += 1;
+			}
+		}
+		int df = (nv - 1) * (no - 1);
+		if (df <= 0) {
+			return 1.0;
+		}
+		double delta = 0;
+		for (int vk=0; vk < nvalues; vk++) {
+			for (int ok=0; ok < noutputs; ok++) {
+				double expected = (double)valueCounts[vk] * outputCounts[ok] / total;
+				if (expected > 0) {
+					double d = counts[vk*noutputs + ok] - expected;
+					delta += d*d / expected;
+				}
+			}
+		}
+		return chiSquaredPValue(delta, df);
+	}
+
+	/**
+	 * Return the chance that a chi-squared distributed variable with the
+	 * given degrees of freedom is at least x, which is the regularized
+	 * upper incomplete gamma function Q(df/2, x/2). This is computed as
+	 * in Numerical Recipes (gammq), with a series for small x and a
+	 * continued fraction otherwise.
+	 */
+	static double chiSquaredPValue(double x, int df) {
+		if (x <= 0) {
+			return 1.0;
+		}
+		double a = df / 2.0;
+		double y = x / 2.0;
+		double front = Math.exp(-y + a*Math.log(y) - lnGamma(a));
+		if (y < a + 1) {
+			double term = 1.0 / a;
+			double sum = term;
+			for (int n=1; n < 1000; n++) {
+				term *= y / (a + n);
+				sum += term;
+				if (Math.abs(term) < Math.abs(sum) * 1e-15) {
+					break;
+				}
+			}
+			return Math.max(0.0, 1.0 - sum*front);
+		} else {
+			final double tiny = 1e-300;
+			double b = y + 1 - a;
+			double c = 1.0 / tiny;
+			double d = 1.0 / b;
+			double h = d;
+			for (int i=1; i < 1000; i++) {
+				double an = -i * (i - a);
+				b += 2;
+				d = an*d + b;
+				if (Math.abs(d) < tiny) {
+					d = tiny;
+				}
+				c = b + an/c;
+				if (Math.abs(c) < tiny) {
+					c = tiny;
+				}
+				d = 1.0 / d;
+				double del = d*c;
+				h *= del;
+				if (Math.abs(del - 1.0) < 1e-15) {
+					break;
+				}
+			}
+			return front * h;
+		}
+	}
+
+	/**
+	 * Return the natural log of the gamma function of x &gt; 0, using the
+	 * Lanczos approximation (Numerical Recipes gammln).
+	 */
+	static double lnGamma(double x) {
+		final double[] cof = { 76.18009172947146, -86.50532032941677, 24.01409824083091,
+				-1.231739572450155, 0.1208650973866179e-2, -0.5395239384953e-5 };
+		double y = x;
+		double tmp = x + 5.5;
+		tmp -= (x + 0.5) * Math.log(tmp);
+		double ser = 1.000000000190015;
+		for (int j=0; j < cof.length; j++) {
+			y += 1;
+			ser += cof[j] / y;
+		}
+		return -tmp + Math.log(2.5066282746310005 * ser / x);
+	}
+
+}
@@ -0,0 +1,331 @@
+package dt.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A CrossValidator runs k-fold cross-validation experiments for decision
+ * tree learners, like NeuralNetwork.kFoldCrossValidate does for neural
+ * networks. The rows are shuffled and dealt into k folds; for each fold,
+ * a tree is learned from the rows of the other folds and tested on the
+ * rows of that one. The folds are learned and tested at the same time
+ * on a pool of threads.
+ * <p>
+ * All the folds share one Dataset, which isn't changed: the training
+ * examples of a fold are a RowSet of its rows, and the testing is done
+ * by a CompiledDecisionTree straight from the Dataset's columns, so no
+ * Examples are copied. With stratified folds (see setStratified), each
+ * fold gets the same share, give or take one row, of the rows with each
+ * output value.
+ * <p>
+ * Rows with weights (see Dataset.deduplicate) stay together in one fold,
+ * and count as that many examples when testing.
+ * <p>
+ * Given the same seed, the same Dataset is split into the same folds.
+ */
+public class CrossValidator {
+
+	protected Problem problem;
+	protected int nthreads;
+	protected boolean stratified = false;
+	protected long seed = 1;
+
+	/**
+	 * Construct and return a new CrossValidator for the given Problem that
+	 * runs its folds using the given number of threads.
+	 */
+	public CrossValidator(Problem problem, int nthreads) {
+		this.problem = problem;
+		this.nthreads = nthreads;
+	}
+
+	/**
+	 * Construct and return a new CrossValidator for the given Problem with
+	 * one thread per available processor.
+	 */
+	public CrossValidator(Problem problem) {
+		this(problem, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Set whether the folds are stratified by output value.
+	 */
+	public void setStratified(boolean stratified) {
+		this.stratified = stratified;
+	}
+
+	/**
+	 * Set the seed for the random numbers used to shuffle the rows.
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * Interface implemented by objects that can learn a DecisionTree for
+	 * a fold. This will typically construct and set up a new learner,
+	 * since the folds are learned at the same time and a learner can't
+	 * learn two trees at once.
+	 */
+	public interface Trainer {
+		/**
+		 * Compute and return a DecisionTree using the given Set of Examples.
+		 */
+		public DecisionTree train(Set<Example> examples);
+	}
+
+	/**
+	 * Return a Trainer that learns each fold's tree with a new
+	 * DecisionTreeLearner for the given Problem.
+	 */
+	public static Trainer decisionTreeTrainer(final Problem problem) {
+		return new Trainer() {
+			public DecisionTree train(Set<Example> examples) {
+				return new DecisionTreeLearner(problem).learn(examples);
+			}
+		};
+	}
+
+	/**
+	 * The results of one fold of a cross-validation experiment.
+	 */
+	public static class Fold {
+		/** Which fold this is, from 0 */
+		public int index;
+		/** Number of rows learned from */
+		public int ntraining;
+		/** Number of rows tested on */
+		public int ntesting;
+		/** Number of examples tested on, counting weights */
+		public long nexamples;
+		/** Number of those for which the tree was correct */
+		public long ncorrect;
+		/** Number of nodes of the tree */
+		public int treeSize;
+		/** Time taken to learn the tree in nanoseconds */
+		public long learnNanos;
+		/** Time taken to test it in nanoseconds */
+		public long testNanos;
+
+		/**
+		 * Return the proportion of the examples tested on for which the
+		 * tree was correct.
+		 */
+		public double accuracy() {
+			return nexamples == 0 ? Double.NaN : (double)ncorrect / nexamples;
+		}
+
+		public String toString() {
+			return String.format("%d\t%.3f\t%d\t%d\t%d\t%.1f\t%.1f", index, accuracy(), ntraining, ntesting,
+					treeSize, learnNanos / 1e6, testNanos / 1e6);
+		}
+	}
+
+	/**
+	 * The results of a cross-validation experiment: those of each Fold,
+	 * and the time taken for all of them.
+	 */
+	public static class Result {
+		/** The Folds, in order */
+		public List<Fold> folds;
+		/** Elapsed time in nanoseconds */
+		public long nanos;
+
+		/**
+		 * Return the average accuracy of the Folds.
+		 */
+		public double meanAccuracy() {
+			double sum = 0;
+			for (Fold fold : folds) {
+				sum += fold.accuracy();
+			}
+			return sum / folds.size();
+		}
+
+		/**
+		 * Return the (sample) standard deviation of the accuracies of the
+		 * Folds, or 0 if there is only one.
+		 */
+		public double stdDevAccuracy() {
+			if (folds.size() < 2) {
+				return 0;
+			}
+			double mean = meanAccuracy();
+			double sum = 0;
+			for (Fold fold : folds) {
+				double d = fold.accuracy() - mean;
+				sum += d * d;
+			}
+			return Math.sqrt(sum / (folds.size() - 1));
+		}
+
+		/**
+		 * Print the results of each Fold and the average accuracy to stdout.
+		 */
+		public void dump() {
+			System.out.println("FOLD\tACC\tTRAIN\tTEST\tNODES\tLEARNms\tTESTms");
+			for (Fold fold : folds) {
+				System.out.println(fold);
+			}
+			System.out.format("accuracy %.3f +/- %.3f over %d folds in %.1f ms%n",
+					meanAccuracy(), stdDevAccuracy(), folds.size(), nanos / 1e6);
+		}
+	}
+
+	/**
+	 * Run a k-fold cross-validation experiment using the given Set of
+	 * Examples and Trainer. If the Examples aren't all views of one
+	 * Dataset, they are copied into a new one first.
+	 */
+	public Result crossValidate(Set<Example> examples, int k, Trainer trainer) {
+		Dataset dataset = CountTable.commonDataset(examples);
+		if (dataset != null) {
+			return crossValidate(dataset, CountTable.rowsOf(examples), k, trainer);
+		}
+		dataset = new Dataset(problem, examples.size());
+		for (Example e : examples) {
+			dataset.addExample(e);
+		}
+		return crossValidate(dataset, k, trainer);
+	}
+
+	/**
+	 * Run a k-fold cross-validation experiment using all the rows of the
+	 * given Dataset and the given Trainer.
+	 */
+	public Result crossValidate(Dataset dataset, int k, Trainer trainer) {
+		return crossValidate(dataset, RowSet.identity(dataset.size()), k, trainer);
+	}
+
+	/**
+	 * Run a k-fold cross-validation experiment using the given rows of the
+	 * given Dataset and the given Trainer. Throws IllegalArgumentException
+	 * unless k is at least 2 and at most the number of rows.
+	 */
+	public Result crossValidate(final Dataset dataset, int[] rows, final int k, final Trainer trainer) {
+		if (k < 2 || k > rows.length) {
+			throw new IllegalArgumentException("can't make " + k + " folds of " + rows.length + " rows");
+		}
+		long start = System.nanoTime();
+		final int[] foldOf = assignFolds(dataset, rows, k);
+		final int[] allRows = rows;
+		List<Callable<Fold>> tasks = new ArrayList<Callable<Fold>>(k);
+		for (int f=0; f < k; f++) {
+			final int index = f;
+			tasks.add(new Callable<Fold>() {
+				public Fold call() {
+					return runFold(dataset, allRows, foldOf, index, trainer);
+				}
+			});
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(nthreads, k));
+		try {
+			Result result = new Result();
+			result.folds = new ArrayList<Fold>(k);
+			for (Future<Fold> future : executor.invokeAll(tasks)) {
+				result.folds.add(future.get());
+			}
+			result.nanos = System.nanoTime() - start;
+			return result;
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("interrupted while cross-validating", ex);
+		} catch (ExecutionException ex) {
+			throw new RuntimeException("error cross-validating", ex.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Return the fold of each of the given rows of the given Dataset
+	 * (by position in the array): a random permutation of them dealt out
+	 * in turn, or if stratified, the permutations of the rows with each
+	 * output value, one after the other, dealt out in turn.
+	 */
+	protected int[] assignFolds(Dataset dataset, int[] rows, int k) {
+		int n = rows.length;
+		int[] order = RowSet.identity(n);
+		Random random = new Random(seed);
+		for (int i=n-1; i > 0; i--) {
+			int j = random.nextInt(i+1);
+			int t = order[i];
+			order[i] = order[j];
+			order[j] = t;
+		}
+		if (stratified) {
+			// A stable counting sort of the shuffled rows by output code
+			byte[] outcol = dataset.getOutputColumn();
+			int noutputs = problem.getOutput().getDomain().size();
+			int[] next = new int[noutputs+1];
+			for (int i=0; i < n; i++) {
+				next[(outcol[rows[i]] & 0xFF) + 1] += 1;
+			}
+			for (int ok=0; ok < noutputs; ok++) {
+				next[ok+1] += next[ok];
+			}
+			int[] sorted = new int[n];
+			for (int i=0; i < n; i++) {
+				sorted[next[outcol[rows[order[i]]] & 0xFF]++] = order[i];
+			}
+			order = sorted;
+		}
+		int[] foldOf = new int[n];
+		for (int i=0; i < n; i++) {
+			foldOf[order[i]] = i % k;
+		}
+		return foldOf;
+	}
+
+	/**
+	 * Learn a tree with the given Trainer from the given rows of the given
+	 * Dataset that aren't in the given fold, test it on those that are,
+	 * and return the results.
+	 */
+	protected Fold runFold(Dataset dataset, int[] rows, int[] foldOf, int index, Trainer trainer) {
+		Fold fold = new Fold();
+		fold.index = index;
+		for (int i=0; i < rows.length; i++) {
+			if (foldOf[i] == index) {
+				fold.ntesting += 1;
+			}
+		}
+		fold.ntraining = rows.length - fold.ntesting;
+		int[] training = new int[fold.ntraining];
+		int[] testing = new int[fold.ntesting];
+		int ntraining = 0;
+		int ntesting = 0;
+		for (int i=0; i < rows.length; i++) {
+			if (foldOf[i] == index) {
+				testing[ntesting++] = rows[i];
+			} else {
+				training[ntraining++] = rows[i];
+			}
+		}
+		long start = System.nanoTime();
+		DecisionTree tree = trainer.train(new RowSet(dataset, training));
+		long learned = System.nanoTime();
+		CompiledDecisionTree compiled = tree.compile(problem);
+		byte[] outcol = dataset.getOutputColumn();
+		int[] weights = dataset.getWeightColumn();
+		for (int row : testing) {
+			int weight = weights == null ? 1 : weights[row];
+			fold.nexamples += weight;
+			if (compiled.evalCode(dataset, row) == (outcol[row] & 0xFF)) {
+				fold.ncorrect += weight;
+			}
+		}
+		fold.testNanos = System.nanoTime() - learned;
+		fold.learnNanos = learned - start;
+		fold.treeSize = compiled.size();
+		return fold;
+	}
+
+}
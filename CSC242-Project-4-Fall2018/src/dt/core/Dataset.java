@@ -0,0 +1,592 @@
+package dt.core;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import dt.util.Sorting;
+
+/**
+ * A Dataset is a columnar store of Examples for a given Problem.
+ * Rather than a Map from Variables to Strings for each Example,
+ * it keeps one column of small integer codes per input Variable
+ * (plus one for the output), where the code of a value is its index
+ * in the Variable's Domain (see Domain.indexOf). Codes are stored
+ * as unsigned bytes, so Domains can have at most 256 values.
+ * A NumericVariable gets a column of doubles instead, which can also
+ * be sorted once and for all (see getSortedRows). Every row has a value
+ * for every Variable: there is no code for a missing value, and a
+ * number can't be NaN.
+ * <p>
+ * The rows of a Dataset can be viewed as Examples (see getExample and
+ * getExamples), so the rest of the dt code works with either. Subsets
+ * of the rows are best kept as RowSets, which the learners can split
+ * without copying anything.
+ * <p>
+ * A row can also have a weight, which is the number of examples it
+ * stands for, so a Dataset with many identical rows can be collapsed
+ * into one with a row for each distinct example (see deduplicate). The
+ * learners count a row of weight w as w examples, but only scan it once.
+ * Without weights (the default) every row has weight 1.
+ */
+public class Dataset implements ColumnSource {
+
+	/**
+	 * The largest Domain whose codes fit in a column.
+	 */
+	public static final int MAX_DOMAIN_SIZE = 256;
+
+	protected Problem problem;
+	protected Variable[] inputs;
+	protected Map<Variable,Integer> columnIndices = new IdentityHashMap<Variable,Integer>();
+	protected byte[][] columns;
+	protected double[][] numbers;
+	protected byte[] outputs;
+	// The weight of each row, or null if they're all 1
+	protected int[] weights;
+	protected int size;
+	protected int[][] sortedRows;
+	protected InvertedIndex invertedIndex;
+
+	/**
+	 * Construct and return a new, empty Dataset for the given Problem,
+	 * with room for the given number of rows before it needs to grow.
+	 */
+	public Dataset(Problem problem, int initialCapacity) {
+		this.problem = problem;
+		List<Variable> vars = problem.getInputs();
+		this.inputs = vars.toArray(new Variable[vars.size()]);
+		for (int i=0; i < inputs.length; i++) {
+			checkDomainSize(inputs[i]);
+			columnIndices.put(inputs[i], i);
+		}
+		checkDomainSize(problem.getOutput());
+		this.columns = new byte[inputs.length][];
+		this.numbers = new double[inputs.length][];
+		for (int i=0; i < inputs.length; i++) {
+			if (inputs[i] instanceof NumericVariable) {
+				numbers[i] = new double[initialCapacity];
+			} else {
+				columns[i] = new byte[initialCapacity];
+			}
+		}
+		this.sortedRows = new int[inputs.length][];
+		this.outputs = new byte[initialCapacity];
+		this.size = 0;
+	}
+
+	/**
+	 * Construct and return a new, empty Dataset for the given Problem.
+	 */
+	public Dataset(Problem problem) {
+		this(problem, 16);
+	}
+
+	protected static void checkDomainSize(Variable var) {
+		if (var.domain.size() > MAX_DOMAIN_SIZE) {
+			throw new IllegalArgumentException("domain of " + var + " has more than " + MAX_DOMAIN_SIZE + " values");
+		}
+	}
+
+	public Problem getProblem() {
+		return problem;
+	}
+
+	/**
+	 * Return the number of rows (Examples) in this Dataset.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Return the number of input columns in this Dataset (one per input
+	 * Variable of its Problem).
+	 */
+	public int getNumColumns() {
+		return inputs.length;
+	}
+
+	/**
+	 * Return the input Variable for the given column.
+	 */
+	public Variable getVariable(int column) {
+		return inputs[column];
+	}
+
+	/**
+	 * Return the column index of the given input Variable, or -1 if it
+	 * is not one of this Dataset's inputs.
+	 */
+	public int getColumnIndex(Variable var) {
+		Integer index = columnIndices.get(var);
+		return index == null ? -1 : index;
+	}
+
+	/**
+	 * Return true if the given column is for a NumericVariable.
+	 */
+	public boolean isNumeric(int column) {
+		return numbers[column] != null;
+	}
+
+	/**
+	 * Return the code of the value in the given row and column.
+	 */
+	public int getInputCode(int row, int column) {
+		return columns[column][row] & 0xFF;
+	}
+
+	/**
+	 * Return the code of the output value in the given row.
+	 */
+	public int getOutputCode(int row) {
+		return outputs[row] & 0xFF;
+	}
+
+	/**
+	 * Return the number in the given row and (numeric) column.
+	 */
+	public double getNumericValue(int row, int column) {
+		return numbers[column][row];
+	}
+
+	public void setInputCode(int row, int column, int code) {
+		columns[column][row] = (byte)code;
+		invertedIndex = null;
+	}
+
+	/**
+	 * Set the number in the given row and (numeric) column. Throws
+	 * IllegalArgumentException if it is NaN.
+	 */
+	public void setNumericValue(int row, int column, double value) {
+		if (Double.isNaN(value)) {
+			throw new IllegalArgumentException("not a number for " + inputs[column] + ": " + value);
+		}
+		numbers[column][row] = value;
+		sortedRows[column] = null;
+	}
+
+	public void setOutputCode(int row, int code) {
+		outputs[row] = (byte)code;
+	}
+
+	/**
+	 * Return true if the rows of this Dataset have weights other than 1.
+	 */
+	public boolean isWeighted() {
+		return weights != null;
+	}
+
+	/**
+	 * Return the weight of the given row: the number of examples it
+	 * stands for.
+	 */
+	public int getWeight(int row) {
+		return weights == null ? 1 : weights[row];
+	}
+
+	/**
+	 * Set the weight of the given row, which must be at least 1.
+	 */
+	public void setWeight(int row, int weight) {
+		if (weight < 1) {
+			throw new IllegalArgumentException("weight must be at least 1: " + weight);
+		}
+		if (weights == null) {
+			if (weight == 1) {
+				return;
+			}
+			weights = new int[outputs.length];
+			Arrays.fill(weights, 1);
+		}
+		weights[row] = weight;
+	}
+
+	/**
+	 * Return the sum of the weights of the rows of this Dataset, which is
+	 * the number of examples it stands for.
+	 */
+	public long getTotalWeight() {
+		if (weights == null) {
+			return size;
+		}
+		long total = 0;
+		for (int i=0; i < size; i++) {
+			total += weights[i];
+		}
+		return total;
+	}
+
+	/**
+	 * Return the value of the given Variable in the given row.
+	 */
+	public String getInputValue(int row, Variable var) {
+		int column = getColumnIndex(var);
+		if (isNumeric(column)) {
+			return Double.toString(getNumericValue(row, column));
+		} else {
+			return var.domain.get(getInputCode(row, column));
+		}
+	}
+
+	/**
+	 * Return the output value in the given row.
+	 */
+	public String getOutputValue(int row) {
+		return problem.getOutput().domain.get(getOutputCode(row));
+	}
+
+	/**
+	 * Return the codes of the given column. The array may be longer
+	 * than the Dataset; only the first size() entries are meaningful.
+	 * This is for the inner loops of the learners, not for changing things.
+	 */
+	byte[] getColumn(int column) {
+		return columns[column];
+	}
+
+	/**
+	 * Return the numbers of the given numeric column, as for getColumn.
+	 */
+	double[] getNumericColumn(int column) {
+		return numbers[column];
+	}
+
+	/**
+	 * Return the rows of this Dataset sorted by their values in the given
+	 * numeric column. This is computed the first time it is needed and
+	 * then kept, so that learners can find thresholds for any subset of the
+	 * rows by sweeping through it in order rather than sorting again.
+	 */
+	public synchronized int[] getSortedRows(int column) {
+		if (sortedRows[column] == null || sortedRows[column].length != size) {
+			int[] rows = new int[size];
+			for (int i=0; i < size; i++) {
+				rows[i] = i;
+			}
+			Sorting.sortByKey(rows, 0, size, numbers[column]);
+			sortedRows[column] = rows;
+		}
+		return sortedRows[column];
+	}
+
+	/**
+	 * Return an InvertedIndex of the rows of this Dataset by the values
+	 * of its (non-numeric) columns. Like getSortedRows, this is built the
+	 * first time it is needed and then kept.
+	 */
+	public synchronized InvertedIndex getInvertedIndex() {
+		if (invertedIndex == null || invertedIndex.size() != size) {
+			invertedIndex = new InvertedIndex(this);
+		}
+		return invertedIndex;
+	}
+
+	/**
+	 * Return the output codes, as for getColumn.
+	 */
+	byte[] getOutputColumn() {
+		return outputs;
+	}
+
+	/**
+	 * Return the weights, as for getColumn, or null if they're all 1.
+	 */
+	int[] getWeightColumn() {
+		return weights;
+	}
+
+	/**
+	 * Copy the codes of the given input column for the n rows starting at
+	 * the given one into the given array. The column must not be for a
+	 * NumericVariable.
+	 */
+	public void readInputCodes(int column, int from, byte[] codes, int n) {
+		if (columns[column] == null) {
+			throw new IllegalArgumentException("no codes for numeric variable " + inputs[column]);
+		}
+		System.arraycopy(columns[column], from, codes, 0, n);
+	}
+
+	/**
+	 * Copy the output codes for the n rows starting at the given one into
+	 * the given array.
+	 */
+	public void readOutputCodes(int from, byte[] codes, int n) {
+		System.arraycopy(outputs, from, codes, 0, n);
+	}
+
+	/**
+	 * Copy the weights of the n rows starting at the given one into the
+	 * given array.
+	 */
+	public void readWeights(int from, int[] weights, int n) {
+		if (this.weights == null) {
+			Arrays.fill(weights, 0, n, 1);
+		} else {
+			System.arraycopy(this.weights, from, weights, 0, n);
+		}
+	}
+
+	/**
+	 * Add a row with the given input codes and output code to this
+	 * Dataset and return its index.
+	 */
+	public int addRow(int[] inputCodes, int outputCode) {
+		ensureCapacity(size + 1);
+		for (int i=0; i < inputs.length; i++) {
+			if (columns[i] == null) {
+				throw new IllegalArgumentException("no code for numeric variable " + inputs[i]);
+			}
+			columns[i][size] = (byte)inputCodes[i];
+		}
+		outputs[size] = (byte)outputCode;
+		if (weights != null) {
+			weights[size] = 1;
+		}
+		return size++;
+	}
+
+	/**
+	 * Add a row with the given values, one for each input Variable in
+	 * order followed by one for the output Variable, and return its index.
+	 * Throws IllegalArgumentException if a value is not in its Variable's
+	 * Domain (or not a number, for a NumericVariable).
+	 */
+	public int addRow(String[] values) {
+		if (values.length != inputs.length + 1) {
+			throw new IllegalArgumentException("expected " + (inputs.length+1) + " values, got " + values.length);
+		}
+		ensureCapacity(size + 1);
+		for (int i=0; i < inputs.length; i++) {
+			setValue(size, i, values[i]);
+		}
+		outputs[size] = (byte)encode(problem.getOutput(), values[inputs.length]);
+		if (weights != null) {
+			weights[size] = 1;
+		}
+		return size++;
+	}
+
+	/**
+	 * Add a row with the values of the given Example and return its index.
+	 */
+	public int addExample(Example example) {
+		ensureCapacity(size + 1);
+		for (int i=0; i < inputs.length; i++) {
+			setValue(size, i, example.getInputValue(inputs[i]));
+		}
+		outputs[size] = (byte)encode(problem.getOutput(), example.getOutputValue());
+		if (weights != null || example.getWeight() != 1) {
+			setWeight(size, example.getWeight());
+		}
+		return size++;
+	}
+
+	/**
+	 * Add the first n rows of the given columns of codes or numbers, in
+	 * the same order as this Dataset's columns, and output codes.
+	 */
+	void addRows(byte[][] inputCodes, double[][] inputNumbers, byte[] outputCodes, int n) {
+		ensureCapacity(size + n);
+		for (int i=0; i < inputs.length; i++) {
+			if (numbers[i] != null) {
+				System.arraycopy(inputNumbers[i], 0, numbers[i], size, n);
+			} else {
+				System.arraycopy(inputCodes[i], 0, columns[i], size, n);
+			}
+		}
+		System.arraycopy(outputCodes, 0, outputs, size, n);
+		if (weights != null) {
+			Arrays.fill(weights, size, size + n, 1);
+		}
+		size += n;
+	}
+
+	/**
+	 * Return a new Dataset with one row for each distinct row of this one
+	 * (the same values and output), in order of first appearance, whose
+	 * weight is the sum of the weights of the rows like it. Learning from
+	 * it gives the same tree as learning from this Dataset, but each scan
+	 * of the rows is over the distinct ones only.
+	 */
+	public Dataset deduplicate() {
+		Map<RowKey,Integer> distinct = new HashMap<RowKey,Integer>();
+		Dataset result = new Dataset(problem);
+		for (int row=0; row < size; row++) {
+			RowKey key = new RowKey(row);
+			Integer copy = distinct.get(key);
+			if (copy == null) {
+				distinct.put(key, result.addRow(this, row));
+			} else {
+				result.setWeight(copy, result.getWeight(copy) + getWeight(row));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Add a copy of the given row of the given Dataset, which has the same
+	 * Problem, with its weight, and return its index.
+	 */
+	protected int addRow(Dataset other, int row) {
+		ensureCapacity(size + 1);
+		for (int i=0; i < inputs.length; i++) {
+			if (numbers[i] != null) {
+				numbers[i][size] = other.numbers[i][row];
+			} else {
+				columns[i][size] = other.columns[i][row];
+			}
+		}
+		outputs[size] = other.outputs[row];
+		if (weights != null || other.getWeight(row) != 1) {
+			setWeight(size, other.getWeight(row));
+		}
+		invertedIndex = null;
+		return size++;
+	}
+
+	/**
+	 * A row of this Dataset as a key for a HashMap: two RowKeys are equal
+	 * if their rows have the same values and output.
+	 */
+	protected class RowKey {
+		protected int row;
+		protected int hash;
+
+		protected RowKey(int row) {
+			this.row = row;
+			int h = outputs[row];
+			for (int i=0; i < inputs.length; i++) {
+				if (numbers[i] != null) {
+					long bits = Double.doubleToLongBits(numbers[i][row]);
+					h = h*31 + (int)(bits ^ (bits >>> 32));
+				} else {
+					h = h*31 + columns[i][row];
+				}
+			}
+			this.hash = h;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			int other = ((RowKey)o).row;
+			if (outputs[row] != outputs[other]) {
+				return false;
+			}
+			for (int i=0; i < inputs.length; i++) {
+				if (numbers[i] != null) {
+					if (Double.doubleToLongBits(numbers[i][row]) != Double.doubleToLongBits(numbers[i][other])) {
+						return false;
+					}
+				} else if (columns[i][row] != columns[i][other]) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Set the value in the given row and column from the given String.
+	 */
+	protected void setValue(int row, int column, String value) {
+		if (numbers[column] != null) {
+			try {
+				setNumericValue(row, column, Double.parseDouble(value));
+			} catch (NumberFormatException | NullPointerException ex) {
+				throw new IllegalArgumentException("not a number for " + inputs[column] + ": " + value);
+			}
+		} else {
+			columns[column][row] = (byte)encode(inputs[column], value);
+			invertedIndex = null;
+		}
+	}
+
+	protected int encode(Variable var, String value) {
+		int code = var.domain.indexOf(value);
+		if (code < 0) {
+			throw new IllegalArgumentException("unknown value for " + var + ": " + value);
+		}
+		return code;
+	}
+
+	/**
+	 * Make sure there is room for at least the given number of rows.
+	 */
+	public void ensureCapacity(int capacity) {
+		if (capacity > outputs.length) {
+			int newCapacity = Math.max(capacity, outputs.length + (outputs.length >> 1) + 1);
+			for (int i=0; i < columns.length; i++) {
+				if (numbers[i] != null) {
+					numbers[i] = Arrays.copyOf(numbers[i], newCapacity);
+				} else {
+					columns[i] = Arrays.copyOf(columns[i], newCapacity);
+				}
+			}
+			outputs = Arrays.copyOf(outputs, newCapacity);
+			if (weights != null) {
+				weights = Arrays.copyOf(weights, newCapacity);
+			}
+		}
+	}
+
+	/**
+	 * Return an Example that is a view of the given row of this Dataset.
+	 */
+	public Example getExample(int row) {
+		return new Example(this, row);
+	}
+
+	/**
+	 * Return an unmodifiable Set view of the rows of this Dataset as
+	 * Examples, in row order. The Examples are created as needed, so
+	 * this costs nothing until you use it.
+	 */
+	public Set<Example> getExamples() {
+		return new AbstractSet<Example>() {
+			@Override
+			public Iterator<Example> iterator() {
+				return new Iterator<Example>() {
+					int next = 0;
+					public boolean hasNext() {
+						return next < size;
+					}
+					public Example next() {
+						if (next >= size) {
+							throw new NoSuchElementException();
+						}
+						return getExample(next++);
+					}
+				};
+			}
+			@Override
+			public int size() {
+				return size;
+			}
+			@Override
+			public boolean contains(Object o) {
+				if (o instanceof Example) {
+					Example e = (Example)o;
+					return e.dataset == Dataset.this && e.row < size;
+				} else {
+					return false;
+				}
+			}
+		};
+	}
+
+}
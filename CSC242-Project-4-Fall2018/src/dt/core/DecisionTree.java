@@ -1,5 +1,7 @@
 package dt.core;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
@@ -11,6 +13,10 @@ import java.util.Set;
  * and can have children in the order of its Variable's
  * values, or its label is a String, in which case it
  * is a leaf (result) node.
+ * An internal node for a NumericVariable also has a
+ * threshold, and two children: the first for values
+ * less than or equal to the threshold and the second
+ * for values greater than it.
  */
 public class DecisionTree {
 	
@@ -26,6 +32,25 @@ public class DecisionTree {
 		this.children = new ArrayList<DecisionTree>();
 	}
 
+	double threshold;
+
+	/**
+	 * Construct and return a new non-leaf DecisionTree
+	 * testing the given NumericVariable against the given threshold.
+	 */
+	public DecisionTree(NumericVariable variable, double threshold) {
+		this(variable);
+		this.threshold = threshold;
+	}
+	
+	/**
+	 * Return true if this DecisionTree is a threshold test on a
+	 * NumericVariable.
+	 */
+	public boolean isNumeric() {
+		return variable instanceof NumericVariable;
+	}
+
 	String value;
 	
 	/**
@@ -47,6 +72,15 @@ public class DecisionTree {
 		indent(depth);
 		if (variable != null) {
 			System.out.println(variable);
+			if (isNumeric()) {
+				indent(depth+2);
+				System.out.println("<= " + threshold + ":");
+				children.get(0).dump(depth+4);
+				indent(depth+2);
+				System.out.println("> " + threshold + ":");
+				children.get(1).dump(depth+4);
+				return;
+			}
 			for (int i=0; i < variable.domain.size(); i++) {
 				String value = variable.domain.get(i);
 				DecisionTree child = children.get(i);
@@ -65,31 +99,137 @@ public class DecisionTree {
 		}
 	}
 	
+	MetricsSink metrics;
+
+	/**
+	 * Tell the given MetricsSink about each evaluation of this DecisionTree
+	 * (from this node), or nothing if it's null (the default).
+	 */
+	public void setMetrics(MetricsSink metrics) {
+		this.metrics = metrics;
+	}
+	
 	/**
-	 * Return the value computed by this DecisionTree for the given Example.
+	 * Return the value computed by this DecisionTree for the given Example,
+	 * or null if it is missing a value that is needed (see
+	 * Example.getNumericValue).
 	 */
 	public String eval(Example example) {
-		if (this.value != null) {
-			// We are a leaf
-			return this.value;
-		} else {
-			// Example has value vk for this variable
-			String vk = example.getInputValue(this.variable);
-			// Find child for that value in our children in domain order
-			for (int i=0; i < variable.domain.size(); i++) {
-				String value = variable.domain.get(i);
-				if (value.equals(vk)) {
-					return this.children.get(i).eval(example);
+		DecisionTree node = this;
+		int depth = 0;
+		while (node.value == null) {
+			if (node.isNumeric()) {
+				double x = example.getNumericValue(node.variable);
+				if (Double.isNaN(x)) {
+					// Error
+					return null;
 				}
+				node = node.children.get(x <= node.threshold ? 0 : 1);
+			} else {
+				// Example has value with code (index) k for this variable,
+				// and our children are in domain order
+				int k = example.getInputCode(node.variable);
+				if (k < 0) {
+					// Error
+					return null;
+				}
+				node = node.children.get(k);
+			}
+			depth += 1;
+		}
+		if (metrics != null) {
+			metrics.treeEvaluated(depth);
+		}
+		return node.value;
+	}
+	
+	/**
+	 * Return the value computed by this DecisionTree for the given row
+	 * of the given Dataset, without creating an Example for it. Unlike an
+	 * Example of its own, a row always has a value for every Variable
+	 * (see Dataset), so this never gives null.
+	 */
+	public String eval(Dataset dataset, int row) {
+		DecisionTree node = this;
+		int depth = 0;
+		while (node.value == null) {
+			int column = dataset.getColumnIndex(node.variable);
+			if (node.isNumeric()) {
+				node = node.children.get(dataset.getNumericValue(row, column) <= node.threshold ? 0 : 1);
+			} else {
+				node = node.children.get(dataset.getInputCode(row, column));
+			}
+			depth += 1;
+		}
+		if (metrics != null) {
+			metrics.treeEvaluated(depth);
+		}
+		return node.value;
+	}
+	
+	/**
+	 * Return the number of nodes (internal nodes and leaves) in this
+	 * DecisionTree.
+	 */
+	public int size() {
+		int n = 1;
+		if (children != null) {
+			for (DecisionTree child : children) {
+				n += child.size();
+			}
+		}
+		return n;
+	}
+	
+	/**
+	 * Return the number of leaves in this DecisionTree.
+	 */
+	public int getNumLeaves() {
+		if (value != null) {
+			return 1;
+		}
+		int n = 0;
+		for (DecisionTree child : children) {
+			n += child.getNumLeaves();
+		}
+		return n;
+	}
+	
+	/**
+	 * Return the most tests on any path from the root of this DecisionTree
+	 * to a leaf.
+	 */
+	public int getDepth() {
+		int depth = 0;
+		if (children != null) {
+			for (DecisionTree child : children) {
+				depth = Math.max(depth, child.getDepth() + 1);
 			}
-			// Error
-			return null;
 		}
+		return depth;
+	}
+	
+	/**
+	 * Compile this DecisionTree for the given Problem into a flat table
+	 * that is faster and smaller to evaluate (see CompiledDecisionTree).
+	 */
+	public CompiledDecisionTree compile(Problem problem) {
+		return new CompiledDecisionTree(this, problem);
+	}
+
+	/**
+	 * Save this DecisionTree for the given Problem to the given File in
+	 * binary, to be loaded later by MappedDecisionTree.load.
+	 */
+	public void save(Problem problem, File file) throws IOException {
+		MappedDecisionTree.save(this, problem, file);
 	}
 	
 	/**
 	 * Run this DecisionTree on the given Examples and print results and
 	 * summary statistics.
+	 * For big datasets, see BatchScorer, which doesn't print every row or
+	 * need all the Examples in memory.
 	 */
 	public void test(Set<Example> examples) {
 		int ntested = 0;
@@ -1,19 +1,41 @@
 package dt.core;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import dt.util.ArraySet;
+import dt.util.IndexedArraySet;
 
 /**
  * Implementation of the decision-tree learning algorithm in AIMA Fig 18.5.
  * This is based on ID3 (AIMA p. 758).
+ * The counting methods compare value codes (see Example.getInputCode)
+ * rather than Strings, which is cheap for Examples that are views
+ * of a Dataset. Examples from a Dataset are learned from as a RowSet,
+ * which is split into subsets without copying any Examples.
+ * Examples with weights (see Dataset.deduplicate) count as many times as
+ * their weights throughout, including for the limits below.
+ * <p>
+ * By default every branch is grown until its examples all have the
+ * same output or there are no attributes left to test, but the growth
+ * of the tree can be limited by depth, examples per leaf, gain, number
+ * of nodes and chi-squared significance (see setMaxDepth and so on).
+ * The limits are checked as the tree is learned, so subtrees they rule
+ * out are never learned.
  */
 public class DecisionTreeLearner extends AbstractDecisionTreeLearner {
 	
+	protected int maxDepth = 0;
+	protected int minLeafSize = 1;
+	protected double minGain = 0;
+	protected int maxNodes = 0;
+	protected double significance = 1.0;
+	// The number of nodes of the tree being learned, if maxNodes is set
+	protected AtomicInteger nodeCount = new AtomicInteger();
+	
 	/**
 	 * Construct and return a new DecisionTreeLearner for the given Problem.
 	 */
@@ -21,22 +43,349 @@ public class DecisionTreeLearner extends AbstractDecisionTreeLearner {
 		super(problem);
 	}
 	
+	/**
+	 * Set the most tests on any path from the root to a leaf, or 0 (the
+	 * default) for no limit. Nodes that deep become leaves.
+	 */
+	public void setMaxDepth(int maxDepth) {
+		this.maxDepth = maxDepth;
+	}
+	
+	/**
+	 * Set the fewest examples a child can have, unless it has none. A node
+	 * isn't split if that would give a child fewer (default 1).
+	 */
+	public void setMinLeafSize(int minLeafSize) {
+		this.minLeafSize = minLeafSize;
+	}
+	
+	/**
+	 * Set the least information gain (or score by the SplitCriterion, see
+	 * setSplitCriterion) worth splitting a node for. By default this is 0,
+	 * so nodes are split even if nothing is gained.
+	 */
+	public void setMinGain(double minGain) {
+		this.minGain = minGain;
+	}
+	
+	/**
+	 * Set the most nodes (internal nodes and leaves) in a tree, or 0 (the
+	 * default) for no limit. Nodes are split in the order they're learned
+	 * until the next split would go over the limit, so the nodes left as
+	 * leaves are the ones learned last. With ParallelDecisionTreeLearner
+	 * that order, and so the tree, can differ from run to run. A learner
+	 * with a limit should only learn one tree at a time.
+	 */
+	public void setMaxNodes(int maxNodes) {
+		this.maxNodes = maxNodes;
+	}
+	
+	/**
+	 * Set the significance level for chi-squared pruning (AIMA 18.3.5),
+	 * for example 0.05. A node is only split if the chance that a split
+	 * at least as good would happen at random (the p-value of the split's
+	 * chi-squared statistic) is below it. The default of 1 turns this off.
+	 * Unlike the pruning described in AIMA, this is done while the tree
+	 * is learned rather than afterward, so pruned subtrees are never
+	 * learned, but a split that only helps in combination with the splits
+	 * below it (like one input of an XOR) can be pruned.
+	 */
+	public void setSignificance(double significance) {
+		this.significance = significance;
+	}
+	
+	/**
+	 * Compute and return a DecisionTree for this DecisionTreeLearner's
+	 * Problem using the given Set of Examples.
+	 */
+	@Override
+	public DecisionTree learn(Set<Example> examples) {
+		nodeCount.set(1);
+		return super.learn(examples);
+	}
+	
 	/**
 	 * Main recursive decision-tree learning (ID3) method.  
 	 */
 	@Override
 	protected DecisionTree learn(Set<Example> examples, List<Variable> attributes, Set<Example> parent_examples) {
-	    // Must be implemented by you; the following two methods may be useful
+		return learn(examples, attributes, parent_examples, 0);
+	}
+	
+	/**
+	 * Main recursive decision-tree learning (ID3) method, for a node at
+	 * the given depth (0 for the root). Nodes that the limits (see
+	 * setMaxDepth and so on) don't allow to be split become leaves with
+	 * the plurality value of their examples.
+	 */
+	protected DecisionTree learn(Set<Example> examples, List<Variable> attributes, Set<Example> parent_examples, int depth) {
+		DecisionTree tree = learnNode(examples, attributes, parent_examples, depth);
+		if (metrics != null) {
+			metrics.nodeBuilt(depth, examples.size(), tree.value != null);
+		}
+		return tree;
+	}
+	
+	/**
+	 * Learn the node at the given depth and its subtree, for learn.
+	 */
+	protected DecisionTree learnNode(Set<Example> examples, List<Variable> attributes, Set<Example> parent_examples, int depth) {
+		if (examples.isEmpty()) {
+			return new DecisionTree(pluralityValue(parent_examples));
+		}
+		String unique = uniqueOutputValue(examples);
+		if (unique != null) {
+			return new DecisionTree(unique);
+		}
+		if (attributes.isEmpty() || !mightSplit(CountTable.weightOf(examples), depth)) {
+			return new DecisionTree(pluralityValue(examples));
+		}
+		NumericSplitter.Split[] found = new NumericSplitter.Split[1];
+		Variable a = mostImportantVariable(attributes, examples, found);
+		DecisionTree tree;
+		List<Variable> remaining;
+		if (a instanceof NumericVariable) {
+			// The split found while scoring, unless it was scored on a sample
+			NumericSplitter.Split split = found[0];
+			if (split == null) {
+				split = new NumericSplitter(problem.getOutput(), examples, criterion).bestSplit((NumericVariable)a);
+			}
+			if (split == null) {
+				// No attribute can separate these examples
+				return new DecisionTree(pluralityValue(examples));
+			}
+			tree = new DecisionTree((NumericVariable)a, split.threshold);
+			// A NumericVariable can be tested again with another threshold
+			remaining = attributes;
+		} else {
+			tree = new DecisionTree(a);
+			remaining = new LinkedList<Variable>(attributes);
+			remaining.remove(a);
+		}
+		if (!canSplit(tree, examples)) {
+			return new DecisionTree(pluralityValue(examples));
+		}
+		learnChildren(tree, examples, remaining, depth+1);
+		return tree;
+	}
+	
+	/**
+	 * Learn the children of the given DecisionTree, which tests some
+	 * attribute, from the given examples and remaining attributes, and
+	 * add them to it in the order of the attribute's values. The children
+	 * are at the given depth.
+	 * The subtrees are independent, so subclasses can override this
+	 * to learn them some other way (see ParallelDecisionTreeLearner).
+	 */
+	protected void learnChildren(DecisionTree tree, Set<Example> examples, List<Variable> remaining, int depth) {
+		for (Set<Example> exs : partition(tree, examples)) {
+			tree.children.add(learn(exs, remaining, examples, depth));
+		}
+	}
+	
+	//
+	// Limits on the growth of the tree
+	//
+	
+	/**
+	 * Return true if the limits allow a node at the given depth with the
+	 * given number of examples to be split at all, before any work is
+	 * done to choose the split.
+	 */
+	protected boolean mightSplit(int nexamples, int depth) {
+		if (maxDepth > 0 && depth >= maxDepth) {
+			return false;
+		}
+		if (nexamples < 2*minLeafSize) {
+			// At least two children need that many examples
+			return false;
+		}
+		return maxNodes <= 0 || nodeCount.get() + 2 <= maxNodes;
+	}
+	
+	/**
+	 * Return true if the limits allow the given DecisionTree to split the
+	 * given examples, and if so count its children as nodes of the tree.
+	 */
+	protected boolean canSplit(DecisionTree tree, Set<Example> examples) {
+		if (hasSplitLimits() && !allowsSplit(childCounts(tree, examples), nchildren(tree))) {
+			return false;
+		}
+		return reserveNodes(nchildren(tree));
+	}
+	
+	/**
+	 * Return the number of children of the given (internal) DecisionTree.
+	 */
+	protected static int nchildren(DecisionTree tree) {
+		return tree.isNumeric() ? 2 : tree.variable.domain.size();
+	}
+	
+	/**
+	 * Return true if the limits need the output counts of the children of
+	 * a split (see allowsSplit).
+	 */
+	protected boolean hasSplitLimits() {
+		return minLeafSize > 1 || minGain > 0 || significance < 1.0;
+	}
+	
+	/**
+	 * Return true if the limits on leaf size, gain and significance allow
+	 * a split into the given number of children, where
+	 * counts[k*noutputs+ok] is the number of examples of child k with
+	 * output code ok.
+	 */
+	protected boolean allowsSplit(int[] counts, int nchildren) {
+		int noutputs = problem.getOutput().domain.size();
+		int[] sizes = new int[nchildren];
+		int total = 0;
+		for (int k=0; k < nchildren; k++) {
+			for (int ok=0; ok < noutputs; ok++) {
+				sizes[k] += counts[k*noutputs + ok];
+			}
+			if (sizes[k] > 0 && sizes[k] < minLeafSize) {
+				return false;
+			}
+			total += sizes[k];
+		}
+		if (minGain > 0) {
+			int[] outputCounts = new int[noutputs];
+			for (int k=0; k < nchildren; k++) {
+				for (int ok=0; ok < noutputs; ok++) {
+					outputCounts[ok] += counts[k*noutputs + ok];
+				}
+			}
+			double impurity = criterion.impurity(outputCounts, 0, noutputs, total);
+			if (criterion.score(impurity, counts, 0, nchildren, noutputs, total) < minGain) {
+				return false;
+			}
+		}
+		return significance >= 1.0 || CountTable.chiSquaredPValue(counts, nchildren, noutputs) < significance;
+	}
+	
+	/**
+	 * Count the given number of new nodes against maxNodes and return
+	 * true, or return false if there isn't room for them.
+	 */
+	protected boolean reserveNodes(int n) {
+		if (maxNodes <= 0) {
+			return true;
+		}
+		while (true) {
+			int used = nodeCount.get();
+			if (used + n > maxNodes) {
+				return false;
+			}
+			if (nodeCount.compareAndSet(used, used + n)) {
+				return true;
+			}
+		}
+	}
+	
+	/**
+	 * Return the output counts of the children of the given DecisionTree
+	 * for the given examples, without partitioning them: the number of
+	 * examples that go to child k with output code ok is at
+	 * [k*noutputs+ok].
+	 */
+	protected int[] childCounts(DecisionTree tree, Set<Example> examples) {
+		Variable output = problem.getOutput();
+		int noutputs = output.domain.size();
+		int[] counts = new int[nchildren(tree) * noutputs];
+		if (examples instanceof RowSet) {
+			RowSet rows = (RowSet)examples;
+			int column = rows.dataset.getColumnIndex(tree.variable);
+			byte[] outcol = rows.dataset.getOutputColumn();
+			int[] weights = rows.dataset.getWeightColumn();
+			if (tree.isNumeric()) {
+				double[] values = rows.dataset.getNumericColumn(column);
+				for (int i=rows.from; i < rows.to; i++) {
+					int row = rows.rows[i];
+					int k = values[row] <= tree.threshold ? 0 : 1;
+					counts[k*noutputs + (outcol[row] & 0xFF)] += weights == null ? 1 : weights[row];
+				}
+			} else {
+				byte[] codes = rows.dataset.getColumn(column);
+				for (int i=rows.from; i < rows.to; i++) {
+					int row = rows.rows[i];
+					counts[(codes[row] & 0xFF)*noutputs + (outcol[row] & 0xFF)] += weights == null ? 1 : weights[row];
+				}
+			}
+		} else {
+			for (Example e : examples) {
+				int k;
+				if (tree.isNumeric()) {
+					k = e.getNumericValue(tree.variable) <= tree.threshold ? 0 : 1;
+				} else {
+					k = e.getInputCode(tree.variable);
+				}
+				counts[k*noutputs + e.getOutputCode(output)] += e.getWeight();
+			}
+		}
+		return counts;
+	}
+	
+	/**
+	 * Return the subsets of the given examples that go to each of the
+	 * children of the given DecisionTree, in order.
+	 * A RowSet is split in place into RowSets sharing its array of rows,
+	 * so this reorders its rows (but leaves it with the same ones).
+	 */
+	protected List<Set<Example>> partition(DecisionTree tree, Set<Example> examples) {
+		List<Set<Example>> result = new ArrayList<Set<Example>>();
+		if (examples instanceof RowSet) {
+			// Reorder the rows in place rather than building new Sets
+			RowSet rows = (RowSet)examples;
+			int column = rows.dataset.getColumnIndex(tree.variable);
+			if (tree.isNumeric()) {
+				result.addAll(Arrays.asList(rows.partition(column, tree.threshold)));
+			} else {
+				result.addAll(Arrays.asList(rows.partition(column)));
+			}
+		} else if (tree.isNumeric()) {
+			Set<Example> below = newExampleSet();
+			Set<Example> above = newExampleSet();
+			for (Example e : examples) {
+				if (e.getNumericValue(tree.variable) <= tree.threshold) {
+					below.add(e);
+				} else {
+					above.add(e);
+				}
+			}
+			result.add(below);
+			result.add(above);
+		} else {
+			for (String vk : tree.variable.domain) {
+				result.add(examplesWithValueForAttribute(examples, tree.variable, vk));
+			}
+		}
+		return result;
 	}
 	
 	/**
 	 * Returns the most common output value among a set of Examples,
-	 * breaking ties randomly.
-	 * I don't do the random part yet.
+	 * weighted by their weights, breaking ties randomly.
+	 * I don't do the random part yet: ties go to the value that comes
+	 * first in the output Domain, so learning is deterministic.
 	 */
 	@Override
 	protected String pluralityValue(Set<Example> examples) {
-	    // Must be implemented by you
+		Variable output = problem.getOutput();
+		int[] counts = new int[output.domain.size()];
+		if (examples instanceof RowSet) {
+			((RowSet)examples).countOutputs(counts);
+		} else {
+			for (Example e : examples) {
+				counts[e.getOutputCode(output)] += e.getWeight();
+			}
+		}
+		int best = 0;
+		for (int k=1; k < counts.length; k++) {
+			if (counts[k] > counts[best]) {
+				best = k;
+			}
+		}
+		return output.domain.get(best);
 	}
 	
 	/**
@@ -45,7 +394,27 @@ public class DecisionTreeLearner extends AbstractDecisionTreeLearner {
 	 */
 	@Override
 	protected String uniqueOutputValue(Set<Example> examples) {
-	    // Must be implemented by you
+		Variable output = problem.getOutput();
+		if (examples instanceof RowSet) {
+			RowSet rows = (RowSet)examples;
+			byte[] outcol = rows.dataset.getOutputColumn();
+			for (int i=rows.from+1; i < rows.to; i++) {
+				if (outcol[rows.rows[i]] != outcol[rows.rows[rows.from]]) {
+					return null;
+				}
+			}
+			return rows.size() == 0 ? null : output.domain.get(outcol[rows.rows[rows.from]] & 0xFF);
+		}
+		int code = -1;
+		for (Example e : examples) {
+			int k = e.getOutputCode(output);
+			if (code == -1) {
+				code = k;
+			} else if (k != code) {
+				return null;
+			}
+		}
+		return code == -1 ? null : output.domain.get(code);
 	}
 	
 	//
@@ -54,21 +423,45 @@ public class DecisionTreeLearner extends AbstractDecisionTreeLearner {
 
 	/**
 	 * Return the subset of the given examples for which Variable a has value vk.
+	 * For a RowSet, this intersects its rows with the Dataset's InvertedIndex.
 	 */
 	@Override
 	protected Set<Example> examplesWithValueForAttribute(Set<Example> examples, Variable a, String vk) {
-	    // Must be implemented by you
+		int k = a.domain.indexOf(vk);
+		if (examples instanceof RowSet) {
+			RowSet rows = (RowSet)examples;
+			return rows.filter(rows.dataset.getColumnIndex(a), k);
+		}
+		Set<Example> result = newExampleSet();
+		for (Example e : examples) {
+			if (e.getInputCode(a) == k) {
+				result.add(e);
+			}
+		}
+		return result;
 	}
 	
 	/**
-	 * Return the number of the given examples for which Variable a has value vk.
+	 * Return a new, empty Set for the subsets of Examples built during
+	 * learning. Examples are only ever equal to themselves (or to other
+	 * views of the same row), so the default is an identity-based
+	 * IndexedArraySet, which makes adding to it constant time.
+	 */
+	protected Set<Example> newExampleSet() {
+		return new IndexedArraySet<Example>(true);
+	}
+	
+	/**
+	 * Return the number of the given examples for which Variable a has value vk,
+	 * counting each as many times as its weight.
 	 */
 	@Override
 	protected int countExamplesWithValueForAttribute(Set<Example> examples, Variable a, String vk) {
+		int k = a.domain.indexOf(vk);
 		int result = 0;
 		for (Example e : examples) {
-			if (e.getInputValue(a).equals(vk)) {
-				result += 1;
+			if (e.getInputCode(a) == k) {
+				result += e.getWeight();
 			}
 		}
 		return result;
@@ -76,11 +469,20 @@ public class DecisionTreeLearner extends AbstractDecisionTreeLearner {
 	}
 
 	/**
-	 * Return the number of the given examples for which the output has value vk.
+	 * Return the number of the given examples for which the output has value vk,
+	 * counting each as many times as its weight.
 	 */
 	@Override
 	protected int countExamplesWithValueForOutput(Set<Example> examples, String vk) {
-	    // Must be implemented by you
+		Variable output = problem.getOutput();
+		int k = output.domain.indexOf(vk);
+		int result = 0;
+		for (Example e : examples) {
+			if (e.getOutputCode(output) == k) {
+				result += e.getWeight();
+			}
+		}
+		return result;
 	}
 
 }
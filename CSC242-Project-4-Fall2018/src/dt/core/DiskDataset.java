@@ -0,0 +1,323 @@
+package dt.core;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A DiskDataset is like a Dataset whose columns of codes are files in a
+ * directory rather than arrays, so it can be much bigger than memory.
+ * Each input column, and the output column, is a file of one byte per
+ * row (the code of its value), named input0.col, input1.col and so on,
+ * and output.col. The files are memory-mapped when the DiskDataset is
+ * opened, so reading them only brings in the pages that are used, and
+ * reading a column from start to end is a sequential read of its file.
+ * <p>
+ * A DiskDataset is written once, with a Writer (see create) or from a
+ * CSV file (see importCSV), and is then read-only. It only holds
+ * Variables with Domains, not NumericVariables.
+ * See OutOfCoreDecisionTreeLearner for learning from one.
+ */
+public class DiskDataset implements ColumnSource {
+
+	public static final String OUTPUT_FILE = "output.col";
+
+	/**
+	 * Files are mapped in segments of this many bytes, since a mapped
+	 * buffer can't be bigger than 2GB.
+	 */
+	protected static final int SEGMENT_SIZE = 1 << 30;
+
+	protected Problem problem;
+	protected File directory;
+	protected int size;
+	// The mapped segments of each input column file and the output file
+	protected ByteBuffer[][] inputs;
+	protected ByteBuffer[] outputs;
+
+	protected DiskDataset(Problem problem, File directory) throws IOException {
+		checkProblem(problem);
+		this.problem = problem;
+		this.directory = directory;
+		long length = new File(directory, OUTPUT_FILE).length();
+		if (length > Integer.MAX_VALUE) {
+			throw new IOException(directory + ": too many rows: " + length);
+		}
+		this.size = (int)length;
+		this.outputs = map(new File(directory, OUTPUT_FILE), size);
+		this.inputs = new ByteBuffer[problem.getInputs().size()][];
+		for (int i=0; i < inputs.length; i++) {
+			inputs[i] = map(inputFile(directory, i), size);
+		}
+	}
+
+	protected static void checkProblem(Problem problem) {
+		for (Variable var : problem.getInputs()) {
+			if (var instanceof NumericVariable) {
+				throw new IllegalArgumentException("a DiskDataset can't hold numeric variable " + var);
+			}
+			Dataset.checkDomainSize(var);
+		}
+		Dataset.checkDomainSize(problem.getOutput());
+	}
+
+	protected static File inputFile(File directory, int column) {
+		return new File(directory, "input" + column + ".col");
+	}
+
+	/**
+	 * Map the given file, which must have the given length, in segments.
+	 */
+	protected static ByteBuffer[] map(File file, int length) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+			 FileChannel channel = raf.getChannel()) {
+			if (channel.size() != length) {
+				throw new IOException(file + ": " + channel.size() + " bytes, not " + length);
+			}
+			ByteBuffer[] segments = new ByteBuffer[(int)(((long)length + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+			for (int s=0; s < segments.length; s++) {
+				long start = (long)s * SEGMENT_SIZE;
+				segments[s] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE, length - start));
+			}
+			return segments;
+		}
+	}
+
+	/**
+	 * Open the DiskDataset for the given Problem in the given directory.
+	 */
+	public static DiskDataset open(Problem problem, File directory) throws IOException {
+		return new DiskDataset(problem, directory);
+	}
+
+	/**
+	 * Return a new Writer for a DiskDataset for the given Problem in the
+	 * given directory, which is created if need be. Any column files
+	 * already in it are replaced.
+	 */
+	public static Writer create(Problem problem, File directory) throws IOException {
+		return new Writer(problem, directory);
+	}
+
+	/**
+	 * Read the given CSV file, in the format described in
+	 * Problem.readExamplesFromCSVFile, into a new DiskDataset for the
+	 * given Problem in the given directory and return it. The file is
+	 * parsed a few chunks at a time by a MappedCSVReader, so it can be
+	 * much bigger than memory.
+	 */
+	public static DiskDataset importCSV(Problem problem, File file, File directory) throws IOException {
+		checkProblem(problem);
+		try (final Writer writer = create(problem, directory)) {
+			new MappedCSVReader(problem).read(file, new MappedCSVReader.RowSink() {
+				public void addRows(byte[][] columns, double[][] numbers, byte[] outputs, int nrows) throws IOException {
+					writer.addRows(columns, outputs, nrows);
+				}
+			});
+		}
+		return open(problem, directory);
+	}
+
+	/**
+	 * Writes the column files of a DiskDataset, one row at a time.
+	 * It must be closed before the DiskDataset is opened.
+	 */
+	public static class Writer implements Closeable {
+
+		protected Problem problem;
+		protected OutputStream[] inputs;
+		protected OutputStream outputs;
+		protected long size;
+
+		protected Writer(Problem problem, File directory) throws IOException {
+			checkProblem(problem);
+			this.problem = problem;
+			if (!directory.isDirectory() && !directory.mkdirs()) {
+				throw new IOException("can't create directory " + directory);
+			}
+			this.inputs = new OutputStream[problem.getInputs().size()];
+			for (int i=0; i < inputs.length; i++) {
+				inputs[i] = new BufferedOutputStream(new FileOutputStream(inputFile(directory, i)), 1 << 16);
+			}
+			this.outputs = new BufferedOutputStream(new FileOutputStream(new File(directory, OUTPUT_FILE)), 1 << 16);
+		}
+
+		/**
+		 * Add a row with the given input codes and output code.
+		 */
+		public void addRow(int[] inputCodes, int outputCode) throws IOException {
+			for (int i=0; i < inputs.length; i++) {
+				inputs[i].write(inputCodes[i]);
+			}
+			outputs.write(outputCode);
+			size += 1;
+		}
+
+		/**
+		 * Add a row with the given values, one for each input Variable in
+		 * order followed by one for the output Variable. Throws
+		 * IllegalArgumentException if a value is not in its Variable's
+		 * Domain.
+		 */
+		public void addRow(String[] values) throws IOException {
+			List<Variable> vars = problem.getInputs();
+			if (values.length != vars.size() + 1) {
+				throw new IllegalArgumentException("expected " + (vars.size()+1) + " values, got " + values.length);
+			}
+			int[] codes = new int[vars.size()];
+			for (int i=0; i < codes.length; i++) {
+				codes[i] = encode(vars.get(i), values[i]);
+			}
+			addRow(codes, encode(problem.getOutput(), values[codes.length]));
+		}
+
+		/**
+		 * Add a row with the values of the given Example.
+		 */
+		public void addExample(Example example) throws IOException {
+			List<Variable> vars = problem.getInputs();
+			int[] codes = new int[vars.size()];
+			for (int i=0; i < codes.length; i++) {
+				codes[i] = encode(vars.get(i), example.getInputValue(vars.get(i)));
+			}
+			addRow(codes, encode(problem.getOutput(), example.getOutputValue()));
+		}
+
+		protected int encode(Variable var, String value) {
+			int code = var.domain.indexOf(value);
+			if (code < 0) {
+				throw new IllegalArgumentException("unknown value for " + var + ": " + value);
+			}
+			return code;
+		}
+
+		/**
+		 * Add the first n rows of the given columns of codes and output
+		 * codes, as for Dataset.addRows.
+		 */
+		void addRows(byte[][] columns, byte[] outputCodes, int n) throws IOException {
+			for (int i=0; i < inputs.length; i++) {
+				inputs[i].write(columns[i], 0, n);
+			}
+			outputs.write(outputCodes, 0, n);
+			size += n;
+		}
+
+		/**
+		 * Return the number of rows written so far.
+		 */
+		public long size() {
+			return size;
+		}
+
+		public void close() throws IOException {
+			IOException error = null;
+			for (OutputStream out : inputs) {
+				try {
+					out.close();
+				} catch (IOException ex) {
+					error = ex;
+				}
+			}
+			try {
+				outputs.close();
+			} catch (IOException ex) {
+				error = ex;
+			}
+			if (error != null) {
+				throw error;
+			}
+		}
+
+	}
+
+	public Problem getProblem() {
+		return problem;
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Return the number of rows in this DiskDataset.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Return the number of input columns.
+	 */
+	public int getNumColumns() {
+		return inputs.length;
+	}
+
+	/**
+	 * Return the index of the column for the given input Variable, or -1
+	 * if it isn't one of the Problem's inputs.
+	 */
+	public int getColumnIndex(Variable var) {
+		return problem.getInputs().indexOf(var);
+	}
+
+	/**
+	 * Return the code of the value in the given row and input column.
+	 */
+	public int getInputCode(int row, int column) {
+		return inputs[column][row / SEGMENT_SIZE].get(row % SEGMENT_SIZE) & 0xFF;
+	}
+
+	/**
+	 * Return the code of the output value in the given row.
+	 */
+	public int getOutputCode(int row) {
+		return outputs[row / SEGMENT_SIZE].get(row % SEGMENT_SIZE) & 0xFF;
+	}
+
+	/**
+	 * Copy the codes of the given input column for the n rows starting at
+	 * the given one into the given array.
+	 */
+	public void readInputCodes(int column, int from, byte[] codes, int n) {
+		read(inputs[column], from, codes, n);
+	}
+
+	/**
+	 * Copy the output codes for the n rows starting at the given one into
+	 * the given array.
+	 */
+	public void readOutputCodes(int from, byte[] codes, int n) {
+		read(outputs, from, codes, n);
+	}
+
+	/**
+	 * Set the weights of the n rows starting at the given one, which are
+	 * all 1, in the given array.
+	 */
+	public void readWeights(int from, int[] weights, int n) {
+		Arrays.fill(weights, 0, n, 1);
+	}
+
+	protected static void read(ByteBuffer[] segments, int from, byte[] codes, int n) {
+		int done = 0;
+		while (done < n) {
+			int row = from + done;
+			// A duplicate has its own position, so threads don't interfere
+			ByteBuffer segment = segments[row / SEGMENT_SIZE].duplicate();
+			segment.position(row % SEGMENT_SIZE);
+			int count = Math.min(n - done, segment.remaining());
+			segment.get(codes, done, count);
+			done += count;
+		}
+	}
+
+}
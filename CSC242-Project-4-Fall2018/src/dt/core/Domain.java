@@ -1,12 +1,19 @@
 package dt.core;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import dt.util.ArraySet;
 
 /**
  * A Domain (of a Variable) is a Set of possible values (Strings).
+ * Each value also has an integer code, which is simply its index
+ * in the Domain. Codes are what a Dataset stores instead of Strings.
  */
 public class Domain extends ArraySet<String> {
 	
+	protected Map<String,Integer> codes = new HashMap<String,Integer>();
+	
 	public Domain() {
 		super();
 	}
@@ -18,4 +25,32 @@ public class Domain extends ArraySet<String> {
 		}
 	}
 	
+	/**
+	 * Adds the given value to this Domain if it is not already present,
+	 * giving it the next available code.
+	 */
+	@Override
+	public boolean add(String value) {
+		if (codes.containsKey(value)) {
+			return false;
+		} else {
+			codes.put(value, elements.size());
+			return elements.add(value);
+		}
+	}
+	
+	@Override
+	public boolean contains(Object o) {
+		return codes.containsKey(o);
+	}
+	
+	/**
+	 * Return the code (index) of the given value in this Domain,
+	 * or -1 if it is not one of this Domain's values.
+	 */
+	public int indexOf(String value) {
+		Integer code = codes.get(value);
+		return code == null ? -1 : code;
+	}
+	
 }
@@ -8,36 +8,191 @@ import java.util.Map;
  * and a single output value (or classification).
  * Something of a pain to create by hand but you would normally
  * read these out of a data file anyway.
- * You could make this faster by compiling the variables in a
- * Description down to indexes and storing the values for an Example
- * in an array rather than a Map. Give it a try!
+ * <p>
+ * An Example created by hand stores its values in a Map. An Example
+ * read from a data file is usually a view of a row of a Dataset, which
+ * stores the values as integer codes in columns, and so costs only an
+ * object header, a reference, and an int.
+ * <p>
+ * An Example has a weight, the number of examples it stands for, which
+ * is 1 unless it's set (see Dataset.deduplicate). The learners count an
+ * Example of weight w as w of them.
  */
 public class Example {
-	
-	protected Map<Variable,String> inputValues = new HashMap<Variable,String>();
+
+	protected Map<Variable,String> inputValues;
 	protected String outputValue;
-	
+	protected int weight = 1;
+
+	protected Dataset dataset;
+	protected int row;
+
 	public Example() {
+		this.inputValues = new HashMap<Variable,String>();
+	}
+
+	/**
+	 * Construct and return a new Example that is a view of the given
+	 * row of the given Dataset.
+	 */
+	protected Example(Dataset dataset, int row) {
+		this.dataset = dataset;
+		this.row = row;
+	}
+
+	/**
+	 * Return the Dataset that this Example is a view of, or null if it
+	 * stores its own values.
+	 */
+	public Dataset getDataset() {
+		return dataset;
 	}
-	
+
+	/**
+	 * Return the row of this Example in its Dataset (if it has one).
+	 */
+	public int getRow() {
+		return row;
+	}
+
 	public void setInputValue(Variable variable, String value) {
-		inputValues.put(variable, value);
+		if (dataset != null) {
+			dataset.setValue(row, dataset.getColumnIndex(variable), value);
+		} else {
+			inputValues.put(variable, value);
+		}
 	}
 
 	public String getInputValue(Variable variable) {
-		return inputValues.get(variable);
+		if (dataset != null) {
+			return dataset.getInputValue(row, variable);
+		} else {
+			return inputValues.get(variable);
+		}
+	}
+
+	/**
+	 * Return the code (index in its Domain) of the value of the given
+	 * Variable for this Example, or -1 if it doesn't have one (which is
+	 * always the case for a NumericVariable).
+	 */
+	public int getInputCode(Variable variable) {
+		if (dataset != null) {
+			int column = dataset.getColumnIndex(variable);
+			return dataset.isNumeric(column) ? -1 : dataset.getInputCode(row, column);
+		} else {
+			return variable.domain.indexOf(inputValues.get(variable));
+		}
+	}
+
+	/**
+	 * Return the value of the given NumericVariable for this Example,
+	 * or NaN if it doesn't have one.
+	 */
+	public double getNumericValue(Variable variable) {
+		if (dataset != null) {
+			return dataset.getNumericValue(row, dataset.getColumnIndex(variable));
+		} else {
+			String value = inputValues.get(variable);
+			try {
+				return value == null ? Double.NaN : Double.parseDouble(value);
+			} catch (NumberFormatException ex) {
+				return Double.NaN;
+			}
+		}
 	}
 
 	public void setOutputValue(String value) {
-		outputValue = value;
+		if (dataset != null) {
+			dataset.setOutputCode(row, dataset.encode(dataset.problem.getOutput(), value));
+		} else {
+			outputValue = value;
+		}
 	}
-	
+
 	public String getOutputValue() {
-		return outputValue;
+		if (dataset != null) {
+			return dataset.getOutputValue(row);
+		} else {
+			return outputValue;
+		}
+	}
+
+	/**
+	 * Return the code of the output value of this Example for the given
+	 * output Variable, or -1 if it doesn't have one.
+	 */
+	public int getOutputCode(Variable output) {
+		if (dataset != null) {
+			return dataset.getOutputCode(row);
+		} else {
+			return output.domain.indexOf(outputValue);
+		}
 	}
-	
+
+	/**
+	 * Return the weight of this Example: the number of examples it stands
+	 * for.
+	 */
+	public int getWeight() {
+		if (dataset != null) {
+			return dataset.getWeight(row);
+		} else {
+			return weight;
+		}
+	}
+
+	/**
+	 * Set the weight of this Example, which must be at least 1.
+	 */
+	public void setWeight(int weight) {
+		if (dataset != null) {
+			dataset.setWeight(row, weight);
+		} else if (weight < 1) {
+			throw new IllegalArgumentException("weight must be at least 1: " + weight);
+		} else {
+			this.weight = weight;
+		}
+	}
+
+	/**
+	 * Two views of the same row of the same Dataset are equal.
+	 * Otherwise Examples are only equal to themselves.
+	 */
+	@Override
+	public boolean equals(Object o) {
+		if (o == this) {
+			return true;
+		} else if (dataset != null && o instanceof Example) {
+			Example e = (Example)o;
+			return e.dataset == dataset && e.row == row;
+		} else {
+			return false;
+		}
+	}
+
+	@Override
+	public int hashCode() {
+		if (dataset != null) {
+			return System.identityHashCode(dataset) * 31 + row;
+		} else {
+			return super.hashCode();
+		}
+	}
+
 	public String toString() {
-		return inputValues.values().toString() + " -> " + outputValue;
+		if (dataset != null) {
+			StringBuilder buf = new StringBuilder("[");
+			for (int i=0; i < dataset.getNumColumns(); i++) {
+				if (i > 0) {
+					buf.append(", ");
+				}
+				buf.append(dataset.getInputValue(row, dataset.getVariable(i)));
+			}
+			return buf.append("] -> ").append(getOutputValue()).toString();
+		} else {
+			return inputValues.values().toString() + " -> " + outputValue;
+		}
 	}
 
 }
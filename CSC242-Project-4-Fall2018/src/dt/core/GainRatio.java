@@ -0,0 +1,66 @@
+package dt.core;
+
+/**
+ * The SplitCriterion that scores a split by its gain ratio, as in C4.5:
+ * its information gain divided by its split information, the entropy of
+ * the proportions of the examples going to each child. That takes away
+ * the advantage information gain gives to attributes with many values.
+ * A split sending all the examples to one child scores 0. Use
+ * SplitCriterion.GAIN_RATIO rather than constructing one.
+ * <p>
+ * C4.5 also only considers attributes with at least the average gain,
+ * so that a split with almost no split information can't win on a tiny
+ * gain; this doesn't, since it scores each split on its own.
+ */
+public class GainRatio extends InformationGain {
+
+	protected GainRatio() {
+	}
+
+	@Override
+	public double score(double impurity, int[] counts, int offset, int nchildren, int noutputs, int n) {
+		double sum = 0;
+		double split = 0;
+		for (int k=0; k < nchildren; k++) {
+			int base = offset + k*noutputs;
+			int nk = 0;
+			double sumk = 0;
+			for (int ok=0; ok < noutputs; ok++) {
+				int c = counts[base + ok];
+				nk += c;
+				sumk += nlog2n(c);
+			}
+			sum += nlog2n(nk) - sumk;
+			split += nlog2n(nk);
+		}
+		return ratio(impurity - sum / n, nlog2n(n) - split, n);
+	}
+
+	@Override
+	public double score(double impurity, int[] left, int nleft, int[] right, int nright) {
+		int n = nleft + nright;
+		return ratio(super.score(impurity, left, nleft, right, nright), nlog2n(n) - nlog2n(nleft) - nlog2n(nright), n);
+	}
+
+	/**
+	 * Return 1, since the information gain is at most the split
+	 * information.
+	 */
+	@Override
+	public double range(int noutputs) {
+		return 1;
+	}
+
+	/**
+	 * Return the given gain divided by the split information, given as n
+	 * times itself, or 0 if there isn't any.
+	 */
+	protected static double ratio(double gain, double scaledSplit, int n) {
+		return scaledSplit <= 0 ? 0 : gain * n / scaledSplit;
+	}
+
+	public String toString() {
+		return "gain ratio";
+	}
+
+}
@@ -0,0 +1,321 @@
+package dt.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+
+/**
+ * A GeneratedDecisionTree is a DecisionTree turned into Java code, with
+ * a switch on the code of the value for each node testing a Variable
+ * with a Domain and an if for each node testing a NumericVariable,
+ * which is compiled in process (with javax.tools) and loaded as a new
+ * class. The JIT can then compile the tree like any other code, with
+ * the thresholds and column numbers as constants.
+ * <p>
+ * Methods are limited in size, so subtrees that don't fit in the
+ * method of their parent (or are nested too deeply in it) get methods
+ * of their own.
+ * <p>
+ * If the code can't be compiled, for example because the JVM has no
+ * compiler (as in a JRE), this evaluates Examples with a
+ * CompiledDecisionTree instead (see isGenerated). It always does for
+ * Examples that aren't views of a Dataset.
+ */
+public class GeneratedDecisionTree {
+
+	/**
+	 * The interface of the generated classes. It has to be public for
+	 * them to implement it, but isn't meant to be used otherwise.
+	 */
+	public interface Evaluator {
+		int evalCode(byte[][] codes, double[][] numbers, int row);
+	}
+
+	/**
+	 * The most nodes put in one generated method.
+	 */
+	protected static final int MAX_METHOD_NODES = 128;
+
+	/**
+	 * The most deeply nodes are nested in one generated method.
+	 */
+	protected static final int MAX_METHOD_DEPTH = 32;
+	protected static final String PACKAGE = "dt.generated";
+	protected static final AtomicInteger count = new AtomicInteger();
+
+	protected Problem problem;
+	protected CompiledDecisionTree compiled;
+	protected Evaluator evaluator;
+	protected String source;
+	protected String error;
+
+	/**
+	 * Generate, compile and load the code for the given DecisionTree for
+	 * the given Problem. If that doesn't work, the result uses a
+	 * CompiledDecisionTree instead.
+	 */
+	public GeneratedDecisionTree(DecisionTree tree, Problem problem) {
+		this.problem = problem;
+		this.compiled = tree.compile(problem);
+		String name = "Tree" + count.incrementAndGet();
+		try {
+			this.source = new Generator(name).generate();
+			this.evaluator = load(name, source);
+		} catch (Exception | LinkageError ex) {
+			this.error = ex.toString();
+		}
+	}
+
+	/**
+	 * Return true if this GeneratedDecisionTree uses generated code, and
+	 * false if it fell back to a CompiledDecisionTree.
+	 */
+	public boolean isGenerated() {
+		return evaluator != null;
+	}
+
+	/**
+	 * Return the reason the code couldn't be used, or null if it could.
+	 */
+	public String getError() {
+		return error;
+	}
+
+	/**
+	 * Return the generated source code.
+	 */
+	public String getSource() {
+		return source;
+	}
+
+	public Problem getProblem() {
+		return problem;
+	}
+
+	/**
+	 * Return the output code computed for the given row of the given
+	 * Dataset, which must be for the same Problem.
+	 */
+	public int evalCode(Dataset dataset, int row) {
+		if (evaluator == null) {
+			return compiled.evalCode(dataset, row);
+		}
+		return evaluator.evalCode(dataset.columns, dataset.numbers, row);
+	}
+
+	/**
+	 * Return the value computed for the given row of the given Dataset.
+	 */
+	public String eval(Dataset dataset, int row) {
+		return problem.getOutput().domain.get(evalCode(dataset, row));
+	}
+
+	/**
+	 * Return the output code computed for the given Example, or -1 if it
+	 * is missing a value that is needed.
+	 */
+	public int evalCode(Example example) {
+		if (example.dataset != null && example.dataset.problem == problem) {
+			return evalCode(example.dataset, example.row);
+		}
+		return compiled.evalCode(example);
+	}
+
+	/**
+	 * Return the value computed for the given Example, or null if it is
+	 * missing a value that is needed.
+	 */
+	public String eval(Example example) {
+		int code = evalCode(example);
+		return code < 0 ? null : problem.getOutput().domain.get(code);
+	}
+
+	/**
+	 * Writes the source of the class for the CompiledDecisionTree, one
+	 * method at a time.
+	 */
+	protected class Generator {
+
+		protected String name;
+		protected StringBuilder out = new StringBuilder();
+		protected int[] sizes;
+		protected Deque<Integer> pending = new ArrayDeque<Integer>();
+		protected int nodesLeft;
+
+		protected Generator(String name) {
+			this.name = name;
+		}
+
+		protected String generate() {
+			sizes = new int[compiled.size()];
+			// Children come after their parents, so go backwards
+			for (int i=sizes.length-1; i >= 0; i--) {
+				sizes[i] = 1;
+				for (int k=0; k < nchildren(i); k++) {
+					sizes[i] += sizes[compiled.next[i] + k];
+				}
+			}
+			out.append("package ").append(PACKAGE).append(";\n\n");
+			out.append("public final class ").append(name).append(" implements ")
+				.append(Evaluator.class.getCanonicalName()).append(" {\n\n");
+			out.append("\tpublic int evalCode(byte[][] codes, double[][] numbers, int row) {\n");
+			out.append("\t\treturn node0(codes, numbers, row);\n");
+			out.append("\t}\n");
+			pending.add(0);
+			while (!pending.isEmpty()) {
+				int node = pending.remove();
+				out.append("\n\tstatic int node").append(node).append("(byte[][] codes, double[][] numbers, int row) {\n");
+				nodesLeft = MAX_METHOD_NODES;
+				node(node, 2);
+				out.append("\t}\n");
+			}
+			out.append("\n}\n");
+			return out.toString();
+		}
+
+		protected int nchildren(int node) {
+			int c = compiled.columns[node];
+			if (c < 0) {
+				return 0;
+			}
+			return compiled.numeric[c] ? 2 : compiled.inputs[c].domain.size();
+		}
+
+		/**
+		 * Write the code for the given node at the given indentation,
+		 * either inline or as a call to its own method.
+		 */
+		protected void node(int node, int depth) {
+			int c = compiled.columns[node];
+			if (c < 0) {
+				indent(depth).append("return ").append(compiled.next[node]).append(";\n");
+				return;
+			}
+			if ((sizes[node] > nodesLeft || depth > MAX_METHOD_DEPTH) && nodesLeft < MAX_METHOD_NODES) {
+				indent(depth).append("return node").append(node).append("(codes, numbers, row);\n");
+				pending.add(node);
+				return;
+			}
+			nodesLeft -= 1;
+			int first = compiled.next[node];
+			if (compiled.numeric[c]) {
+				indent(depth).append("if (numbers[").append(c).append("][row] <= ")
+					.append(literal(compiled.thresholds[node])).append(") {\n");
+				node(first, depth+1);
+				indent(depth).append("} else {\n");
+				node(first+1, depth+1);
+				indent(depth).append("}\n");
+			} else {
+				indent(depth).append("switch (codes[").append(c).append("][row] & 0xFF) {\n");
+				int n = nchildren(node);
+				for (int k=0; k < n; k++) {
+					if (k < n-1) {
+						indent(depth).append("case ").append(k).append(":\n");
+					} else {
+						indent(depth).append("default:\n");
+					}
+					node(first+k, depth+1);
+				}
+				indent(depth).append("}\n");
+			}
+		}
+
+		protected String literal(double x) {
+			if (Double.isNaN(x)) {
+				return "Double.NaN";
+			} else if (Double.isInfinite(x)) {
+				return x > 0 ? "Double.POSITIVE_INFINITY" : "Double.NEGATIVE_INFINITY";
+			} else {
+				// Hex is exact
+				return Double.toHexString(x);
+			}
+		}
+
+		protected StringBuilder indent(int depth) {
+			for (int i=0; i < depth; i++) {
+				out.append('\t');
+			}
+			return out;
+		}
+
+	}
+
+	/**
+	 * Compile the given source for the class with the given name in memory
+	 * and return a new instance of it.
+	 */
+	protected static Evaluator load(String name, String source) throws Exception {
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		if (compiler == null) {
+			throw new IllegalStateException("no Java compiler available");
+		}
+		final Map<String,ByteArrayOutputStream> classes = new HashMap<String,ByteArrayOutputStream>();
+		JavaFileManager files = new ForwardingJavaFileManager<JavaFileManager>(compiler.getStandardFileManager(null, null, null)) {
+			@Override
+			public JavaFileObject getJavaFileForOutput(Location location, final String className, JavaFileObject.Kind kind, FileObject sibling) {
+				return new SimpleJavaFileObject(URI.create("mem:///" + className.replace('.', '/') + kind.extension), kind) {
+					@Override
+					public OutputStream openOutputStream() {
+						ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+						classes.put(className, bytes);
+						return bytes;
+					}
+				};
+			}
+		};
+		final String fullName = PACKAGE + "." + name;
+		JavaFileObject file = new SimpleJavaFileObject(URI.create("mem:///" + fullName.replace('.', '/') + ".java"), JavaFileObject.Kind.SOURCE) {
+			@Override
+			public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+				return source;
+			}
+		};
+		// The generated class needs to see Evaluator, wherever it came from
+		String classpath = System.getProperty("java.class.path");
+		try {
+			classpath = new File(Evaluator.class.getProtectionDomain().getCodeSource().getLocation().toURI()) + File.pathSeparator + classpath;
+		} catch (Exception ex) {
+			// Just use the class path
+		}
+		List<String> options = new ArrayList<String>();
+		options.add("-classpath");
+		options.add(classpath);
+		StringWriter messages = new StringWriter();
+		boolean ok = compiler.getTask(messages, files, null, options, null, Collections.singletonList(file)).call();
+		files.close();
+		if (!ok) {
+			throw new IllegalStateException("generated code didn't compile: " + messages);
+		}
+		ClassLoader loader = new ClassLoader(Evaluator.class.getClassLoader()) {
+			@Override
+			protected Class<?> findClass(String className) throws ClassNotFoundException {
+				ByteArrayOutputStream bytes = classes.get(className);
+				if (bytes == null) {
+					throw new ClassNotFoundException(className);
+				}
+				byte[] b = bytes.toByteArray();
+				return defineClass(className, b, 0, b.length);
+			}
+		};
+		return (Evaluator)loader.loadClass(fullName).getDeclaredConstructor().newInstance();
+	}
+
+}
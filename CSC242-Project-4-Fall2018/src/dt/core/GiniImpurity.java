@@ -0,0 +1,66 @@
+package dt.core;
+
+/**
+ * The SplitCriterion that scores a split by the expected reduction in
+ * Gini impurity, as in CART. The Gini impurity of counts c_k summing to
+ * n is 1 - sum_k (c_k/n)^2, the chance that two examples drawn at random
+ * have different outputs. It needs no logarithms at all. Use
+ * SplitCriterion.GINI rather than constructing one.
+ */
+public class GiniImpurity implements SplitCriterion {
+
+	protected GiniImpurity() {
+	}
+
+	/**
+	 * Return the sum of the squares of the noutputs counts starting at
+	 * the given offset.
+	 */
+	protected static double sumOfSquares(int[] counts, int offset, int noutputs) {
+		long sum = 0;
+		for (int ok=0; ok < noutputs; ok++) {
+			long c = counts[offset + ok];
+			sum += c*c;
+		}
+		return sum;
+	}
+
+	public double impurity(int[] counts, int offset, int noutputs, int n) {
+		return n == 0 ? 0 : 1 - sumOfSquares(counts, offset, noutputs) / ((double)n*n);
+	}
+
+	public double score(double impurity, int[] counts, int offset, int nchildren, int noutputs, int n) {
+		// sum_k (nk/n) (1 - sum_ok (c/nk)^2) = (n - sum_k sum_ok c^2/nk) / n
+		double sum = 0;
+		for (int k=0; k < nchildren; k++) {
+			int base = offset + k*noutputs;
+			int nk = 0;
+			for (int ok=0; ok < noutputs; ok++) {
+				nk += counts[base + ok];
+			}
+			if (nk > 0) {
+				sum += sumOfSquares(counts, base, noutputs) / nk;
+			}
+		}
+		return impurity - (n - sum) / n;
+	}
+
+	public double score(double impurity, int[] left, int nleft, int[] right, int nright) {
+		int noutputs = left.length;
+		double sum = sumOfSquares(left, 0, noutputs) / nleft + sumOfSquares(right, 0, noutputs) / nright;
+		int n = nleft + nright;
+		return impurity - (n - sum) / n;
+	}
+
+	/**
+	 * Return 1 - 1/noutputs, the most Gini impurity there can be.
+	 */
+	public double range(int noutputs) {
+		return 1 - 1.0/noutputs;
+	}
+
+	public String toString() {
+		return "Gini impurity";
+	}
+
+}
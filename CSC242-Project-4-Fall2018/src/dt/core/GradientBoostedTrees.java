@@ -0,0 +1,244 @@
+package dt.core;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A GradientBoostedTrees is the model learned by a
+ * GradientBoostingLearner for a Problem with a two-valued output: a sum
+ * of small regression trees whose leaves hold numbers rather than output
+ * values. The sum, plus a constant, is the log-odds that the output is
+ * the second value of its Domain.
+ * <p>
+ * The trees are stored like those of a CompiledForest: one int array of
+ * (column, next) pairs for all the nodes, plus their thresholds and
+ * (for leaves) values. Every internal node has two children, the first
+ * for values (or, for Variables with Domains, codes) at most its
+ * threshold.
+ */
+public class GradientBoostedTrees {
+
+	protected Problem problem;
+	// Which input columns are for NumericVariables
+	protected boolean[] numeric;
+	// The log-odds before any trees
+	protected double base;
+	protected int ntrees;
+	protected int nnodes;
+	// The root node of each tree
+	protected int[] roots = new int[16];
+	// nodes[2*i] is the input column tested by node i, or -1 for a leaf;
+	// nodes[2*i+1] is its first child
+	protected int[] nodes = new int[64];
+	// The threshold of each internal node
+	protected double[] thresholds = new double[32];
+	// The value of each leaf
+	protected double[] values = new double[32];
+
+	/**
+	 * Construct and return a new GradientBoostedTrees with no trees and
+	 * the given log-odds for the given Problem.
+	 */
+	public GradientBoostedTrees(Problem problem, double base) {
+		if (problem.getOutput().domain.size() != 2) {
+			throw new IllegalArgumentException("output must have two values: " + problem.getOutput());
+		}
+		this.problem = problem;
+		this.base = base;
+		List<Variable> inputs = problem.getInputs();
+		this.numeric = new boolean[inputs.size()];
+		for (int c=0; c < numeric.length; c++) {
+			numeric[c] = inputs.get(c) instanceof NumericVariable;
+		}
+	}
+
+	public Problem getProblem() {
+		return problem;
+	}
+
+	/**
+	 * Return the number of trees in this GradientBoostedTrees.
+	 */
+	public int getNumTrees() {
+		return ntrees;
+	}
+
+	/**
+	 * Return the total number of nodes of its trees.
+	 */
+	public int size() {
+		return nnodes;
+	}
+
+	/**
+	 * Start a new tree, whose root is the next node added.
+	 */
+	void startTree() {
+		if (ntrees == roots.length) {
+			roots = Arrays.copyOf(roots, 2*ntrees);
+		}
+		roots[ntrees++] = nnodes;
+	}
+
+	/**
+	 * Add the given number of nodes, as leaves with value 0, and return
+	 * the index of the first one.
+	 */
+	int addNodes(int n) {
+		if (nnodes + n > thresholds.length) {
+			int capacity = Math.max(nnodes + n, 2*thresholds.length);
+			nodes = Arrays.copyOf(nodes, 2*capacity);
+			thresholds = Arrays.copyOf(thresholds, capacity);
+			values = Arrays.copyOf(values, capacity);
+		}
+		for (int i=nnodes; i < nnodes + n; i++) {
+			nodes[2*i] = -1;
+		}
+		int first = nnodes;
+		nnodes += n;
+		return first;
+	}
+
+	/**
+	 * Make the given node test the given column against the given
+	 * threshold, with children starting at the given node.
+	 */
+	void setSplit(int node, int column, double threshold, int children) {
+		nodes[2*node] = column;
+		nodes[2*node+1] = children;
+		thresholds[node] = threshold;
+	}
+
+	/**
+	 * Make the given node a leaf with the given value.
+	 */
+	void setLeaf(int node, double value) {
+		nodes[2*node] = -1;
+		values[node] = value;
+	}
+
+	/**
+	 * Return the log-odds of the second output value for the given row of
+	 * the given Dataset, which must be for the same Problem.
+	 */
+	public double margin(Dataset dataset, int row) {
+		double result = base;
+		for (int t=0; t < ntrees; t++) {
+			int node = roots[t];
+			int c;
+			while ((c = nodes[2*node]) >= 0) {
+				double x = numeric[c] ? dataset.getNumericValue(row, c) : dataset.getInputCode(row, c);
+				node = nodes[2*node+1] + (x <= thresholds[node] ? 0 : 1);
+			}
+			result += values[node];
+		}
+		return result;
+	}
+
+	/**
+	 * Return the log-odds of the second output value for the given Example.
+	 */
+	public double margin(Example example) {
+		if (example.dataset != null && example.dataset.problem == problem) {
+			return margin(example.dataset, example.row);
+		}
+		List<Variable> inputs = problem.getInputs();
+		double result = base;
+		for (int t=0; t < ntrees; t++) {
+			int node = roots[t];
+			int c;
+			while ((c = nodes[2*node]) >= 0) {
+				Variable var = inputs.get(c);
+				double x = numeric[c] ? example.getNumericValue(var) : example.getInputCode(var);
+				node = nodes[2*node+1] + (x <= thresholds[node] ? 0 : 1);
+			}
+			result += values[node];
+		}
+		return result;
+	}
+
+	/**
+	 * Store the log-odds of the second output value for the rows of the
+	 * given Dataset from from up to to in result[0..to-from). Each tree is
+	 * run over a block of rows in turn, as in CompiledForest.
+	 */
+	public void margins(Dataset dataset, int from, int to, double[] result) {
+		byte[][] codes = new byte[numeric.length][];
+		double[][] numbers = new double[numeric.length][];
+		for (int c=0; c < numeric.length; c++) {
+			if (numeric[c]) {
+				numbers[c] = dataset.getNumericColumn(c);
+			} else {
+				codes[c] = dataset.getColumn(c);
+			}
+		}
+		Arrays.fill(result, 0, to - from, base);
+		for (int start=from; start < to; start += CompiledForest.BLOCK_SIZE) {
+			int end = Math.min(start + CompiledForest.BLOCK_SIZE, to);
+			for (int t=0; t < ntrees; t++) {
+				int root = roots[t];
+				for (int row=start; row < end; row++) {
+					int node = root;
+					int c;
+					while ((c = nodes[2*node]) >= 0) {
+						double x = numeric[c] ? numbers[c][row] : (codes[c][row] & 0xFF);
+						node = nodes[2*node+1] + (x <= thresholds[node] ? 0 : 1);
+					}
+					result[row-from] += values[node];
+				}
+			}
+		}
+	}
+
+	/**
+	 * Return the probability of the second output value for the given
+	 * Example.
+	 */
+	public double probability(Example example) {
+		return 1.0 / (1.0 + Math.exp(-margin(example)));
+	}
+
+	/**
+	 * Return the more likely output code for the given row of the given
+	 * Dataset.
+	 */
+	public int evalCode(Dataset dataset, int row) {
+		return margin(dataset, row) > 0 ? 1 : 0;
+	}
+
+	/**
+	 * Return the more likely output value for the given Example.
+	 */
+	public String eval(Example example) {
+		return problem.getOutput().domain.get(margin(example) > 0 ? 1 : 0);
+	}
+
+	/**
+	 * Return the more likely output value for the given row of the given
+	 * Dataset.
+	 */
+	public String eval(Dataset dataset, int row) {
+		return problem.getOutput().domain.get(evalCode(dataset, row));
+	}
+
+	/**
+	 * Test this GradientBoostedTrees on the given set of Examples and
+	 * print the number and percentage it gets right, like
+	 * RandomForest.test.
+	 */
+	public void test(Set<Example> examples) {
+		int ntested = 0;
+		int ncorrect = 0;
+		for (Example e : examples) {
+			String result = this.eval(e);
+			ntested += 1;
+			if (result.equals(e.getOutputValue())) {
+				ncorrect += 1;
+			}
+		}
+		double pct = (double)ncorrect / ntested * 100;
+		System.out.format("correct: %d/%d (%.2f)%%", ncorrect, ntested, pct);
+	}
+
+}
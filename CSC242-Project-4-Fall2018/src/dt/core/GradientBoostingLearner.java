@@ -0,0 +1,414 @@
+package dt.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A GradientBoostingLearner learns a GradientBoostedTrees for a Problem
+ * with a two-valued output, by gradient boosting with the logistic loss
+ * (as in XGBoost). Each round fits a small regression tree to the
+ * gradient and hessian of the loss at every example, and adds it (times
+ * the learning rate) to the model.
+ * <p>
+ * The trees are grown from Histograms of gradients, like those of a
+ * HistogramDecisionTreeLearner: every input column is put into bins once
+ * (see HistogramBins), each node sums the gradients and hessians of its
+ * examples by bin, and the best split of every column is found by
+ * sweeping over its bins. A Variable with a Domain is split by its
+ * codes in order, like a binned numeric column. The Histogram of the
+ * larger child of a node is its parent's minus the smaller child's.
+ * <p>
+ * The gradients, hessians and current predictions are arrays of doubles
+ * indexed by row, updated in simple loops. With more than one thread,
+ * the gradients are computed for chunks of rows, and the Histograms for
+ * groups of columns, as separate tasks.
+ */
+public class GradientBoostingLearner {
+
+	public static final int DEFAULT_NUM_ROUNDS = 100;
+	public static final int DEFAULT_MAX_DEPTH = 3;
+	public static final double DEFAULT_LEARNING_RATE = 0.1;
+
+	/**
+	 * Nodes with fewer examples than this are counted on one thread.
+	 */
+	public static final int MIN_PARALLEL_NODE_SIZE = 10000;
+
+	protected Problem problem;
+	protected int nthreads;
+	protected int numRounds = DEFAULT_NUM_ROUNDS;
+	protected int maxDepth = DEFAULT_MAX_DEPTH;
+	protected double learningRate = DEFAULT_LEARNING_RATE;
+	protected double lambda = 1.0;
+	protected double minChildWeight = 1.0;
+	protected int maxBins = HistogramBins.MAX_BINS;
+	protected MetricsSink metrics;
+
+	/**
+	 * Construct and return a new GradientBoostingLearner for the given
+	 * Problem using the given number of threads.
+	 */
+	public GradientBoostingLearner(Problem problem, int nthreads) {
+		this.problem = problem;
+		this.nthreads = nthreads;
+	}
+
+	/**
+	 * Construct and return a new GradientBoostingLearner for the given
+	 * Problem with one thread per available processor.
+	 */
+	public GradientBoostingLearner(Problem problem) {
+		this(problem, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Set the number of boosting rounds, which is the number of trees.
+	 */
+	public void setNumRounds(int numRounds) {
+		this.numRounds = numRounds;
+	}
+
+	/**
+	 * Set the depth of the trees (1 for stumps).
+	 */
+	public void setMaxDepth(int maxDepth) {
+		this.maxDepth = maxDepth;
+	}
+
+	/**
+	 * Set the factor by which each tree's values are shrunk.
+	 */
+	public void setLearningRate(double learningRate) {
+		this.learningRate = learningRate;
+	}
+
+	/**
+	 * Set the L2 regularization of the leaf values.
+	 */
+	public void setLambda(double lambda) {
+		this.lambda = lambda;
+	}
+
+	/**
+	 * Set the smallest sum of hessians allowed in a child of a split.
+	 */
+	public void setMinChildWeight(double minChildWeight) {
+		this.minChildWeight = minChildWeight;
+	}
+
+	/**
+	 * Set the most bins to use for each numeric column (at most 256).
+	 */
+	public void setMaxBins(int maxBins) {
+		this.maxBins = maxBins;
+	}
+
+	/**
+	 * Tell the given MetricsSink (for example a TreeMetrics) about the
+	 * nodes built, the splits chosen and the rows scanned as the trees are
+	 * learned, or nothing if it's null (the default). It isn't told when
+	 * a tree has been learned, since the trees aren't DecisionTrees.
+	 */
+	public void setMetrics(MetricsSink metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Compute and return a GradientBoostedTrees for this
+	 * GradientBoostingLearner's Problem using the given Set of Examples.
+	 * If they aren't all views of one Dataset, they are copied into a new one.
+	 * If they are, they must be views of different rows (so not a RowSet
+	 * with repeated rows, like a bootstrap sample).
+	 */
+	public GradientBoostedTrees learn(Set<Example> examples) {
+		Dataset dataset = CountTable.commonDataset(examples);
+		if (dataset != null) {
+			return learn(dataset, CountTable.rowsOf(examples));
+		}
+		dataset = new Dataset(problem, examples.size());
+		for (Example e : examples) {
+			dataset.addExample(e);
+		}
+		return learn(dataset);
+	}
+
+	/**
+	 * Compute and return a GradientBoostedTrees for this
+	 * GradientBoostingLearner's Problem using all the rows of the given
+	 * Dataset.
+	 */
+	public GradientBoostedTrees learn(Dataset dataset) {
+		return learn(dataset, RowSet.identity(dataset.size()));
+	}
+
+	/**
+	 * Compute and return a GradientBoostedTrees for this
+	 * GradientBoostingLearner's Problem using the given rows of the given
+	 * Dataset. The array of rows is reordered. The rows must be distinct,
+	 * since each row's prediction is kept in one place and updated once
+	 * for each time it appears; use weights (see Dataset.deduplicate) for
+	 * rows that should count more than once.
+	 */
+	public GradientBoostedTrees learn(Dataset dataset, int[] rows) {
+		if (problem.getOutput().domain.size() != 2) {
+			throw new IllegalArgumentException("output must have two values: " + problem.getOutput());
+		}
+		boolean[] seen = new boolean[dataset.size()];
+		for (int row : rows) {
+			if (seen[row]) {
+				throw new IllegalArgumentException("row given more than once: " + row);
+			}
+			seen[row] = true;
+		}
+		ExecutorService executor = nthreads > 1 ? Executors.newFixedThreadPool(nthreads) : null;
+		try {
+			return new Booster(new HistogramBins(dataset, maxBins), rows, executor).learn();
+		} finally {
+			if (executor != null) {
+				executor.shutdownNow();
+			}
+		}
+	}
+
+	/**
+	 * The state of one learning run: the model so far, and the labels,
+	 * predictions, gradients and hessians of the rows, indexed by row.
+	 */
+	protected class Booster {
+
+		protected HistogramBins bins;
+		protected Dataset dataset;
+		protected int[] rows;
+		protected ExecutorService executor;
+		protected GradientBoostedTrees model;
+		protected double[] labels;
+		protected double[] margins;
+		protected double[] gradients;
+		protected double[] hessians;
+		// Where each column's bins start in a Histogram
+		protected int[] offsets;
+		protected int nbins;
+
+		protected Booster(HistogramBins bins, int[] rows, ExecutorService executor) {
+			this.bins = bins;
+			this.dataset = bins.getDataset();
+			this.rows = rows;
+			this.executor = executor;
+			int size = dataset.size();
+			this.labels = new double[size];
+			this.margins = new double[size];
+			this.gradients = new double[size];
+			this.hessians = new double[size];
+			this.offsets = new int[dataset.getNumColumns()];
+			for (int c=0; c < offsets.length; c++) {
+				offsets[c] = nbins;
+				nbins += bins.getNumBins(c);
+			}
+		}
+
+		protected GradientBoostedTrees learn() {
+			byte[] outcol = dataset.getOutputColumn();
+			long npositive = 0;
+			long total = 0;
+			for (int row : rows) {
+				labels[row] = outcol[row] & 0xFF;
+				npositive += (outcol[row] & 0xFF) * dataset.getWeight(row);
+				total += dataset.getWeight(row);
+			}
+			// Start from the log-odds of the examples (kept finite)
+			double p = Math.min(Math.max((double)npositive / Math.max(total, 1), 1e-6), 1 - 1e-6);
+			double base = Math.log(p / (1 - p));
+			model = new GradientBoostedTrees(problem, base);
+			for (int row : rows) {
+				margins[row] = base;
+			}
+			for (int round=0; round < numRounds; round++) {
+				computeGradients();
+				model.startTree();
+				int root = model.addNodes(1);
+				double[] histogram = maxDepth > 0 ? histogram(0, rows.length) : null;
+				double g = 0;
+				double h = 0;
+				for (int row : rows) {
+					g += gradients[row];
+					h += hessians[row];
+				}
+				grow(root, 0, rows.length, histogram, g, h, 0);
+			}
+			return model;
+		}
+
+		/**
+		 * Compute the gradient and hessian of the logistic loss at the
+		 * current prediction for every row, in chunks on the executor if
+		 * there is one.
+		 */
+		protected void computeGradients() {
+			if (executor == null || rows.length < MIN_PARALLEL_NODE_SIZE) {
+				computeGradients(0, rows.length);
+				return;
+			}
+			List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+			int chunk = (rows.length + nthreads - 1) / nthreads;
+			for (int start=0; start < rows.length; start += chunk) {
+				final int from = start;
+				final int to = Math.min(start + chunk, rows.length);
+				tasks.add(new Callable<Void>() {
+					public Void call() {
+						computeGradients(from, to);
+						return null;
+					}
+				});
+			}
+			invokeAll(tasks);
+		}
+
+		protected void computeGradients(int from, int to) {
+			for (int i=from; i < to; i++) {
+				int row = rows[i];
+				double p = 1.0 / (1.0 + Math.exp(-margins[row]));
+				// A row with a weight stands for that many examples
+				int w = dataset.getWeight(row);
+				gradients[row] = w * (p - labels[row]);
+				hessians[row] = w * Math.max(p * (1.0 - p), 1e-16);
+			}
+		}
+
+		/**
+		 * Return the Histogram of the given range of rows: the sums of
+		 * their gradients (at [2*(offsets[c]+b)]) and hessians (at
+		 * [2*(offsets[c]+b)+1]) by column and bin.
+		 */
+		protected double[] histogram(final int from, final int to) {
+			final double[] histogram = new double[2*nbins];
+			final int ncolumns = offsets.length;
+			if (metrics != null) {
+				metrics.rowsScanned(to - from, 8L * histogram.length);
+			}
+			if (executor == null || to - from < MIN_PARALLEL_NODE_SIZE || ncolumns < 2) {
+				histogram(from, to, 0, ncolumns, histogram);
+				return histogram;
+			}
+			// Each task fills in different columns, so they don't interfere
+			List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+			int group = (ncolumns + nthreads - 1) / nthreads;
+			for (int start=0; start < ncolumns; start += group) {
+				final int c0 = start;
+				final int c1 = Math.min(start + group, ncolumns);
+				tasks.add(new Callable<Void>() {
+					public Void call() {
+						histogram(from, to, c0, c1, histogram);
+						return null;
+					}
+				});
+			}
+			invokeAll(tasks);
+			return histogram;
+		}
+
+		protected void histogram(int from, int to, int c0, int c1, double[] histogram) {
+			for (int c=c0; c < c1; c++) {
+				byte[] col = bins.bins[c];
+				int base = 2*offsets[c];
+				for (int i=from; i < to; i++) {
+					int row = rows[i];
+					int k = base + 2*(col[row] & 0xFF);
+					histogram[k] += gradients[row];
+					histogram[k+1] += hessians[row];
+				}
+			}
+		}
+
+		/**
+		 * Grow the subtree at the given node from the given range of rows,
+		 * whose Histogram and sums of gradients and hessians are given,
+		 * adding its values to their predictions.
+		 */
+		protected void grow(int node, int from, int to, double[] histogram, double g, double h, int depth) {
+			int bestColumn = -1;
+			int bestBin = -1;
+			double bestGain = 0;
+			double bestLeftG = 0;
+			double bestLeftH = 0;
+			if (depth < maxDepth && to - from > 1) {
+				long start = metrics != null ? System.nanoTime() : 0;
+				double score = g*g / (h + lambda);
+				for (int c=0; c < offsets.length; c++) {
+					int base = 2*offsets[c];
+					double gl = 0;
+					double hl = 0;
+					for (int b=0; b < bins.getNumBins(c)-1; b++) {
+						gl += histogram[base + 2*b];
+						hl += histogram[base + 2*b + 1];
+						double gr = g - gl;
+						double hr = h - hl;
+						if (hl < minChildWeight || hr < minChildWeight) {
+							continue;
+						}
+						double gain = gl*gl / (hl + lambda) + gr*gr / (hr + lambda) - score;
+						if (gain > bestGain) {
+							bestGain = gain;
+							bestColumn = c;
+							bestBin = b;
+							bestLeftG = gl;
+							bestLeftH = hl;
+						}
+					}
+				}
+				if (metrics != null) {
+					metrics.splitSearched(to - from, offsets.length, System.nanoTime() - start);
+				}
+			}
+			if (metrics != null) {
+				metrics.nodeBuilt(depth, to - from, bestColumn < 0);
+			}
+			if (bestColumn < 0) {
+				double value = -learningRate * g / (h + lambda);
+				model.setLeaf(node, value);
+				for (int i=from; i < to; i++) {
+					margins[rows[i]] += value;
+				}
+				return;
+			}
+			double threshold = dataset.isNumeric(bestColumn) ? bins.getThreshold(bestColumn, bestBin) : bestBin;
+			int children = model.addNodes(2);
+			model.setSplit(node, bestColumn, threshold, children);
+			int middle = HistogramDecisionTreeLearner.partitionAt(bins.bins[bestColumn], bestBin, rows, from, to)[1];
+			double[] left = null;
+			double[] right = null;
+			if (depth + 1 < maxDepth) {
+				// Count the smaller child and subtract to get the larger
+				boolean leftSmaller = middle - from <= to - middle;
+				double[] smaller = leftSmaller ? histogram(from, middle) : histogram(middle, to);
+				for (int k=0; k < histogram.length; k++) {
+					histogram[k] -= smaller[k];
+				}
+				left = leftSmaller ? smaller : histogram;
+				right = leftSmaller ? histogram : smaller;
+			}
+			grow(children, from, middle, left, bestLeftG, bestLeftH, depth + 1);
+			grow(children + 1, middle, to, right, g - bestLeftG, h - bestLeftH, depth + 1);
+		}
+
+		protected void invokeAll(List<Callable<Void>> tasks) {
+			try {
+				for (Future<Void> future : executor.invokeAll(tasks)) {
+					future.get();
+				}
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException("interrupted while boosting", ex);
+			} catch (ExecutionException ex) {
+				throw new RuntimeException("error boosting", ex.getCause());
+			}
+		}
+
+	}
+
+}
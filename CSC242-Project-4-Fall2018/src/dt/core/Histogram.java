@@ -0,0 +1,219 @@
+package dt.core;
+
+/**
+ * A Histogram counts the examples at a node of a DecisionTree by input
+ * column, bin (see HistogramBins), and output value. It's a CountTable
+ * over bins rather than values, and like one, gives the information gain
+ * (or score by any SplitCriterion) of every attribute without looking at
+ * the examples again. For a numeric
+ * column, the best threshold is found by sweeping over its bins (at most
+ * 256) rather than over the examples.
+ * <p>
+ * The counts of a node are the sums of those of its children, so the
+ * Histogram of one child can be computed by subtracting those of its
+ * siblings from its parent's rather than by counting its examples.
+ * Rows with weights (see Dataset.deduplicate) count as many times as
+ * their weights.
+ */
+public class Histogram {
+
+	protected HistogramBins bins;
+	protected int noutputs;
+	// counts[offsets[c] + b*noutputs + ok] is the number of examples in
+	// bin b of column c with output value ok
+	protected int[] offsets;
+	protected int[] counts;
+	protected int[] outputCounts;
+	protected int total;
+
+	/**
+	 * Construct and return a new, empty Histogram for the given bins.
+	 */
+	public Histogram(HistogramBins bins) {
+		this.bins = bins;
+		this.noutputs = bins.dataset.problem.getOutput().domain.size();
+		int ncolumns = bins.dataset.getNumColumns();
+		this.offsets = new int[ncolumns];
+		int n = 0;
+		for (int c=0; c < ncolumns; c++) {
+			offsets[c] = n;
+			n += bins.nbins[c] * noutputs;
+		}
+		this.counts = new int[n];
+		this.outputCounts = new int[noutputs];
+	}
+
+	/**
+	 * Add the counts for the given range of the given rows.
+	 */
+	public Histogram count(int[] rows, int from, int to) {
+		int[] columns = new int[offsets.length];
+		for (int c=0; c < columns.length; c++) {
+			columns[c] = c;
+		}
+		return count(rows, from, to, columns);
+	}
+
+	/**
+	 * Add the counts for the given range of the given rows, but only in
+	 * the given columns. The counts of other columns are left as they are,
+	 * and shouldn't be used.
+	 */
+	public Histogram count(int[] rows, int from, int to, int[] columns) {
+		byte[] outcol = bins.dataset.getOutputColumn();
+		int[] weights = bins.dataset.getWeightColumn();
+		if (weights != null) {
+			return countWeighted(rows, from, to, columns, weights);
+		}
+		for (int i=from; i < to; i++) {
+			outputCounts[outcol[rows[i]] & 0xFF] += 1;
+		}
+		for (int c : columns) {
+			byte[] col = bins.bins[c];
+			int base = offsets[c];
+			for (int i=from; i < to; i++) {
+				int row = rows[i];
+				counts[base + (col[row] & 0xFF)*noutputs + (outcol[row] & 0xFF)] += 1;
+			}
+		}
+		total += to - from;
+		return this;
+	}
+
+	/**
+	 * Add the counts for the given range of the given rows in the given
+	 * columns, as for count, where the rows have the given weights.
+	 */
+	protected Histogram countWeighted(int[] rows, int from, int to, int[] columns, int[] weights) {
+		byte[] outcol = bins.dataset.getOutputColumn();
+		for (int i=from; i < to; i++) {
+			int row = rows[i];
+			outputCounts[outcol[row] & 0xFF] += weights[row];
+			total += weights[row];
+		}
+		for (int c : columns) {
+			byte[] col = bins.bins[c];
+			int base = offsets[c];
+			for (int i=from; i < to; i++) {
+				int row = rows[i];
+				counts[base + (col[row] & 0xFF)*noutputs + (outcol[row] & 0xFF)] += weights[row];
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Subtract the counts of the given Histogram from this one, so that a
+	 * parent's Histogram minus those of all but one of its children is
+	 * that of the remaining child.
+	 */
+	public Histogram subtract(Histogram other) {
+		for (int i=0; i < counts.length; i++) {
+			counts[i] -= other.counts[i];
+		}
+		for (int ok=0; ok < noutputs; ok++) {
+			outputCounts[ok] -= other.outputCounts[ok];
+		}
+		total -= other.total;
+		return this;
+	}
+
+	/**
+	 * Return a copy of this Histogram.
+	 */
+	public Histogram copy() {
+		Histogram result = new Histogram(bins);
+		System.arraycopy(counts, 0, result.counts, 0, counts.length);
+		System.arraycopy(outputCounts, 0, result.outputCounts, 0, noutputs);
+		result.total = total;
+		return result;
+	}
+
+	/**
+	 * Return the total number of examples counted.
+	 */
+	public int getTotal() {
+		return total;
+	}
+
+	/**
+	 * Return the number of examples with the given output value code.
+	 */
+	public int getOutputCount(int ok) {
+		return outputCounts[ok];
+	}
+
+	/**
+	 * Return the entropy of the output variable over all the examples.
+	 */
+	public double entropy() {
+		return CountTable.entropy(outputCounts, 0, noutputs, total);
+	}
+
+	/**
+	 * Return the information gain of testing the given (non-numeric)
+	 * column, with one child per value.
+	 */
+	public double gain(int column) {
+		return score(column, SplitCriterion.INFORMATION_GAIN);
+	}
+
+	/**
+	 * Return the score by the given SplitCriterion of testing the given
+	 * (non-numeric) column, with one child per value.
+	 */
+	public double score(int column, SplitCriterion criterion) {
+		double impurity = criterion.impurity(outputCounts, 0, noutputs, total);
+		return criterion.score(impurity, counts, offsets[column], bins.nbins[column], noutputs, total);
+	}
+
+	/**
+	 * Return the bin of the given numeric column whose upper edge is the
+	 * threshold with the greatest information gain (the lowest, if there's
+	 * a tie), or -1 if all the examples are in one bin. If gain is not null,
+	 * the gain is stored in gain[0].
+	 */
+	public int bestBin(int column, double[] gain) {
+		return bestBin(column, SplitCriterion.INFORMATION_GAIN, gain);
+	}
+
+	/**
+	 * Return the bin of the given numeric column as for bestBin, but
+	 * scoring thresholds by the given SplitCriterion. If gain is not null,
+	 * the score is stored in gain[0].
+	 */
+	public int bestBin(int column, SplitCriterion criterion, double[] gain) {
+		int nb = bins.nbins[column];
+		int base = offsets[column];
+		int[] left = new int[noutputs];
+		int[] right = outputCounts.clone();
+		double h = criterion.impurity(outputCounts, 0, noutputs, total);
+		int nleft = 0;
+		int best = -1;
+		double bestGain = Double.NEGATIVE_INFINITY;
+		for (int b=0; b < nb-1; b++) {
+			int nbin = 0;
+			for (int ok=0; ok < noutputs; ok++) {
+				int k = counts[base + b*noutputs + ok];
+				left[ok] += k;
+				right[ok] -= k;
+				nbin += k;
+			}
+			nleft += nbin;
+			if (nbin == 0 || nleft == total) {
+				// Same split as the previous bin, or nothing on the right
+				continue;
+			}
+			double g = criterion.score(h, left, nleft, right, total-nleft);
+			if (g > bestGain) {
+				bestGain = g;
+				best = b;
+			}
+		}
+		if (gain != null) {
+			gain[0] = bestGain;
+		}
+		return best;
+	}
+
+}
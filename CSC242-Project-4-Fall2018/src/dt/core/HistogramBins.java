@@ -0,0 +1,117 @@
+package dt.core;
+
+import java.util.Arrays;
+
+/**
+ * HistogramBins assigns every value in every input column of a Dataset
+ * to one of at most 256 bins, stored as one byte per row, like the
+ * codes of a column for a Variable with a Domain. For those columns the
+ * bins simply are the codes. A column for a NumericVariable is cut into
+ * bins holding about the same number of rows each, without ever putting
+ * two rows with the same value in different bins, so that a threshold
+ * between two bins (the largest value in the lower one) separates them
+ * exactly. This is done once, after which split finding only ever looks
+ * at bins (see Histogram).
+ */
+public class HistogramBins {
+
+	/**
+	 * The most bins a column can have.
+	 */
+	public static final int MAX_BINS = 256;
+
+	protected Dataset dataset;
+	protected byte[][] bins;
+	protected int[] nbins;
+	// For numeric columns, the largest value in each bin
+	protected double[][] upper;
+
+	/**
+	 * Compute the bins for the given Dataset, using at most the given
+	 * number of bins for each numeric column.
+	 */
+	public HistogramBins(Dataset dataset, int maxBins) {
+		if (maxBins < 2 || maxBins > MAX_BINS) {
+			throw new IllegalArgumentException("maxBins must be between 2 and " + MAX_BINS + ": " + maxBins);
+		}
+		this.dataset = dataset;
+		int ncolumns = dataset.getNumColumns();
+		this.bins = new byte[ncolumns][];
+		this.nbins = new int[ncolumns];
+		this.upper = new double[ncolumns][];
+		for (int c=0; c < ncolumns; c++) {
+			if (dataset.isNumeric(c)) {
+				binNumericColumn(c, maxBins);
+			} else {
+				bins[c] = dataset.getColumn(c);
+				nbins[c] = dataset.getVariable(c).domain.size();
+			}
+		}
+	}
+
+	/**
+	 * Compute the bins for the given Dataset, using at most MAX_BINS bins
+	 * for each numeric column.
+	 */
+	public HistogramBins(Dataset dataset) {
+		this(dataset, MAX_BINS);
+	}
+
+	/**
+	 * Cut the given numeric column into at most maxBins bins of roughly
+	 * equal numbers of rows, going through its rows in sorted order.
+	 */
+	protected void binNumericColumn(int c, int maxBins) {
+		int n = dataset.size();
+		int[] sorted = dataset.getSortedRows(c);
+		double[] values = dataset.getNumericColumn(c);
+		byte[] codes = new byte[n];
+		double[] edges = new double[maxBins];
+		int bin = 0;
+		int inBin = 0;
+		for (int i=0; i < n; i++) {
+			int row = sorted[i];
+			double x = values[row];
+			// Start a new bin once this one has its share of the rows left,
+			// but only between distinct values
+			if (inBin > 0 && x > edges[bin] && bin+1 < maxBins
+					&& inBin >= (double)(n - i + inBin) / (maxBins - bin)) {
+				bin += 1;
+				inBin = 0;
+			}
+			codes[row] = (byte)bin;
+			edges[bin] = x;
+			inBin += 1;
+		}
+		bins[c] = codes;
+		nbins[c] = n == 0 ? 1 : bin + 1;
+		upper[c] = Arrays.copyOf(edges, nbins[c]);
+	}
+
+	public Dataset getDataset() {
+		return dataset;
+	}
+
+	/**
+	 * Return the number of bins in the given column.
+	 */
+	public int getNumBins(int column) {
+		return nbins[column];
+	}
+
+	/**
+	 * Return the bin of the given row in the given column.
+	 */
+	public int getBin(int row, int column) {
+		return bins[column][row] & 0xFF;
+	}
+
+	/**
+	 * Return the threshold that separates the given bin of the given
+	 * numeric column from the ones above it.
+	 */
+	public double getThreshold(int column, int bin) {
+		return upper[column][bin];
+	}
+
+}
@@ -0,0 +1,304 @@
+package dt.core;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A DecisionTreeLearner that finds splits using Histograms rather than
+ * examples, for very large datasets. The values of each numeric column
+ * are put into at most 256 bins once, up front (see HistogramBins), and
+ * candidate thresholds are only the boundaries between bins, so the best
+ * threshold is approximate. Each node's Histogram gives the gain of every
+ * attribute directly. When a node is split, the Histograms of all its
+ * children but the largest are counted from their examples, and the
+ * largest one's is its parent's minus those of its siblings, so most of
+ * the examples are never looked at again to compute it.
+ * <p>
+ * The examples at each node are a range of one array of the Dataset's
+ * row numbers, which is partitioned in place when a node is split.
+ * The limits on the growth of the tree (see setMaxDepth and so on) are
+ * checked once a node's examples are partitioned, before any of its
+ * children's Histograms are counted.
+ */
+public class HistogramDecisionTreeLearner extends DecisionTreeLearner {
+
+	protected int maxBins = HistogramBins.MAX_BINS;
+
+	/**
+	 * Construct and return a new HistogramDecisionTreeLearner for the
+	 * given Problem.
+	 */
+	public HistogramDecisionTreeLearner(Problem problem) {
+		super(problem);
+	}
+
+	/**
+	 * Set the most bins to use for each numeric column (at most 256).
+	 */
+	public void setMaxBins(int maxBins) {
+		this.maxBins = maxBins;
+	}
+
+	/**
+	 * Compute and return a DecisionTree for this DecisionTreeLearner's
+	 * Problem using the given Set of Examples. If they aren't all views
+	 * of one Dataset, they are copied into a new one.
+	 */
+	@Override
+	public DecisionTree learn(Set<Example> examples) {
+		Dataset dataset = CountTable.commonDataset(examples);
+		int[] rows;
+		if (dataset != null) {
+			rows = CountTable.rowsOf(examples);
+		} else {
+			dataset = new Dataset(problem, examples.size());
+			for (Example e : examples) {
+				dataset.addExample(e);
+			}
+			rows = identityRows(dataset.size());
+		}
+		return learn(new HistogramBins(dataset, maxBins), rows);
+	}
+
+	/**
+	 * Compute and return a DecisionTree for this DecisionTreeLearner's
+	 * Problem using all the rows of the given Dataset.
+	 */
+	@Override
+	public DecisionTree learn(Dataset dataset) {
+		return learn(new HistogramBins(dataset, maxBins), identityRows(dataset.size()));
+	}
+
+	protected static int[] identityRows(int n) {
+		int[] rows = new int[n];
+		for (int i=0; i < n; i++) {
+			rows[i] = i;
+		}
+		return rows;
+	}
+
+	/**
+	 * Compute and return a DecisionTree using the given rows of the
+	 * Dataset of the given HistogramBins. The array of rows is reordered.
+	 */
+	public DecisionTree learn(HistogramBins bins, int[] rows) {
+		long start = System.nanoTime();
+		List<Variable> attributes = problem.getInputs();
+		int[] columns = new int[attributes.size()];
+		for (int i=0; i < columns.length; i++) {
+			columns[i] = bins.dataset.getColumnIndex(attributes.get(i));
+		}
+		Histogram histogram = new Histogram(bins).count(rows, 0, rows.length, columns);
+		if (metrics != null) {
+			metrics.rowsScanned(rows.length, 4L * histogram.counts.length);
+		}
+		nodeCount.set(1);
+		return learned(learn(bins, rows, 0, rows.length, histogram, attributes, null, 0), start);
+	}
+
+	/**
+	 * Main recursive learning method, following AIMA Fig 18.5 like
+	 * DecisionTreeLearner.learn, for the examples in the given range of the
+	 * given rows, whose Histogram is given. The parent's Histogram is given
+	 * for computing the plurality value if there are no examples. The
+	 * node is at the given depth, for the limits on the tree's growth.
+	 */
+	protected DecisionTree learn(HistogramBins bins, int[] rows, int from, int to, Histogram histogram,
+								 List<Variable> attributes, Histogram parent, int depth) {
+		DecisionTree tree = learnNode(bins, rows, from, to, histogram, attributes, parent, depth);
+		if (metrics != null) {
+			metrics.nodeBuilt(depth, to - from, tree.value != null);
+		}
+		return tree;
+	}
+
+	/**
+	 * Learn the node for the given range of rows and its subtree, for learn.
+	 */
+	protected DecisionTree learnNode(HistogramBins bins, int[] rows, int from, int to, Histogram histogram,
+									 List<Variable> attributes, Histogram parent, int depth) {
+		if (from == to) {
+			return new DecisionTree(pluralityValue(parent));
+		}
+		String unique = uniqueOutputValue(histogram);
+		if (unique != null) {
+			return new DecisionTree(unique);
+		}
+		if (attributes.isEmpty() || !mightSplit(histogram.total, depth)) {
+			return new DecisionTree(pluralityValue(histogram));
+		}
+		// Choose the attribute, and for a numeric one its bin, with max gain
+		long start = metrics != null ? System.nanoTime() : 0;
+		Dataset dataset = bins.dataset;
+		int[] columns = new int[attributes.size()];
+		double[] gains = new double[columns.length];
+		int[] bestBins = new int[columns.length];
+		double[] gain = new double[1];
+		for (int i=0; i < columns.length; i++) {
+			columns[i] = dataset.getColumnIndex(attributes.get(i));
+			if (dataset.isNumeric(columns[i])) {
+				bestBins[i] = histogram.bestBin(columns[i], criterion, gain);
+				gains[i] = gain[0];
+			} else {
+				gains[i] = histogram.score(columns[i], criterion);
+			}
+		}
+		int best = indexOfMax(gains);
+		if (metrics != null) {
+			metrics.splitSearched(to - from, gains.length, System.nanoTime() - start);
+		}
+		Variable a = attributes.get(best);
+		int column = dataset.getColumnIndex(a);
+		DecisionTree tree;
+		List<Variable> remaining;
+		int[] bounds;
+		if (dataset.isNumeric(column)) {
+			if (bestBins[best] < 0) {
+				// No attribute can separate these examples
+				return new DecisionTree(pluralityValue(histogram));
+			}
+			tree = new DecisionTree((NumericVariable)a, bins.getThreshold(column, bestBins[best]));
+			remaining = attributes;
+			bounds = partitionAt(bins.bins[column], bestBins[best], rows, from, to);
+		} else {
+			tree = new DecisionTree(a);
+			remaining = new LinkedList<Variable>(attributes);
+			remaining.remove(a);
+			bounds = partition(bins.bins[column], bins.nbins[column], rows, from, to);
+		}
+		int nchildren = bounds.length - 1;
+		if ((hasSplitLimits() && !allowsSplit(childCounts(dataset, rows, bounds), nchildren)) || !reserveNodes(nchildren)) {
+			return new DecisionTree(pluralityValue(histogram));
+		}
+		// Count all the children but the largest, and subtract to get that one.
+		// Only the columns that the children can still split on are counted.
+		if (remaining != attributes) {
+			int[] childColumns = new int[columns.length-1];
+			for (int i=0, j=0; i < columns.length; i++) {
+				if (i != best) {
+					childColumns[j++] = columns[i];
+				}
+			}
+			columns = childColumns;
+		}
+		int largest = 0;
+		for (int k=1; k < nchildren; k++) {
+			if (bounds[k+1] - bounds[k] > bounds[largest+1] - bounds[largest]) {
+				largest = k;
+			}
+		}
+		Histogram[] histograms = new Histogram[nchildren];
+		Histogram rest = histogram.copy();
+		for (int k=0; k < nchildren; k++) {
+			if (k != largest) {
+				histograms[k] = new Histogram(bins).count(rows, bounds[k], bounds[k+1], columns);
+				rest.subtract(histograms[k]);
+			}
+		}
+		histograms[largest] = rest;
+		if (metrics != null) {
+			metrics.rowsScanned(to - from - (bounds[largest+1] - bounds[largest]), 4L * nchildren * histogram.counts.length);
+		}
+		for (int k=0; k < nchildren; k++) {
+			tree.children.add(learn(bins, rows, bounds[k], bounds[k+1], histograms[k], remaining, histogram, depth+1));
+			// Let the child's Histogram go once its subtree is done
+			histograms[k] = null;
+		}
+		return tree;
+	}
+
+	/**
+	 * Return the output counts of the groups of the given rows with the
+	 * given bounds, as for DecisionTreeLearner.allowsSplit.
+	 */
+	protected int[] childCounts(Dataset dataset, int[] rows, int[] bounds) {
+		int noutputs = problem.getOutput().domain.size();
+		byte[] outcol = dataset.getOutputColumn();
+		int[] weights = dataset.getWeightColumn();
+		int[] counts = new int[(bounds.length-1) * noutputs];
+		for (int k=0; k < bounds.length-1; k++) {
+			for (int i=bounds[k]; i < bounds[k+1]; i++) {
+				counts[k*noutputs + (outcol[rows[i]] & 0xFF)] += weights == null ? 1 : weights[rows[i]];
+			}
+		}
+		return counts;
+	}
+
+	/**
+	 * Partition the given range of the given rows in place into two groups:
+	 * those whose bin in the given column is at most the given one, then
+	 * the rest. Return the bounds of the groups.
+	 */
+	protected static int[] partitionAt(byte[] column, int bin, int[] rows, int from, int to) {
+		int i = from;
+		int j = to - 1;
+		while (i <= j) {
+			if ((column[rows[i]] & 0xFF) <= bin) {
+				i += 1;
+			} else {
+				int t = rows[i];
+				rows[i] = rows[j];
+				rows[j] = t;
+				j -= 1;
+			}
+		}
+		return new int[] { from, i, to };
+	}
+
+	/**
+	 * Partition the given range of the given rows in place by their codes
+	 * in the given column, which has the given number of values, keeping
+	 * their order within each group. Return the bounds of the groups.
+	 */
+	protected static int[] partition(byte[] column, int nvalues, int[] rows, int from, int to) {
+		int[] bounds = new int[nvalues+1];
+		for (int i=from; i < to; i++) {
+			bounds[(column[rows[i]] & 0xFF) + 1] += 1;
+		}
+		bounds[0] = from;
+		for (int k=0; k < nvalues; k++) {
+			bounds[k+1] += bounds[k];
+		}
+		int[] next = Arrays.copyOf(bounds, nvalues);
+		int[] sorted = new int[to - from];
+		for (int i=from; i < to; i++) {
+			int row = rows[i];
+			sorted[next[column[row] & 0xFF]++ - from] = row;
+		}
+		System.arraycopy(sorted, 0, rows, from, sorted.length);
+		return bounds;
+	}
+
+	/**
+	 * Returns the most common output value among the examples counted in
+	 * the given Histogram, with ties going to the first in the Domain, as
+	 * for DecisionTreeLearner.pluralityValue.
+	 */
+	protected String pluralityValue(Histogram histogram) {
+		Domain domain = problem.getOutput().domain;
+		int best = 0;
+		for (int k=1; k < domain.size(); k++) {
+			if (histogram.getOutputCount(k) > histogram.getOutputCount(best)) {
+				best = k;
+			}
+		}
+		return domain.get(best);
+	}
+
+	/**
+	 * Returns the single output value among the examples counted in the
+	 * given Histogram if there is only one, otherwise null.
+	 */
+	protected String uniqueOutputValue(Histogram histogram) {
+		Domain domain = problem.getOutput().domain;
+		for (int k=0; k < domain.size(); k++) {
+			if (histogram.getOutputCount(k) == histogram.getTotal()) {
+				return domain.get(k);
+			}
+		}
+		return null;
+	}
+
+}
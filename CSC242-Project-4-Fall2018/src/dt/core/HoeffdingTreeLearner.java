@@ -0,0 +1,632 @@
+package dt.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A HoeffdingTreeLearner learns a decision tree incrementally from a
+ * stream of Examples that is too big (or too endless) to hold, as in the
+ * VFDT algorithm of Domingos and Hulten ("Mining High-Speed Data
+ * Streams", 2000). Examples are given to update one at a time or in
+ * batches, and aren't kept: each leaf only keeps counts of the examples
+ * that reached it.
+ * <p>
+ * Every so many examples (the grace period), a leaf compares the
+ * information gain of splitting on each of its attributes. It splits on
+ * the best one once the Hoeffding bound says that, with probability
+ * 1-delta, that attribute would still be the best given infinitely many
+ * examples: when its gain beats that of the next best (or of not
+ * splitting) by more than
+ * <pre>
+ *     epsilon = sqrt(R^2 ln(1/delta) / 2n)
+ * </pre>
+ * where R is log2 of the number of output values and n the number of
+ * examples the leaf has counted. If the two are so close that epsilon
+ * falls below the tie threshold, it doesn't matter which is chosen, and
+ * the leaf splits anyway.
+ * <p>
+ * A leaf counts the examples for each Variable with a Domain in a
+ * CountTable. For a NumericVariable it only keeps the mean and variance
+ * for each output value, and candidate thresholds are evenly spaced
+ * between the smallest and largest values seen, with the examples on
+ * each side estimated from normal distributions.
+ * <p>
+ * To keep memory bounded, at most a given number of leaves are active.
+ * Inactive leaves keep only their output counts (for evaluation), and
+ * can't split. Neither can a leaf with no attributes left, so it is
+ * never active. The output counts are longs, since a leaf that never
+ * splits may count examples for as long as the stream goes on. An
+ * active leaf's counts for splitting are ints, so they start over once
+ * they reach MAX_SPLIT_COUNT examples; by then epsilon is far below any
+ * sensible tie threshold, so a leaf that could split would have. Every so often the leaves are ranked by the number of
+ * examples they've gotten wrong, and the worst ones are the ones made
+ * active.
+ * <p>
+ * A HoeffdingTreeLearner isn't thread-safe: one thread should update it
+ * at a time, and not while another is evaluating or copying the tree.
+ */
+public class HoeffdingTreeLearner {
+
+	public static final int DEFAULT_GRACE_PERIOD = 200;
+	public static final double DEFAULT_DELTA = 1e-7;
+	public static final double DEFAULT_TIE_THRESHOLD = 0.05;
+	public static final int DEFAULT_MAX_ACTIVE_LEAVES = 1000;
+	public static final int DEFAULT_MEMORY_CHECK_PERIOD = 10000;
+
+	/**
+	 * The number of candidate thresholds tried for a NumericVariable.
+	 */
+	public static final int NUM_THRESHOLDS = 10;
+
+	/**
+	 * The most examples an active leaf counts for splitting before it
+	 * starts over.
+	 */
+	public static final int MAX_SPLIT_COUNT = 1 << 30;
+
+	protected Problem problem;
+	protected Variable output;
+	protected int noutputs;
+	// The inputs that aren't NumericVariables
+	protected List<Variable> categorical = new ArrayList<Variable>();
+	protected int gracePeriod = DEFAULT_GRACE_PERIOD;
+	protected double delta = DEFAULT_DELTA;
+	protected double tieThreshold = DEFAULT_TIE_THRESHOLD;
+	protected int maxActiveLeaves = DEFAULT_MAX_ACTIVE_LEAVES;
+	protected int memoryCheckPeriod = DEFAULT_MEMORY_CHECK_PERIOD;
+
+	protected Node root;
+	// All the leaves, in the order they were made
+	protected List<Node> leaves = new ArrayList<Node>();
+	protected int nactive;
+	protected long nexamples;
+
+	/**
+	 * Construct and return a new HoeffdingTreeLearner for the given
+	 * Problem, whose tree is one leaf that hasn't seen any examples.
+	 */
+	public HoeffdingTreeLearner(Problem problem) {
+		this.problem = problem;
+		this.output = problem.getOutput();
+		this.noutputs = output.domain.size();
+		for (Variable var : problem.getInputs()) {
+			if (!(var instanceof NumericVariable)) {
+				categorical.add(var);
+			}
+		}
+		this.root = new Node(problem.getInputs(), 0);
+		leaves.add(root);
+		root.activate();
+	}
+
+	/**
+	 * Set the number of examples a leaf counts between tries at splitting
+	 * it (default 200).
+	 */
+	public void setGracePeriod(int gracePeriod) {
+		this.gracePeriod = gracePeriod;
+	}
+
+	/**
+	 * Set the allowed chance of choosing a different attribute than
+	 * infinitely many examples would (default 1e-7).
+	 */
+	public void setDelta(double delta) {
+		this.delta = delta;
+	}
+
+	/**
+	 * Set the difference in gain below which attributes are considered
+	 * tied (default 0.05).
+	 */
+	public void setTieThreshold(double tieThreshold) {
+		this.tieThreshold = tieThreshold;
+	}
+
+	/**
+	 * Set the most leaves that count examples for splitting (default
+	 * 1000). The memory used is proportional to it.
+	 */
+	public void setMaxActiveLeaves(int maxActiveLeaves) {
+		this.maxActiveLeaves = maxActiveLeaves;
+	}
+
+	/**
+	 * Set the number of examples between rankings of the leaves to choose
+	 * the active ones (default 10000).
+	 */
+	public void setMemoryCheckPeriod(int memoryCheckPeriod) {
+		this.memoryCheckPeriod = memoryCheckPeriod;
+	}
+
+	public Problem getProblem() {
+		return problem;
+	}
+
+	/**
+	 * Return the number of examples learned from.
+	 */
+	public long getNumExamples() {
+		return nexamples;
+	}
+
+	/**
+	 * Return the number of leaves of the tree.
+	 */
+	public int getNumLeaves() {
+		return leaves.size();
+	}
+
+	/**
+	 * Return the number of leaves that are counting examples for
+	 * splitting.
+	 */
+	public int getNumActiveLeaves() {
+		return nactive;
+	}
+
+	/**
+	 * Learn from the given Example, splitting its leaf if it's time to and
+	 * the Hoeffding bound allows it.
+	 */
+	public void update(Example example) {
+		Node leaf = add(example);
+		if (leaf.active && leaf.seen - leaf.lastTry >= gracePeriod) {
+			trySplit(leaf);
+		}
+		if (nexamples % memoryCheckPeriod == 0) {
+			manageMemory();
+		}
+	}
+
+	/**
+	 * Learn from the given batch of Examples. They are all counted by
+	 * their leaves before any leaf tries to split, which is cheaper than
+	 * updating with one at a time. This may be any Collection, including a
+	 * RowSet for rows of a Dataset.
+	 */
+	public void update(Collection<Example> examples) {
+		long before = nexamples;
+		Set<Node> touched = new LinkedHashSet<Node>();
+		for (Example e : examples) {
+			touched.add(add(e));
+		}
+		for (Node leaf : touched) {
+			if (leaf.active && leaf.seen - leaf.lastTry >= gracePeriod) {
+				trySplit(leaf);
+			}
+		}
+		if (nexamples / memoryCheckPeriod != before / memoryCheckPeriod) {
+			manageMemory();
+		}
+	}
+
+	/**
+	 * Count the given Example in its leaf and return the leaf.
+	 */
+	protected Node add(Example example) {
+		int ok = example.getOutputCode(output);
+		if (ok < 0) {
+			throw new IllegalArgumentException("no output value: " + example);
+		}
+		for (Variable var : categorical) {
+			if (example.getInputCode(var) < 0) {
+				throw new IllegalArgumentException("missing value for " + var + ": " + example);
+			}
+		}
+		Node leaf = sort(example);
+		leaf.add(example, ok);
+		nexamples += 1;
+		return leaf;
+	}
+
+	/**
+	 * Return the leaf the given Example goes to, or null if it is missing
+	 * the value of a Variable tested on the way.
+	 */
+	protected Node sort(Example example) {
+		Node node = root;
+		while (node.children != null) {
+			if (node.variable instanceof NumericVariable) {
+				node = node.children[example.getNumericValue(node.variable) <= node.threshold ? 0 : 1];
+			} else {
+				int k = example.getInputCode(node.variable);
+				if (k < 0) {
+					return null;
+				}
+				node = node.children[k];
+			}
+		}
+		return node;
+	}
+
+	/**
+	 * Return the output code the tree gives the given Example, or -1 if it
+	 * is missing a value that is needed.
+	 */
+	public int evalCode(Example example) {
+		Node leaf = sort(example);
+		return leaf == null ? -1 : leaf.outputCode();
+	}
+
+	/**
+	 * Return the value the tree gives the given Example, or null if it is
+	 * missing a value that is needed.
+	 */
+	public String eval(Example example) {
+		int code = evalCode(example);
+		return code < 0 ? null : output.domain.get(code);
+	}
+
+	/**
+	 * Return a DecisionTree like the one learned so far, for example to
+	 * dump, compile or save it. Later updates don't change it.
+	 */
+	public DecisionTree getTree() {
+		return toDecisionTree(root);
+	}
+
+	protected DecisionTree toDecisionTree(Node node) {
+		if (node.children == null) {
+			return new DecisionTree(output.domain.get(node.outputCode()));
+		}
+		DecisionTree tree;
+		if (node.variable instanceof NumericVariable) {
+			tree = new DecisionTree((NumericVariable)node.variable, node.threshold);
+		} else {
+			tree = new DecisionTree(node.variable);
+		}
+		for (Node child : node.children) {
+			tree.children.add(toDecisionTree(child));
+		}
+		return tree;
+	}
+
+	/**
+	 * Split the given active leaf on its best attribute if the Hoeffding
+	 * bound says it's the best.
+	 */
+	protected void trySplit(Node leaf) {
+		leaf.lastTry = leaf.seen;
+		int n = leaf.table.getTotal();
+		int nonzero = 0;
+		for (int ok=0; ok < noutputs; ok++) {
+			if (leaf.table.getOutputCount(ok) > 0) {
+				nonzero += 1;
+			}
+		}
+		if (nonzero < 2) {
+			return;
+		}
+		// The gain of not splitting is 0, so the second best is at least that
+		int best = -1;
+		double bestGain = 0;
+		double secondGain = 0;
+		double[] thresholds = new double[leaf.attributes.size()];
+		for (int i=0; i < leaf.attributes.size(); i++) {
+			double gain;
+			int j = leaf.numericIndex[i];
+			if (j >= 0) {
+				double[] split = leaf.bestThreshold(j);
+				thresholds[i] = split[0];
+				gain = split[1];
+			} else {
+				gain = leaf.table.gain(leaf.tableIndex[i]);
+			}
+			if (gain > bestGain) {
+				secondGain = bestGain;
+				bestGain = gain;
+				best = i;
+			} else if (gain > secondGain) {
+				secondGain = gain;
+			}
+		}
+		if (best < 0) {
+			return;
+		}
+		double r = log2(noutputs);
+		double epsilon = Math.sqrt(r*r * Math.log(1.0/delta) / (2.0*n));
+		if (bestGain - secondGain > epsilon || epsilon < tieThreshold) {
+			split(leaf, leaf.attributes.get(best), thresholds[best]);
+		}
+	}
+
+	/**
+	 * Make the given leaf test the given Variable (against the given
+	 * threshold, if it's a NumericVariable), with new leaves as children.
+	 */
+	protected void split(Node leaf, Variable variable, double threshold) {
+		int prior = leaf.outputCode();
+		List<Variable> remaining = leaf.attributes;
+		int nchildren;
+		if (variable instanceof NumericVariable) {
+			nchildren = 2;
+		} else {
+			remaining = new LinkedList<Variable>(leaf.attributes);
+			remaining.remove(variable);
+			nchildren = variable.domain.size();
+		}
+		leaf.deactivate();
+		leaves.remove(leaf);
+		leaf.variable = variable;
+		leaf.threshold = threshold;
+		leaf.children = new Node[nchildren];
+		for (int k=0; k < nchildren; k++) {
+			Node child = new Node(remaining, prior);
+			leaf.children[k] = child;
+			leaves.add(child);
+			if (nactive < maxActiveLeaves) {
+				child.activate();
+			}
+		}
+		leaf.outputCounts = null;
+	}
+
+	/**
+	 * If there are more leaves that could split than can be active, make
+	 * the ones that have gotten the most examples wrong active and the
+	 * rest inactive.
+	 */
+	protected void manageMemory() {
+		List<Node> ranked = new ArrayList<Node>();
+		for (Node leaf : leaves) {
+			if (!leaf.attributes.isEmpty()) {
+				ranked.add(leaf);
+			}
+		}
+		if (ranked.size() <= maxActiveLeaves) {
+			return;
+		}
+		Collections.sort(ranked, new Comparator<Node>() {
+			public int compare(Node a, Node b) {
+				return Long.compare(b.errors(), a.errors());
+			}
+		});
+		for (int i=maxActiveLeaves; i < ranked.size(); i++) {
+			ranked.get(i).deactivate();
+		}
+		for (int i=0; i < maxActiveLeaves; i++) {
+			ranked.get(i).activate();
+		}
+	}
+
+	/**
+	 * A node of the tree. An internal node has a Variable and children;
+	 * a leaf has output counts and, if it's active, the counts for
+	 * choosing a split.
+	 */
+	protected class Node {
+
+		protected Variable variable;
+		protected double threshold;
+		protected Node[] children;
+
+		// The output counts of all the examples the leaf has seen
+		protected long[] outputCounts;
+		// The output code of the leaf before it's seen any examples
+		protected int prior;
+		protected long seen;
+		protected long lastTry;
+		// The attributes this leaf could split on
+		protected List<Variable> attributes;
+		protected boolean active;
+		// For each attribute, its index in the table or the numeric
+		// statistics (-1 if it isn't there)
+		protected int[] tableIndex;
+		protected int[] numericIndex;
+		protected NumericVariable[] numeric;
+		protected CountTable table;
+		// For numeric attribute j and output ok, at [j*noutputs+ok]: the
+		// count, mean, and sum of squared differences from the mean
+		protected double[] counts;
+		protected double[] means;
+		protected double[] squares;
+		protected double[] mins;
+		protected double[] maxs;
+
+		protected Node(List<Variable> attributes, int prior) {
+			this.attributes = attributes;
+			this.prior = prior;
+			this.outputCounts = new long[noutputs];
+		}
+
+		/**
+		 * Start counting examples for splitting, from scratch, unless this
+		 * leaf has no attributes to split on.
+		 */
+		protected void activate() {
+			if (active || attributes.isEmpty()) {
+				return;
+			}
+			active = true;
+			nactive += 1;
+			List<Variable> categorical = new ArrayList<Variable>();
+			List<NumericVariable> numbers = new ArrayList<NumericVariable>();
+			tableIndex = new int[attributes.size()];
+			numericIndex = new int[attributes.size()];
+			for (int i=0; i < attributes.size(); i++) {
+				Variable a = attributes.get(i);
+				if (a instanceof NumericVariable) {
+					tableIndex[i] = -1;
+					numericIndex[i] = numbers.size();
+					numbers.add((NumericVariable)a);
+				} else {
+					tableIndex[i] = categorical.size();
+					numericIndex[i] = -1;
+					categorical.add(a);
+				}
+			}
+			table = new CountTable(categorical, output);
+			numeric = numbers.toArray(new NumericVariable[numbers.size()]);
+			counts = new double[numeric.length * noutputs];
+			means = new double[numeric.length * noutputs];
+			squares = new double[numeric.length * noutputs];
+			mins = new double[numeric.length];
+			maxs = new double[numeric.length];
+			Arrays.fill(mins, Double.POSITIVE_INFINITY);
+			Arrays.fill(maxs, Double.NEGATIVE_INFINITY);
+			lastTry = seen;
+		}
+
+		/**
+		 * Stop counting examples for splitting, and let the counts go.
+		 */
+		protected void deactivate() {
+			if (!active) {
+				return;
+			}
+			active = false;
+			nactive -= 1;
+			tableIndex = null;
+			numericIndex = null;
+			numeric = null;
+			table = null;
+			counts = null;
+			means = null;
+			squares = null;
+			mins = null;
+			maxs = null;
+		}
+
+		/**
+		 * Count the given Example, which has the given output code, as
+		 * many times as its weight.
+		 */
+		protected void add(Example example, int ok) {
+			int w = example.getWeight();
+			outputCounts[ok] += w;
+			seen += w;
+			if (!active) {
+				return;
+			}
+			if (w > MAX_SPLIT_COUNT - table.getTotal()) {
+				deactivate();
+				activate();
+			}
+			table.add(example);
+			for (int j=0; j < numeric.length; j++) {
+				double x = example.getNumericValue(numeric[j]);
+				if (Double.isNaN(x)) {
+					continue;
+				}
+				// Welford's running mean and variance, weighted
+				int i = j*noutputs + ok;
+				counts[i] += w;
+				double d = x - means[i];
+				means[i] += d * w / counts[i];
+				squares[i] += w * d * (x - means[i]);
+				mins[j] = Math.min(mins[j], x);
+				maxs[j] = Math.max(maxs[j], x);
+			}
+		}
+
+		/**
+		 * Return the best candidate threshold for numeric attribute j and
+		 * its estimated information gain, as {threshold, gain}.
+		 */
+		protected double[] bestThreshold(int j) {
+			double[] result = { 0, 0 };
+			if (!(maxs[j] > mins[j])) {
+				return result;
+			}
+			double[] below = new double[noutputs];
+			double[] above = new double[noutputs];
+			double[] all = new double[noutputs];
+			System.arraycopy(counts, j*noutputs, all, 0, noutputs);
+			double h = entropy(all);
+			for (int t=1; t <= NUM_THRESHOLDS; t++) {
+				double threshold = mins[j] + (maxs[j] - mins[j]) * t / (NUM_THRESHOLDS + 1);
+				double nbelow = 0;
+				double nabove = 0;
+				for (int ok=0; ok < noutputs; ok++) {
+					int i = j*noutputs + ok;
+					double n = counts[i];
+					double p;
+					if (n <= 1 || squares[i] <= 0) {
+						p = means[i] <= threshold ? 1 : 0;
+					} else {
+						p = normalCDF((threshold - means[i]) / Math.sqrt(squares[i] / (n - 1)));
+					}
+					below[ok] = n * p;
+					above[ok] = n - below[ok];
+					nbelow += below[ok];
+					nabove += above[ok];
+				}
+				double total = nbelow + nabove;
+				double gain = h - (nbelow/total * entropy(below) + nabove/total * entropy(above));
+				if (gain > result[1]) {
+					result[0] = threshold;
+					result[1] = gain;
+				}
+			}
+			return result;
+		}
+
+		/**
+		 * Return the output code this leaf gives examples: the most common
+		 * one among those it has seen, or its prior if it hasn't seen any.
+		 */
+		protected int outputCode() {
+			if (seen == 0) {
+				return prior;
+			}
+			int best = 0;
+			for (int ok=1; ok < noutputs; ok++) {
+				if (outputCounts[ok] > outputCounts[best]) {
+					best = ok;
+				}
+			}
+			return best;
+		}
+
+		/**
+		 * Return the number of examples this leaf has seen but doesn't give
+		 * the output they have.
+		 */
+		protected long errors() {
+			return seen - outputCounts[outputCode()];
+		}
+
+	}
+
+	/**
+	 * Return the entropy of the distribution given by the given counts.
+	 */
+	protected static double entropy(double[] counts) {
+		double n = 0;
+		for (double c : counts) {
+			n += c;
+		}
+		double result = 0;
+		for (double c : counts) {
+			if (c > 0) {
+				double p = c / n;
+				result += p * log2(p);
+			}
+		}
+		return -result;
+	}
+
+	/**
+	 * Return the probability that a standard normal variable is at most z,
+	 * using the approximation of erf in Abramowitz and Stegun 7.1.26.
+	 */
+	protected static double normalCDF(double z) {
+		double x = Math.abs(z) / Math.sqrt(2.0);
+		double t = 1.0 / (1.0 + 0.3275911*x);
+		double erf = 1.0 - (((((1.061405429*t - 1.453152027)*t) + 1.421413741)*t - 0.284496736)*t + 0.254829592)*t * Math.exp(-x*x);
+		return z >= 0 ? 0.5 * (1.0 + erf) : 0.5 * (1.0 - erf);
+	}
+
+	protected static double log2(double x) {
+		return Math.log(x) / Math.log(2.0);
+	}
+
+}
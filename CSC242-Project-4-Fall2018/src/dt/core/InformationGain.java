@@ -0,0 +1,107 @@
+package dt.core;
+
+/**
+ * The SplitCriterion that scores a split by its information gain, the
+ * expected reduction in entropy (AIMA Sect. 18.3.4). Use
+ * SplitCriterion.INFORMATION_GAIN rather than constructing one.
+ * <p>
+ * With counts c_k summing to n, the entropy -sum_k (c_k/n) log2(c_k/n)
+ * is (n log2 n - sum_k c_k log2 c_k) / n, and the expected entropy of a
+ * split is the same with the children's counts, over the parent's n.
+ * So all it takes is c log2 c for integer counts c, which comes from a
+ * table for counts up to TABLE_SIZE, rather than a division and two
+ * calls to Math.log for every count.
+ */
+public class InformationGain implements SplitCriterion {
+
+	/**
+	 * c log2 c is looked up for counts below this, and computed for the
+	 * rest.
+	 */
+	public static final int TABLE_SIZE = 1 << 16;
+
+	protected static final double LN2 = Math.log(2.0);
+
+	// NLOG2N[c] is c log2 c, with 0 log2 0 = 0
+	protected static final double[] NLOG2N = new double[TABLE_SIZE];
+	static {
+		for (int c=1; c < TABLE_SIZE; c++) {
+			NLOG2N[c] = c * (Math.log(c) / LN2);
+		}
+	}
+
+	protected InformationGain() {
+	}
+
+	/**
+	 * Return c log2 c, which is 0 for c = 0.
+	 */
+	static double nlog2n(int c) {
+		return c < TABLE_SIZE ? NLOG2N[c] : c * (Math.log(c) / LN2);
+	}
+
+	/**
+	 * Return n log2 n minus the sum of c log2 c over the noutputs counts
+	 * starting at the given offset, which sum to n: n times their entropy.
+	 */
+	static double scaledEntropy(int[] counts, int offset, int noutputs, int n) {
+		double sum = 0;
+		for (int ok=0; ok < noutputs; ok++) {
+			sum += nlog2n(counts[offset + ok]);
+		}
+		return nlog2n(n) - sum;
+	}
+
+	/**
+	 * Return the entropy of the output distribution given by the noutputs
+	 * counts starting at the given offset in the given array, which sum to n.
+	 */
+	static double entropy(int[] counts, int offset, int noutputs, int n) {
+		return n == 0 ? 0 : scaledEntropy(counts, offset, noutputs, n) / n;
+	}
+
+	public double impurity(int[] counts, int offset, int noutputs, int n) {
+		return entropy(counts, offset, noutputs, n);
+	}
+
+	public double score(double impurity, int[] counts, int offset, int nchildren, int noutputs, int n) {
+		return impurity - remainder(counts, offset, nchildren, noutputs, n);
+	}
+
+	public double score(double impurity, int[] left, int nleft, int[] right, int nright) {
+		int noutputs = left.length;
+		return impurity - (scaledEntropy(left, 0, noutputs, nleft) + scaledEntropy(right, 0, noutputs, nright)) / (nleft + nright);
+	}
+
+	/**
+	 * Return log2 of the number of outputs, the most entropy there can be.
+	 */
+	public double range(int noutputs) {
+		return Math.log(noutputs) / LN2;
+	}
+
+	/**
+	 * Return the expected entropy remaining after a split of n examples
+	 * into nchildren children with the given counts.
+	 */
+	protected static double remainder(int[] counts, int offset, int nchildren, int noutputs, int n) {
+		double sum = 0;
+		for (int k=0; k < nchildren; k++) {
+			int base = offset + k*noutputs;
+			int nk = 0;
+			double sumk = 0;
+			for (int ok=0; ok < noutputs; ok++) {
+				int c = counts[base + ok];
+				nk += c;
+				sumk += nlog2n(c);
+			}
+			sum += nlog2n(nk) - sumk;
+		}
+		return sum / n;
+	}
+
+	public String toString() {
+		return "information gain";
+	}
+
+}
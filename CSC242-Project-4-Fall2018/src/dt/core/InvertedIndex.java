@@ -0,0 +1,148 @@
+package dt.core;
+
+import java.util.Arrays;
+
+/**
+ * An InvertedIndex maps each value of each (non-numeric) input column
+ * of a Dataset to the rows that have it, in increasing order. It is
+ * built in one pass over the Dataset, after which the rows of a subset
+ * with a given value can be found by intersecting the subset's rows with
+ * the index's rather than by looking at every row of the subset (see
+ * RowSet.filter). Use Dataset.getInvertedIndex to get one that is built
+ * once and shared.
+ */
+public class InvertedIndex {
+
+	protected Dataset dataset;
+	protected int size;
+	// rows[c][k] are the rows with code k in column c (null for numeric columns)
+	protected int[][][] rows;
+
+	/**
+	 * Build and return a new InvertedIndex for the current rows of the
+	 * given Dataset.
+	 */
+	public InvertedIndex(Dataset dataset) {
+		this.dataset = dataset;
+		this.size = dataset.size();
+		int ncolumns = dataset.getNumColumns();
+		this.rows = new int[ncolumns][][];
+		for (int c=0; c < ncolumns; c++) {
+			if (dataset.isNumeric(c)) {
+				continue;
+			}
+			byte[] column = dataset.getColumn(c);
+			int nvalues = dataset.getVariable(c).domain.size();
+			int[] counts = new int[nvalues];
+			for (int row=0; row < size; row++) {
+				counts[column[row] & 0xFF] += 1;
+			}
+			int[][] index = new int[nvalues][];
+			for (int k=0; k < nvalues; k++) {
+				index[k] = new int[counts[k]];
+				counts[k] = 0;
+			}
+			for (int row=0; row < size; row++) {
+				int k = column[row] & 0xFF;
+				index[k][counts[k]++] = row;
+			}
+			rows[c] = index;
+		}
+	}
+
+	public Dataset getDataset() {
+		return dataset;
+	}
+
+	/**
+	 * Return the number of rows of the Dataset that were indexed.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Return the rows with the given code in the given column, in
+	 * increasing order. This is the index itself, not a copy.
+	 */
+	public int[] getRows(int column, int code) {
+		if (rows[column] == null) {
+			throw new IllegalArgumentException("no index for numeric variable " + dataset.getVariable(column));
+		}
+		return rows[column][code];
+	}
+
+	/**
+	 * Return the number of rows with the given code in the given column.
+	 */
+	public int count(int column, int code) {
+		return getRows(column, code).length;
+	}
+
+	/**
+	 * Return the rows in the given range of the given rows, which must be
+	 * in increasing order, that have the given code in the given column.
+	 */
+	public int[] intersect(int[] rows, int from, int to, int column, int code) {
+		int[] other = getRows(column, code);
+		int[] result = new int[to - from];
+		int n = intersect(rows, from, to, other, result);
+		return Arrays.copyOf(result, n);
+	}
+
+	/**
+	 * Store the rows in the given range of a that are also in b in result,
+	 * and return how many there are. Both must be in increasing order, and
+	 * b must not have duplicates (a may, and they are kept). If one is
+	 * much shorter than the other, we look up each of its rows in the
+	 * other by binary search rather than going through both.
+	 */
+	public static int intersect(int[] a, int from, int to, int[] b, int[] result) {
+		int na = to - from;
+		int nb = b.length;
+		int n = 0;
+		if ((long)na * 16 < nb) {
+			int lo = 0;
+			for (int i=from; i < to; i++) {
+				int j = Arrays.binarySearch(b, lo, nb, a[i]);
+				if (j >= 0) {
+					result[n++] = a[i];
+					lo = j;
+				} else {
+					lo = -(j + 1);
+				}
+			}
+		} else if ((long)nb * 16 < na) {
+			int lo = from;
+			for (int j=0; j < nb; j++) {
+				int i = Arrays.binarySearch(a, lo, to, b[j]);
+				if (i < 0) {
+					lo = -(i + 1);
+					continue;
+				}
+				// Keep any duplicates in a, which binarySearch may land in the middle of
+				while (i > lo && a[i-1] == b[j]) {
+					i -= 1;
+				}
+				while (i < to && a[i] == b[j]) {
+					result[n++] = a[i++];
+				}
+				lo = i;
+			}
+		} else {
+			int i = from;
+			int j = 0;
+			while (i < to && j < nb) {
+				if (a[i] < b[j]) {
+					i += 1;
+				} else if (a[i] > b[j]) {
+					j += 1;
+				} else {
+					result[n++] = a[i++];
+				}
+			}
+		}
+		return n;
+	}
+
+}
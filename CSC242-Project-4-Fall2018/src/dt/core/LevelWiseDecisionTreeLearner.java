@@ -0,0 +1,390 @@
+package dt.core;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * A HistogramDecisionTreeLearner that learns the tree a level at a time
+ * rather than depth-first, like OutOfCoreDecisionTreeLearner does for a
+ * DiskDataset, but for a Dataset in memory, numeric inputs included.
+ * Depth-first learning goes back to each node's rows separately, all
+ * over the Dataset, and recurses once per level of the tree; this makes
+ * one pass over the rows per level, in order, reading each column that's
+ * needed from start to end, and doesn't recurse at all.
+ * <p>
+ * The only things kept besides the HistogramBins are the number of the
+ * node each row is at (an int per row) and a Histogram for each node of
+ * the current level. The pass for a level first moves each row from its
+ * node in the level above to the child for its bin of the column that
+ * node tests (or takes it out, if that node became a leaf), then counts
+ * it in its new node's Histogram. The nodes are then decided from their
+ * Histograms, as in HistogramDecisionTreeLearner, and the children of the
+ * ones that split are the next level. The tree is the same as the one
+ * HistogramDecisionTreeLearner would learn from the same examples, and
+ * the limits on its growth (see setMaxDepth and so on) apply too; a
+ * maximum number of nodes is used up level by level rather than branch
+ * by branch.
+ * <p>
+ * As in HistogramDecisionTreeLearner, the Histogram of the largest child
+ * of a split is its parent's minus those of its siblings, so the rows at
+ * it are only moved, not counted. A node's children are always counted
+ * in the same pass for this, and the Histograms of the nodes waiting for
+ * their children to be counted have at most maxTableSize counts in all
+ * too (otherwise all their children are counted).
+ */
+public class LevelWiseDecisionTreeLearner extends HistogramDecisionTreeLearner {
+
+	protected int maxTableSize = OutOfCoreDecisionTreeLearner.DEFAULT_MAX_TABLE_SIZE;
+
+	/**
+	 * Construct and return a new LevelWiseDecisionTreeLearner for the
+	 * given Problem.
+	 */
+	public LevelWiseDecisionTreeLearner(Problem problem) {
+		super(problem);
+	}
+
+	/**
+	 * Set the most counts in the Histograms counted in one pass over the
+	 * rows. If a level's nodes would need more, the level takes several
+	 * passes, each counting some of its nodes. It also limits the counts
+	 * in the Histograms kept for subtracting.
+	 */
+	public void setMaxTableSize(int maxTableSize) {
+		this.maxTableSize = maxTableSize;
+	}
+
+	/**
+	 * A node of the level being learned: the attributes it can still
+	 * test, their columns, and its counts.
+	 */
+	protected class Node {
+		protected Node parent;
+		protected List<Variable> attributes;
+		protected int[] columns;
+		protected int depth;
+		// The number of rows at this node, or the sum of their weights
+		protected int nrows;
+		protected Histogram histogram;
+		protected DecisionTree tree;
+		// The code of the most common output, for children with no examples
+		protected int plurality;
+		// The column this node splits on, or -1 if it's a leaf, the bin
+		// its rows go left up to if that's numeric (otherwise -1), and the
+		// index of its first child in the next level
+		protected int splitColumn = -1;
+		protected int splitBin = -1;
+		protected int firstChild;
+		// Whether this node's Histogram is its parent's minus its siblings'
+		protected boolean subtracted;
+
+		protected Node(Node parent, List<Variable> attributes, int[] columns, int depth, int nrows) {
+			this.parent = parent;
+			this.attributes = attributes;
+			this.columns = columns;
+			this.depth = depth;
+			this.nrows = nrows;
+		}
+	}
+
+	/**
+	 * Compute and return a DecisionTree using the given rows of the
+	 * Dataset of the given HistogramBins, a level at a time. A row given
+	 * more than once counts as many times. The array of rows isn't changed.
+	 */
+	@Override
+	public DecisionTree learn(HistogramBins bins, int[] rows) {
+		long start = System.nanoTime();
+		Dataset dataset = bins.dataset;
+		int[] nodeOf = new int[dataset.size()];
+		int[] weights = rowWeights(dataset, rows, nodeOf);
+		int nrows = 0;
+		for (int row : rows) {
+			nrows += dataset.getWeight(row);
+		}
+		// Every node's Histogram has all the columns, used or not
+		long histogramSize = new Histogram(bins).counts.length;
+		nodeCount.set(1);
+		List<Variable> inputs = problem.getInputs();
+		Node root = new Node(null, inputs, columnsOf(dataset, inputs), 0, nrows);
+		Node[] previous = null;
+		Node[] level = { root };
+		// The counts in the Histograms kept for subtracting
+		long kept = 0;
+		while (level.length > 0) {
+			List<Node> next = new ArrayList<Node>();
+			int from = 0;
+			while (from < level.length) {
+				// As many nodes as fit in maxTableSize, but at least one,
+				// and all the children of a node or none
+				int to = from;
+				long size = 0;
+				while (to < level.length) {
+					int end = to + 1;
+					while (end < level.length && level[end].parent == level[to].parent) {
+						end += 1;
+					}
+					long needed = 0;
+					for (int i=to; i < end; i++) {
+						if (level[i].nrows > 0 && !level[i].subtracted) {
+							needed += histogramSize;
+						}
+					}
+					if (to > from && size + needed > maxTableSize) {
+						break;
+					}
+					size += needed;
+					to = end;
+				}
+				for (int i=from; i < to; i++) {
+					if (level[i].nrows > 0 && !level[i].subtracted) {
+						level[i].histogram = new Histogram(bins);
+					}
+				}
+				// Rows are only moved to this level on its first pass
+				int ncounted = count(bins, nodeOf, weights, from == 0 ? previous : null, level, from, to);
+				if (metrics != null) {
+					metrics.rowsScanned(ncounted, 4 * size);
+				}
+				for (int i=from; i < to; i++) {
+					if (level[i].subtracted) {
+						subtract(level, i);
+						kept -= histogramSize;
+					}
+				}
+				for (int i=from; i < to; i++) {
+					Node node = level[i];
+					decide(bins, node, next);
+					if (metrics != null) {
+						metrics.nodeBuilt(node.depth, node.nrows, node.splitColumn < 0);
+					}
+					if (node.parent != null) {
+						node.parent.tree.children.add(node.tree);
+					}
+					// Keep the Histogram of a split for its largest child
+					if (node.splitColumn >= 0 && kept + histogramSize <= maxTableSize) {
+						Node largest = next.get(node.firstChild);
+						for (int k=node.firstChild+1; k < next.size(); k++) {
+							if (next.get(k).nrows > largest.nrows) {
+								largest = next.get(k);
+							}
+						}
+						largest.subtracted = true;
+						kept += histogramSize;
+					} else {
+						node.histogram = null;
+					}
+				}
+				from = to;
+			}
+			previous = level;
+			level = next.toArray(new Node[next.size()]);
+		}
+		return learned(root.tree, start);
+	}
+
+	/**
+	 * Give the node at the given index in the given level the Histogram
+	 * of its parent minus those of its siblings, which have been counted.
+	 */
+	protected static void subtract(Node[] level, int i) {
+		Node node = level[i];
+		Histogram histogram = node.parent.histogram;
+		node.parent.histogram = null;
+		for (int j=node.parent.firstChild; j < level.length && level[j].parent == node.parent; j++) {
+			if (j != i && level[j].histogram != null) {
+				histogram.subtract(level[j].histogram);
+			}
+		}
+		node.histogram = histogram;
+	}
+
+	/**
+	 * Set each given row's node to the root (0) and every other row's to
+	 * -1 in the given array, and return the weight each row counts with:
+	 * its weight in the Dataset times the number of times it's given, or
+	 * null if that's 1 for every row that's given.
+	 */
+	protected static int[] rowWeights(Dataset dataset, int[] rows, int[] nodeOf) {
+		int[] times = new int[nodeOf.length];
+		for (int row : rows) {
+			times[row] += 1;
+		}
+		boolean once = true;
+		for (int r=0; r < nodeOf.length; r++) {
+			nodeOf[r] = times[r] > 0 ? 0 : -1;
+			once &= times[r] <= 1;
+		}
+		int[] weights = dataset.getWeightColumn();
+		if (once) {
+			return weights;
+		}
+		for (int r=0; r < times.length; r++) {
+			times[r] *= weights == null ? 1 : weights[r];
+		}
+		return times;
+	}
+
+	/**
+	 * Move each row from its node in the previous level (if that's given)
+	 * to its node in the given level, and if that is one of the nodes from
+	 * from up to to, count it with its weight in the node's Histogram,
+	 * which is there and empty unless it will be subtracted. The rows are
+	 * gone through in order, in one pass over the columns that are needed.
+	 * Return the number of rows counted.
+	 */
+	protected int count(HistogramBins bins, int[] nodeOf, int[] weights, Node[] previous, Node[] level, int from, int to) {
+		int noutputs = problem.getOutput().domain.size();
+		byte[] outputs = bins.dataset.getOutputColumn();
+		byte[][] codes = bins.bins;
+		int ncounted = 0;
+		for (int r=0; r < nodeOf.length; r++) {
+			int node = nodeOf[r];
+			if (node < 0) {
+				continue;
+			}
+			if (previous != null) {
+				Node parent = previous[node];
+				if (parent.splitColumn < 0) {
+					nodeOf[r] = -1;
+					continue;
+				}
+				int code = codes[parent.splitColumn][r] & 0xFF;
+				if (parent.splitBin >= 0) {
+					node = parent.firstChild + (code <= parent.splitBin ? 0 : 1);
+				} else {
+					node = parent.firstChild + code;
+				}
+				nodeOf[r] = node;
+			}
+			if (node < from || node >= to) {
+				continue;
+			}
+			Node current = level[node];
+			Histogram histogram = current.histogram;
+			if (histogram == null) {
+				continue;
+			}
+			ncounted += 1;
+			int ok = outputs[r] & 0xFF;
+			int w = weights == null ? 1 : weights[r];
+			histogram.outputCounts[ok] += w;
+			histogram.total += w;
+			int[] columns = current.columns;
+			for (int a=0; a < columns.length; a++) {
+				int c = columns[a];
+				histogram.counts[histogram.offsets[c] + (codes[c][r] & 0xFF)*noutputs + ok] += w;
+			}
+		}
+		return ncounted;
+	}
+
+	/**
+	 * Make the given node a leaf or a split, following AIMA Fig 18.5 like
+	 * HistogramDecisionTreeLearner.learn, from its Histogram. If it splits,
+	 * add its children to the given next level. The Histogram is left for
+	 * the caller to keep or let go.
+	 */
+	protected void decide(HistogramBins bins, Node node, List<Node> next) {
+		Histogram histogram = node.histogram;
+		Domain outputs = problem.getOutput().domain;
+		int noutputs = outputs.size();
+		if (histogram == null || histogram.getTotal() == 0) {
+			node.plurality = node.parent != null ? node.parent.plurality : 0;
+			node.tree = new DecisionTree(outputs.get(node.plurality));
+			return;
+		}
+		node.plurality = 0;
+		int nonzero = 0;
+		for (int ok=0; ok < noutputs; ok++) {
+			if (histogram.getOutputCount(ok) > histogram.getOutputCount(node.plurality)) {
+				node.plurality = ok;
+			}
+			if (histogram.getOutputCount(ok) > 0) {
+				nonzero += 1;
+			}
+		}
+		if (nonzero == 1 || node.attributes.isEmpty() || !mightSplit(histogram.getTotal(), node.depth)) {
+			node.tree = new DecisionTree(outputs.get(node.plurality));
+			return;
+		}
+		// Choose the attribute, and for a numeric one its bin, with max gain
+		long start = metrics != null ? System.nanoTime() : 0;
+		Dataset dataset = bins.dataset;
+		int[] columns = node.columns;
+		double[] gains = new double[columns.length];
+		int[] bestBins = new int[columns.length];
+		double[] gain = new double[1];
+		for (int i=0; i < columns.length; i++) {
+			if (dataset.isNumeric(columns[i])) {
+				bestBins[i] = histogram.bestBin(columns[i], criterion, gain);
+				gains[i] = gain[0];
+			} else {
+				gains[i] = histogram.score(columns[i], criterion);
+			}
+		}
+		int best = indexOfMax(gains);
+		if (metrics != null) {
+			metrics.splitSearched(histogram.getTotal(), gains.length, System.nanoTime() - start);
+		}
+		Variable a = node.attributes.get(best);
+		int column = columns[best];
+		boolean numeric = dataset.isNumeric(column);
+		if (numeric && bestBins[best] < 0) {
+			// No attribute can separate these examples
+			node.tree = new DecisionTree(outputs.get(node.plurality));
+			return;
+		}
+		// The output counts of the children, from the column's bins
+		int nchildren = numeric ? 2 : bins.nbins[column];
+		int[] counts = new int[nchildren * noutputs];
+		int offset = histogram.offsets[column];
+		for (int b=0; b < bins.nbins[column]; b++) {
+			int k = numeric ? (b <= bestBins[best] ? 0 : 1) : b;
+			for (int ok=0; ok < noutputs; ok++) {
+				counts[k*noutputs + ok] += histogram.counts[offset + b*noutputs + ok];
+			}
+		}
+		if ((hasSplitLimits() && !allowsSplit(counts, nchildren)) || !reserveNodes(nchildren)) {
+			node.tree = new DecisionTree(outputs.get(node.plurality));
+			return;
+		}
+		List<Variable> remaining;
+		int[] childColumns;
+		if (numeric) {
+			node.tree = new DecisionTree((NumericVariable)a, bins.getThreshold(column, bestBins[best]));
+			node.splitBin = bestBins[best];
+			remaining = node.attributes;
+			childColumns = columns;
+		} else {
+			node.tree = new DecisionTree(a);
+			remaining = new LinkedList<Variable>(node.attributes);
+			remaining.remove(a);
+			childColumns = columnsOf(dataset, remaining);
+		}
+		node.splitColumn = column;
+		node.firstChild = next.size();
+		// The children share their attributes and columns
+		for (int k=0; k < nchildren; k++) {
+			int nk = 0;
+			for (int ok=0; ok < noutputs; ok++) {
+				nk += counts[k*noutputs + ok];
+			}
+			next.add(new Node(node, remaining, childColumns, node.depth+1, nk));
+		}
+	}
+
+	/**
+	 * Return the columns of the given Dataset for the given inputs.
+	 */
+	protected static int[] columnsOf(Dataset dataset, List<Variable> attributes) {
+		int[] columns = new int[attributes.size()];
+		int i = 0;
+		for (Variable a : attributes) {
+			columns[i++] = dataset.getColumnIndex(a);
+		}
+		return columns;
+	}
+
+}
@@ -0,0 +1,516 @@
+package dt.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A MappedCSVReader reads a Dataset from a file in the format described
+ * in Problem.readExamplesFromCSVFile, without creating any Strings.
+ * The file is split into chunks on line boundaries, and each chunk is
+ * memory-mapped and parsed on its own thread. Each cell's bytes are
+ * looked up directly in a hash table of the bytes of its Variable's
+ * Domain values to get the value's code. Cells for a NumericVariable
+ * are parsed straight from the bytes too, at least for ordinary decimal
+ * numbers. The chunks' columns are then copied into the Dataset in order.
+ * <p>
+ * Blank lines are skipped, and a carriage return before a newline is
+ * ignored. A value not in its Variable's Domain or a line with the
+ * wrong number of values is an IOException giving the line number.
+ */
+public class MappedCSVReader {
+
+	/**
+	 * Chunks are at least this many bytes (unless the file is smaller).
+	 */
+	public static final int MIN_CHUNK_SIZE = 1 << 20;
+
+	/**
+	 * Chunks are at most this many bytes, so that each can be mapped
+	 * as one buffer.
+	 */
+	public static final int MAX_CHUNK_SIZE = 1 << 28;
+
+	protected Problem problem;
+	protected int nthreads;
+	protected ValueTable[] inputTables;
+	protected ValueTable outputTable;
+
+	/**
+	 * Construct and return a new MappedCSVReader for the given Problem
+	 * that uses the given number of threads.
+	 */
+	public MappedCSVReader(Problem problem, int nthreads) {
+		this.problem = problem;
+		this.nthreads = nthreads;
+		List<Variable> inputs = problem.getInputs();
+		this.inputTables = new ValueTable[inputs.size()];
+		for (int i=0; i < inputTables.length; i++) {
+			if (!(inputs.get(i) instanceof NumericVariable)) {
+				inputTables[i] = new ValueTable(inputs.get(i).domain);
+			}
+		}
+		this.outputTable = new ValueTable(problem.getOutput().domain);
+	}
+
+	/**
+	 * Construct and return a new MappedCSVReader for the given Problem
+	 * that uses one thread per available processor.
+	 */
+	public MappedCSVReader(Problem problem) {
+		this(problem, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * An open-addressing hash table from the UTF-8 bytes of a Domain's
+	 * values to their codes.
+	 */
+	protected static class ValueTable {
+		byte[][] keys;
+		int[] codes;
+		int mask;
+
+		ValueTable(Domain domain) {
+			int n = 16;
+			while (n < 2*domain.size()) {
+				n <<= 1;
+			}
+			keys = new byte[n][];
+			codes = new int[n];
+			mask = n - 1;
+			for (int code=0; code < domain.size(); code++) {
+				byte[] key = domain.get(code).getBytes(StandardCharsets.UTF_8);
+				int i = hash(key, 0, key.length) & mask;
+				while (keys[i] != null) {
+					i = (i + 1) & mask;
+				}
+				keys[i] = key;
+				codes[i] = code;
+			}
+		}
+
+		static int hash(byte[] bytes, int start, int end) {
+			int h = 0;
+			for (int i=start; i < end; i++) {
+				h = 31*h + bytes[i];
+			}
+			return h ^ (h >>> 16);
+		}
+
+		static int hash(ByteBuffer buf, int start, int end) {
+			int h = 0;
+			for (int i=start; i < end; i++) {
+				h = 31*h + buf.get(i);
+			}
+			return h ^ (h >>> 16);
+		}
+
+		/**
+		 * Return the code of the value whose bytes are between start and end
+		 * in the given buffer, or -1 if there isn't one.
+		 */
+		int lookup(ByteBuffer buf, int start, int end) {
+			int i = hash(buf, start, end) & mask;
+			while (keys[i] != null) {
+				if (matches(keys[i], buf, start, end)) {
+					return codes[i];
+				}
+				i = (i + 1) & mask;
+			}
+			return -1;
+		}
+
+		static boolean matches(byte[] key, ByteBuffer buf, int start, int end) {
+			if (key.length != end - start) {
+				return false;
+			}
+			for (int i=0; i < key.length; i++) {
+				if (key[i] != buf.get(start+i)) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Read and return a Dataset from the given File.
+	 */
+	public Dataset read(File file) throws IOException {
+		ExecutorService executor = Executors.newFixedThreadPool(nthreads);
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+			FileChannel channel = raf.getChannel();
+			long[] bounds = chunkBounds(channel);
+			List<Future<Chunk>> futures = new ArrayList<Future<Chunk>>(bounds.length-1);
+			for (int c=0; c+1 < bounds.length; c++) {
+				futures.add(executor.submit(new Chunk(channel, bounds[c], bounds[c+1])));
+			}
+			List<Chunk> chunks = new ArrayList<Chunk>(futures.size());
+			for (Future<Chunk> future : futures) {
+				chunks.add(future.get());
+			}
+			// Report the first error in the file, with its line number in the file
+			long lines = 0;
+			int nrows = 0;
+			for (Chunk chunk : chunks) {
+				if (chunk.error != null) {
+					throw new IOException(file + ": line " + (lines + chunk.nlines) + ": " + chunk.error);
+				}
+				lines += chunk.nlines;
+				nrows += chunk.nrows;
+			}
+			Dataset dataset = new Dataset(problem, Math.max(nrows, 1));
+			for (Chunk chunk : chunks) {
+				dataset.addRows(chunk.columns, chunk.numbers, chunk.outputs, chunk.nrows);
+			}
+			return dataset;
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted while reading " + file, ex);
+		} catch (ExecutionException ex) {
+			if (ex.getCause() instanceof IOException) {
+				throw (IOException)ex.getCause();
+			}
+			throw new IOException(ex.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Something that is given the rows read by read(File, RowSink), a
+	 * chunk at a time, in the same form as Dataset.addRows.
+	 */
+	interface RowSink {
+		void addRows(byte[][] columns, double[][] numbers, byte[] outputs, int nrows) throws IOException;
+	}
+
+	/**
+	 * Read the given File as for read(File), but give the rows of each
+	 * chunk, in order, to the given RowSink rather than putting them all
+	 * in a Dataset, and return the number of rows. Only a few more chunks
+	 * than there are threads are parsed ahead, so the whole file never
+	 * needs to fit in memory.
+	 */
+	long read(File file, RowSink sink) throws IOException {
+		ExecutorService executor = Executors.newFixedThreadPool(nthreads);
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+			FileChannel channel = raf.getChannel();
+			long[] bounds = chunkBounds(channel);
+			Deque<Future<Chunk>> pending = new ArrayDeque<Future<Chunk>>();
+			int next = 0;
+			long lines = 0;
+			long nrows = 0;
+			while (next+1 < bounds.length || !pending.isEmpty()) {
+				while (next+1 < bounds.length && pending.size() <= nthreads) {
+					pending.add(executor.submit(new Chunk(channel, bounds[next], bounds[next+1])));
+					next += 1;
+				}
+				Chunk chunk = pending.remove().get();
+				if (chunk.error != null) {
+					throw new IOException(file + ": line " + (lines + chunk.nlines) + ": " + chunk.error);
+				}
+				lines += chunk.nlines;
+				nrows += chunk.nrows;
+				sink.addRows(chunk.columns, chunk.numbers, chunk.outputs, chunk.nrows);
+			}
+			return nrows;
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted while reading " + file, ex);
+		} catch (ExecutionException ex) {
+			if (ex.getCause() instanceof IOException) {
+				throw (IOException)ex.getCause();
+			}
+			throw new IOException(ex.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Return the offsets of the starts of the chunks of the file open on
+	 * the given channel, plus its size. Each chunk but the first starts
+	 * just after a newline.
+	 */
+	protected long[] chunkBounds(FileChannel channel) throws IOException {
+		long size = channel.size();
+		long target = Math.max(MIN_CHUNK_SIZE, Math.min(MAX_CHUNK_SIZE / 2, size / (4L*nthreads) + 1));
+		List<Long> bounds = new ArrayList<Long>();
+		bounds.add(0L);
+		ByteBuffer buf = ByteBuffer.allocate(8192);
+		long pos = target;
+		while (pos < size) {
+			// Find the next newline at or after pos
+			long nl = -1;
+			long p = pos;
+			while (nl < 0 && p < size) {
+				buf.clear();
+				int n = channel.read(buf, p);
+				for (int i=0; i < n; i++) {
+					if (buf.get(i) == '\n') {
+						nl = p + i;
+						break;
+					}
+				}
+				p += n;
+			}
+			if (nl < 0 || nl+1 >= size) {
+				break;
+			}
+			if (nl+1 - bounds.get(bounds.size()-1) > MAX_CHUNK_SIZE) {
+				throw new IOException("line too long near offset " + pos);
+			}
+			bounds.add(nl+1);
+			pos = nl + 1 + target;
+		}
+		bounds.add(size);
+		long[] result = new long[bounds.size()];
+		for (int i=0; i < result.length; i++) {
+			result[i] = bounds.get(i);
+		}
+		return result;
+	}
+
+	/**
+	 * A chunk of the file and the columns of codes parsed from it.
+	 * If there is an error, nlines is its line number in the chunk.
+	 */
+	protected class Chunk implements Callable<Chunk> {
+		FileChannel channel;
+		long start;
+		long end;
+		byte[][] columns;
+		double[][] numbers;
+		byte[] outputs;
+		int nrows;
+		long nlines;
+		String error;
+
+		Chunk(FileChannel channel, long start, long end) {
+			this.channel = channel;
+			this.start = start;
+			this.end = end;
+		}
+
+		public Chunk call() throws IOException {
+			int length = (int)(end - start);
+			MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+			int ninputs = inputTables.length;
+			// Guess at the number of rows from the first line, if there is one
+			int capacity = 16;
+			for (int i=0; i < length; i++) {
+				if (buf.get(i) == '\n') {
+					capacity = Math.max(capacity, length / (i+1) + 16);
+					break;
+				}
+			}
+			columns = new byte[ninputs][];
+			numbers = new double[ninputs][];
+			for (int j=0; j < ninputs; j++) {
+				if (inputTables[j] == null) {
+					numbers[j] = new double[capacity];
+				} else {
+					columns[j] = new byte[capacity];
+				}
+			}
+			outputs = new byte[capacity];
+			int pos = 0;
+			while (pos < length) {
+				nlines += 1;
+				int eol = pos;
+				while (eol < length && buf.get(eol) != '\n') {
+					eol += 1;
+				}
+				int eov = eol;
+				if (eov > pos && buf.get(eov-1) == '\r') {
+					eov -= 1;
+				}
+				if (eov > pos) {
+					if (nrows == outputs.length) {
+						grow();
+					}
+					if (!parseLine(buf, pos, eov)) {
+						return this;
+					}
+					nrows += 1;
+				}
+				pos = eol + 1;
+			}
+			return this;
+		}
+
+		/**
+		 * Parse the line between start and end in the given buffer into
+		 * row nrows of the columns and return true, or set error and
+		 * return false.
+		 */
+		protected boolean parseLine(ByteBuffer buf, int start, int end) {
+			int ninputs = inputTables.length;
+			int pos = start;
+			for (int j=0; j <= ninputs; j++) {
+				if (pos > end) {
+					error = "expected " + (ninputs+1) + " values, got " + j;
+					return false;
+				}
+				int eov = pos;
+				while (eov < end && buf.get(eov) != ',') {
+					eov += 1;
+				}
+				ValueTable table = j < ninputs ? inputTables[j] : outputTable;
+				if (table == null) {
+					double x;
+					try {
+						x = parseNumber(buf, pos, eov);
+					} catch (NumberFormatException ex) {
+						x = Double.NaN;
+					}
+					if (Double.isNaN(x)) {
+						error = "not a number for " + problem.getInputs().get(j) + ": " + string(buf, pos, eov);
+						return false;
+					}
+					numbers[j][nrows] = x;
+					pos = eov + 1;
+					continue;
+				}
+				int code = table.lookup(buf, pos, eov);
+				if (code < 0) {
+					Variable var = j < ninputs ? problem.getInputs().get(j) : problem.getOutput();
+					error = "unknown value for " + var + ": " + string(buf, pos, eov);
+					return false;
+				}
+				if (j < ninputs) {
+					columns[j][nrows] = (byte)code;
+				} else {
+					outputs[nrows] = (byte)code;
+				}
+				pos = eov + 1;
+			}
+			if (pos <= end) {
+				error = "expected " + (ninputs+1) + " values, got more";
+				return false;
+			}
+			return true;
+		}
+
+		protected void grow() {
+			int capacity = outputs.length + (outputs.length >> 1) + 1;
+			for (int j=0; j < columns.length; j++) {
+				if (numbers[j] != null) {
+					numbers[j] = Arrays.copyOf(numbers[j], capacity);
+				} else {
+					columns[j] = Arrays.copyOf(columns[j], capacity);
+				}
+			}
+			outputs = Arrays.copyOf(outputs, capacity);
+		}
+	}
+
+	// Powers of ten that are exactly representable as doubles
+	private static final double[] POWERS_OF_TEN = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+		1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+
+	/**
+	 * Return the number whose text is between start and end in the given
+	 * buffer. Plain decimal numbers with at most 15 significant digits and
+	 * a small exponent are converted exactly without creating a String:
+	 * the digits are an exact long and the power of ten is exact, so one
+	 * multiply or divide rounds correctly. Anything else goes through
+	 * Double.parseDouble.
+	 */
+	protected static double parseNumber(ByteBuffer buf, int start, int end) {
+		int i = start;
+		boolean negative = false;
+		if (i < end && (buf.get(i) == '-' || buf.get(i) == '+')) {
+			negative = buf.get(i) == '-';
+			i += 1;
+		}
+		long mantissa = 0;
+		int ndigits = 0;
+		int exponent = 0;
+		boolean seenDigit = false;
+		boolean seenPoint = false;
+		for (; i < end; i++) {
+			byte b = buf.get(i);
+			if (b >= '0' && b <= '9') {
+				seenDigit = true;
+				if (mantissa != 0 || b != '0') {
+					if (ndigits == 15) {
+						return Double.parseDouble(string(buf, start, end));
+					}
+					mantissa = mantissa*10 + (b - '0');
+					ndigits += 1;
+				}
+				if (seenPoint) {
+					exponent -= 1;
+				}
+			} else if (b == '.' && !seenPoint) {
+				seenPoint = true;
+			} else {
+				break;
+			}
+		}
+		if (i < end && seenDigit && (buf.get(i) == 'e' || buf.get(i) == 'E')) {
+			i += 1;
+			boolean negexp = false;
+			if (i < end && (buf.get(i) == '-' || buf.get(i) == '+')) {
+				negexp = buf.get(i) == '-';
+				i += 1;
+			}
+			int e = 0;
+			boolean seenExpDigit = false;
+			for (; i < end && buf.get(i) >= '0' && buf.get(i) <= '9' && e < 1000; i++) {
+				e = e*10 + (buf.get(i) - '0');
+				seenExpDigit = true;
+			}
+			if (!seenExpDigit) {
+				return Double.parseDouble(string(buf, start, end));
+			}
+			exponent += negexp ? -e : e;
+		}
+		if (i != end || !seenDigit) {
+			// Something unusual (or an error): let the library deal with it
+			return Double.parseDouble(string(buf, start, end));
+		}
+		double result;
+		if (mantissa == 0) {
+			result = 0.0;
+		} else if (exponent >= 0 && exponent < POWERS_OF_TEN.length) {
+			result = mantissa * POWERS_OF_TEN[exponent];
+		} else if (exponent < 0 && -exponent < POWERS_OF_TEN.length) {
+			result = mantissa / POWERS_OF_TEN[-exponent];
+		} else {
+			return Double.parseDouble(string(buf, start, end));
+		}
+		return negative ? -result : result;
+	}
+
+	/**
+	 * Return the bytes between start and end in the given buffer as a
+	 * String, for error messages and unusual numbers.
+	 */
+	protected static String string(ByteBuffer buf, int start, int end) {
+		byte[] bytes = new byte[end - start];
+		for (int i=0; i < bytes.length; i++) {
+			bytes[i] = buf.get(start + i);
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+}
@@ -0,0 +1,389 @@
+package dt.core;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A MappedDecisionTree is a DecisionTree saved in a binary file (see
+ * save) and evaluated straight from the file, which is memory-mapped
+ * rather than read. Loading one reads the Problem at the start of the
+ * file and checks each node once (see checkNodes), but copies nothing,
+ * and several JVMs using the same file share its pages.
+ * <p>
+ * The file is big-endian, and has:
+ * <ul>
+ * <li>the int MAGIC and the int VERSION;</li>
+ * <li>the Problem: the number of inputs, then for each input and the
+ * output, its name, a byte that is 1 for a NumericVariable and 0
+ * otherwise, and (unless numeric) the number of values in its Domain
+ * and the values. Strings are an int length and that many bytes of
+ * UTF-8;</li>
+ * <li>the number of nodes, then padding up to a multiple of 8 bytes;</li>
+ * <li>the nodes, in the order of a CompiledDecisionTree, 16 bytes each:
+ * the int input column (-1 for a leaf), the int first child (or output
+ * code, for a leaf), and the double threshold.</li>
+ * </ul>
+ * Evaluation only reads the mapped nodes, so any number of threads can
+ * use one MappedDecisionTree at once.
+ */
+public class MappedDecisionTree {
+
+	public static final int MAGIC = 0x44545245; // "DTRE"
+	public static final int VERSION = 1;
+	protected static final int NODE_SIZE = 16;
+
+	protected Problem problem;
+	protected boolean[] numeric;
+	protected ByteBuffer nodes;
+	protected int nnodes;
+
+	protected MappedDecisionTree(Problem problem, ByteBuffer nodes, int nnodes) {
+		this.problem = problem;
+		this.nodes = nodes;
+		this.nnodes = nnodes;
+		List<Variable> inputs = problem.getInputs();
+		this.numeric = new boolean[inputs.size()];
+		for (int c=0; c < numeric.length; c++) {
+			numeric[c] = inputs.get(c) instanceof NumericVariable;
+		}
+	}
+
+	/**
+	 * Save the given DecisionTree for the given Problem to the given File.
+	 */
+	public static void save(DecisionTree tree, Problem problem, File file) throws IOException {
+		CompiledDecisionTree compiled = tree.compile(problem);
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(problem.getInputs().size());
+			for (Variable var : problem.getInputs()) {
+				writeVariable(out, var);
+			}
+			writeVariable(out, problem.getOutput());
+			out.writeInt(compiled.size());
+			while (out.size() % 8 != 0) {
+				out.writeByte(0);
+			}
+			for (int i=0; i < compiled.size(); i++) {
+				out.writeInt(compiled.columns[i]);
+				out.writeInt(compiled.next[i]);
+				out.writeDouble(compiled.thresholds[i]);
+			}
+		}
+	}
+
+	protected static void writeVariable(DataOutputStream out, Variable var) throws IOException {
+		writeString(out, var.getName());
+		if (var instanceof NumericVariable) {
+			out.writeByte(1);
+		} else {
+			out.writeByte(0);
+			out.writeInt(var.domain.size());
+			for (String value : var.domain) {
+				writeString(out, value);
+			}
+		}
+	}
+
+	protected static void writeString(DataOutputStream out, String s) throws IOException {
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Load the MappedDecisionTree saved in the given File, with a new
+	 * Problem made from the one saved with it.
+	 */
+	public static MappedDecisionTree load(File file) throws IOException {
+		return load(file, null);
+	}
+
+	/**
+	 * Load the MappedDecisionTree saved in the given File for the given
+	 * Problem, which must have the same Variables and Domains as the one
+	 * saved with it, so that it can evaluate Examples and Datasets of that
+	 * Problem. If the Problem is null, a new one is made from the file.
+	 */
+	public static MappedDecisionTree load(File file, Problem problem) throws IOException {
+		MappedByteBuffer buffer;
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+			 FileChannel channel = raf.getChannel()) {
+			// The mapping stays valid after the channel is closed
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		try {
+			if (buffer.getInt() != MAGIC) {
+				throw new IOException(file + ": not a saved DecisionTree");
+			}
+			int version = buffer.getInt();
+			if (version != VERSION) {
+				throw new IOException(file + ": unknown version " + version);
+			}
+			int ninputs = buffer.getInt();
+			if (ninputs < 0 || ninputs > buffer.remaining()) {
+				throw new IOException(file + ": bad number of inputs " + ninputs);
+			}
+			List<Variable> inputs = new ArrayList<Variable>(ninputs);
+			for (int i=0; i < ninputs; i++) {
+				inputs.add(readVariable(buffer));
+			}
+			Variable output = readVariable(buffer);
+			if (problem == null) {
+				problem = new SavedProblem(inputs, output);
+			} else {
+				checkProblem(problem, inputs, output, file);
+			}
+			int nnodes = buffer.getInt();
+			int start = (buffer.position() + 7) & ~7;
+			if (nnodes < 1 || (long)start + (long)nnodes * NODE_SIZE > buffer.limit()) {
+				throw new IOException(file + ": truncated node table");
+			}
+			buffer.position(start);
+			ByteBuffer nodes = buffer.slice();
+			nodes.limit(nnodes * NODE_SIZE);
+			checkNodes(nodes, nnodes, problem, file);
+			return new MappedDecisionTree(problem, nodes, nnodes);
+		} catch (BufferUnderflowException | IllegalArgumentException ex) {
+			throw new IOException(file + ": bad saved DecisionTree", ex);
+		}
+	}
+
+	protected static Variable readVariable(ByteBuffer buffer) {
+		String name = readString(buffer);
+		if (buffer.get() == 1) {
+			return new NumericVariable(name);
+		}
+		int nvalues = buffer.getInt();
+		Domain domain = new Domain();
+		for (int k=0; k < nvalues; k++) {
+			domain.add(readString(buffer));
+		}
+		return new Variable(name, domain);
+	}
+
+	protected static String readString(ByteBuffer buffer) {
+		int length = buffer.getInt();
+		if (length < 0 || length > buffer.remaining()) {
+			throw new IllegalArgumentException("bad string length " + length);
+		}
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Throw an IOException unless the given nodes make a tree for the
+	 * given Problem: every node tests an input (or is a leaf with a code
+	 * of the output), and its children are all in the table and come
+	 * after it, so evaluation can't go outside the table or loop.
+	 */
+	protected static void checkNodes(ByteBuffer nodes, int nnodes, Problem problem, File file) throws IOException {
+		List<Variable> inputs = problem.getInputs();
+		int noutputs = problem.getOutput().domain.size();
+		for (int i=0; i < nnodes; i++) {
+			int c = nodes.getInt(i*NODE_SIZE);
+			int next = nodes.getInt(i*NODE_SIZE + 4);
+			if (c < 0) {
+				if (c != -1 || next < 0 || next >= noutputs) {
+					throw new IOException(file + ": bad leaf at node " + i);
+				}
+				continue;
+			}
+			if (c >= inputs.size()) {
+				throw new IOException(file + ": bad input column " + c + " at node " + i);
+			}
+			Variable var = inputs.get(c);
+			int nchildren = var instanceof NumericVariable ? 2 : var.domain.size();
+			if (next <= i || (long)next + nchildren > nnodes) {
+				throw new IOException(file + ": bad children at node " + i);
+			}
+		}
+	}
+
+	/**
+	 * Throw an IOException unless the given Problem has Variables like
+	 * the given ones.
+	 */
+	protected static void checkProblem(Problem problem, List<Variable> inputs, Variable output, File file) throws IOException {
+		List<Variable> vars = new ArrayList<Variable>(problem.getInputs());
+		vars.add(problem.getOutput());
+		List<Variable> saved = new ArrayList<Variable>(inputs);
+		saved.add(output);
+		if (vars.size() != saved.size()) {
+			throw new IOException(file + ": saved with " + inputs.size() + " inputs, not " + problem.getInputs().size());
+		}
+		for (int i=0; i < vars.size(); i++) {
+			Variable a = vars.get(i);
+			Variable b = saved.get(i);
+			if (!a.getName().equals(b.getName())
+					|| (a instanceof NumericVariable) != (b instanceof NumericVariable)
+					|| !(a instanceof NumericVariable || sameValues(a.domain, b.domain))) {
+				throw new IOException(file + ": saved with a different variable: " + b + " for " + a);
+			}
+		}
+	}
+
+	/**
+	 * Return true if the given Domains have the same values in the same
+	 * order, and so the same codes.
+	 */
+	protected static boolean sameValues(Domain a, Domain b) {
+		if (a.size() != b.size()) {
+			return false;
+		}
+		for (int k=0; k < a.size(); k++) {
+			if (!a.get(k).equals(b.get(k))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * The Problem of a MappedDecisionTree loaded without one.
+	 */
+	protected static class SavedProblem extends Problem {
+		public SavedProblem(List<Variable> inputs, Variable output) {
+			super(inputs, output);
+		}
+	}
+
+	public Problem getProblem() {
+		return problem;
+	}
+
+	/**
+	 * Return the number of nodes in this MappedDecisionTree.
+	 */
+	public int size() {
+		return nnodes;
+	}
+
+	/**
+	 * Return the output code computed by this MappedDecisionTree for the
+	 * given row of the given Dataset, which must be for its Problem.
+	 */
+	public int evalCode(Dataset dataset, int row) {
+		int node = 0;
+		int c;
+		while ((c = nodes.getInt(node*NODE_SIZE)) >= 0) {
+			int next = nodes.getInt(node*NODE_SIZE + 4);
+			if (numeric[c]) {
+				node = next + (dataset.getNumericValue(row, c) <= nodes.getDouble(node*NODE_SIZE + 8) ? 0 : 1);
+			} else {
+				node = next + dataset.getInputCode(row, c);
+			}
+		}
+		return nodes.getInt(node*NODE_SIZE + 4);
+	}
+
+	/**
+	 * Return the output code computed by this MappedDecisionTree for the
+	 * given input codes and numbers, as for CompiledDecisionTree.evalCode.
+	 */
+	public int evalCode(int[] codes, double[] numbers) {
+		int node = 0;
+		int c;
+		while ((c = nodes.getInt(node*NODE_SIZE)) >= 0) {
+			int next = nodes.getInt(node*NODE_SIZE + 4);
+			if (numeric[c]) {
+				node = next + (numbers[c] <= nodes.getDouble(node*NODE_SIZE + 8) ? 0 : 1);
+			} else {
+				node = next + codes[c];
+			}
+		}
+		return nodes.getInt(node*NODE_SIZE + 4);
+	}
+
+	/**
+	 * Return the output code computed by this MappedDecisionTree for the
+	 * given Example, or -1 if it is missing a value that is needed.
+	 */
+	public int evalCode(Example example) {
+		if (example.dataset != null && example.dataset.problem == problem) {
+			return evalCode(example.dataset, example.row);
+		}
+		List<Variable> inputs = problem.getInputs();
+		int node = 0;
+		int c;
+		while ((c = nodes.getInt(node*NODE_SIZE)) >= 0) {
+			int next = nodes.getInt(node*NODE_SIZE + 4);
+			Variable var = inputs.get(c);
+			if (numeric[c]) {
+				double x = example.getNumericValue(var);
+				if (Double.isNaN(x)) {
+					return -1;
+				}
+				node = next + (x <= nodes.getDouble(node*NODE_SIZE + 8) ? 0 : 1);
+			} else {
+				int k = example.getInputCode(var);
+				if (k < 0) {
+					return -1;
+				}
+				node = next + k;
+			}
+		}
+		return nodes.getInt(node*NODE_SIZE + 4);
+	}
+
+	/**
+	 * Return the value computed by this MappedDecisionTree for the given
+	 * Example, or null if it is missing a value that is needed.
+	 */
+	public String eval(Example example) {
+		int code = evalCode(example);
+		return code < 0 ? null : problem.getOutput().domain.get(code);
+	}
+
+	/**
+	 * Return the value computed by this MappedDecisionTree for the given
+	 * row of the given Dataset.
+	 */
+	public String eval(Dataset dataset, int row) {
+		return problem.getOutput().domain.get(evalCode(dataset, row));
+	}
+
+	/**
+	 * Return a DecisionTree like the one that was saved, for its Problem,
+	 * for example to dump it.
+	 */
+	public DecisionTree toDecisionTree() {
+		return toDecisionTree(0);
+	}
+
+	protected DecisionTree toDecisionTree(int node) {
+		int c = nodes.getInt(node*NODE_SIZE);
+		int next = nodes.getInt(node*NODE_SIZE + 4);
+		if (c < 0) {
+			return new DecisionTree(problem.getOutput().domain.get(next));
+		}
+		Variable var = problem.getInputs().get(c);
+		DecisionTree tree;
+		int nchildren;
+		if (numeric[c]) {
+			tree = new DecisionTree((NumericVariable)var, nodes.getDouble(node*NODE_SIZE + 8));
+			nchildren = 2;
+		} else {
+			tree = new DecisionTree(var);
+			nchildren = var.domain.size();
+		}
+		for (int k=0; k < nchildren; k++) {
+			tree.children.add(toDecisionTree(next + k));
+		}
+		return tree;
+	}
+
+}
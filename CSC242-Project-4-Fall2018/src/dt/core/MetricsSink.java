@@ -0,0 +1,51 @@
+package dt.core;
+
+/**
+ * A MetricsSink is told what a decision tree learner (see
+ * AbstractDecisionTreeLearner.setMetrics, RandomForestLearner.setMetrics
+ * and GradientBoostingLearner.setMetrics) or a DecisionTree (see
+ * DecisionTree.setMetrics) does as it does it, for finding out where the
+ * time goes. TreeMetrics adds it all up; other implementations can log
+ * it or send it somewhere else.
+ * <p>
+ * Learners that learn subtrees or trees in parallel (like a
+ * RandomForestLearner) call a sink from several threads at once, so it
+ * must be thread-safe. Without a sink (the default) the only cost is
+ * checking for one.
+ */
+public interface MetricsSink {
+
+	/**
+	 * Called when a node at the given depth (0 for the root) with the
+	 * given number of examples has been built, as a leaf or not.
+	 */
+	public void nodeBuilt(int depth, int nexamples, boolean leaf);
+
+	/**
+	 * Called when a split has been chosen for a node with the given number
+	 * of examples by computing the gains of the given number of
+	 * attributes, which took the given time. For learners that count a
+	 * node's examples to choose its split, that includes the counting.
+	 */
+	public void splitSearched(int nexamples, int ngains, long nanos);
+
+	/**
+	 * Called when the given number of rows (or examples) have been read
+	 * to count them, about the given number of bytes having been
+	 * allocated for the counts and the like.
+	 */
+	public void rowsScanned(long nrows, long nbytes);
+
+	/**
+	 * Called when the given DecisionTree has been learned, which took the
+	 * given time.
+	 */
+	public void treeLearned(DecisionTree tree, long nanos);
+
+	/**
+	 * Called when a DecisionTree has been evaluated, which took the given
+	 * number of tests to get to a leaf.
+	 */
+	public void treeEvaluated(int depth);
+
+}
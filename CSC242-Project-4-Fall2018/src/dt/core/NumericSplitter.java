@@ -0,0 +1,219 @@
+package dt.core;
+
+import java.util.BitSet;
+import java.util.Set;
+
+import dt.util.Sorting;
+
+/**
+ * A NumericSplitter finds the best threshold for splitting the examples
+ * at a node of a DecisionTree on a NumericVariable, in the style of C4.5.
+ * The candidate thresholds are the distinct values of the variable among
+ * the examples (other than the largest). Going through the examples in
+ * order of value, the output counts on each side of each candidate are
+ * updated as we go, so all of them are scored in one linear sweep.
+ * <p>
+ * For examples that are views of a Dataset, the order comes from the
+ * Dataset's presorted rows for the variable's column (see
+ * Dataset.getSortedRows), which are sorted once for the whole learning
+ * run. The sweep skips the rows that aren't at this node, so that costs
+ * time proportional to the whole Dataset; for small nodes it's cheaper to
+ * just sort the node's own rows, so we do that instead.
+ * <p>
+ * A row that is among the examples more than once (as in a bootstrap
+ * sample, see RowSet) counts that many times, and an example with a
+ * weight counts as many times as its weight.
+ * <p>
+ * Every example must have a value for the variable, so NaN isn't
+ * allowed. A Dataset doesn't have NaNs (see Dataset.setNumericValue), and
+ * an example of its own that has one is an IllegalArgumentException.
+ * <p>
+ * Thresholds are scored by information gain unless another SplitCriterion
+ * is given, in which case the gain of a Split is its score.
+ */
+public class NumericSplitter {
+
+	/**
+	 * The result of a NumericSplitter: a threshold and its information gain
+	 * (or score).
+	 */
+	public static class Split {
+		public final double threshold;
+		public final double gain;
+
+		public Split(double threshold, double gain) {
+			this.threshold = threshold;
+			this.gain = gain;
+		}
+	}
+
+	protected Variable output;
+	protected int noutputs;
+	protected Set<Example> examples;
+	protected Dataset dataset;
+	protected int[] rows;
+	protected BitSet members;
+	// How many times each row is among the examples, if some are there
+	// more than once (see RowSet)
+	protected int[] repeats;
+	protected int[] outputCounts;
+	// The sum of the examples' weights
+	protected int total;
+	protected SplitCriterion criterion;
+	protected double impurity;
+
+	/**
+	 * Construct and return a new NumericSplitter for the given examples
+	 * with the given output Variable, scoring thresholds by information
+	 * gain.
+	 */
+	public NumericSplitter(Variable output, Set<Example> examples) {
+		this(output, examples, SplitCriterion.INFORMATION_GAIN);
+	}
+
+	/**
+	 * Construct and return a new NumericSplitter for the given examples
+	 * with the given output Variable, scoring thresholds by the given
+	 * SplitCriterion.
+	 */
+	public NumericSplitter(Variable output, Set<Example> examples, SplitCriterion criterion) {
+		this.output = output;
+		this.criterion = criterion;
+		this.noutputs = output.domain.size();
+		this.examples = examples;
+		this.dataset = CountTable.commonDataset(examples);
+		this.outputCounts = new int[noutputs];
+		if (dataset != null) {
+			this.rows = CountTable.rowsOf(examples);
+			byte[] outcol = dataset.getOutputColumn();
+			for (int row : rows) {
+				outputCounts[outcol[row] & 0xFF] += dataset.getWeight(row);
+			}
+		} else {
+			for (Example e : examples) {
+				outputCounts[e.getOutputCode(output)] += e.getWeight();
+			}
+		}
+		for (int count : outputCounts) {
+			total += count;
+		}
+		this.impurity = criterion.impurity(outputCounts, 0, noutputs, total);
+	}
+
+	/**
+	 * Return the threshold for the given NumericVariable with the greatest
+	 * information gain (or score) (the smallest one, if there's a tie), or null if
+	 * there isn't one because the examples all have the same value.
+	 */
+	public Split bestSplit(NumericVariable a) {
+		int n = examples.size();
+		if (n < 2) {
+			return null;
+		}
+		int[] order;
+		double[] values;
+		int[] outputs;
+		int[] weights;
+		BitSet filter = null;
+		if (dataset != null) {
+			int column = dataset.getColumnIndex(a);
+			values = dataset.getNumericColumn(column);
+			outputs = null;
+			weights = dataset.getWeightColumn();
+			if (n * (Math.log(n) / Math.log(2.0)) < dataset.size()) {
+				order = rows.clone();
+				Sorting.sortByKey(order, 0, n, values);
+			} else {
+				order = dataset.getSortedRows(column);
+				filter = members();
+			}
+		} else {
+			// Examples with their own values: copy them out and sort
+			values = new double[n];
+			outputs = new int[n];
+			weights = new int[n];
+			order = new int[n];
+			int i = 0;
+			for (Example e : examples) {
+				values[i] = e.getNumericValue(a);
+				if (Double.isNaN(values[i])) {
+					throw new IllegalArgumentException("no value for " + a + ": " + e);
+				}
+				outputs[i] = e.getOutputCode(output);
+				weights[i] = e.getWeight();
+				order[i] = i;
+				i += 1;
+			}
+			Sorting.sortByKey(order, 0, n, values);
+		}
+		byte[] outcol = dataset != null ? dataset.getOutputColumn() : null;
+		int[] left = new int[noutputs];
+		int[] right = outputCounts.clone();
+		int nleft = 0;
+		double prev = 0;
+		double bestThreshold = 0;
+		double bestGain = Double.NEGATIVE_INFINITY;
+		n = total;
+		for (int i=0; i < order.length && nleft < n; i++) {
+			int r = order[i];
+			if (filter != null && !filter.get(r)) {
+				continue;
+			}
+			double x = values[r];
+			if (nleft > 0 && x > prev) {
+				double g = criterion.score(impurity, left, nleft, right, n-nleft);
+				if (g > bestGain) {
+					bestGain = g;
+					bestThreshold = prev;
+				}
+			}
+			int ok = outcol != null ? outcol[r] & 0xFF : outputs[r];
+			int m = filter != null && repeats != null ? repeats[r] : 1;
+			if (weights != null) {
+				m *= weights[r];
+			}
+			left[ok] += m;
+			right[ok] -= m;
+			nleft += m;
+			prev = x;
+		}
+		if (bestGain == Double.NEGATIVE_INFINITY) {
+			return null;
+		} else {
+			return new Split(bestThreshold, bestGain);
+		}
+	}
+
+	/**
+	 * Return the information gain (or score) of the best threshold for the given
+	 * NumericVariable, or negative infinity if there isn't one.
+	 */
+	public double gain(NumericVariable a) {
+		Split split = bestSplit(a);
+		return split == null ? Double.NEGATIVE_INFINITY : split.gain;
+	}
+
+	/**
+	 * Return the rows at this node as a BitSet, for filtering the
+	 * presorted rows of the Dataset. If some rows are there more than
+	 * once, this also counts them in repeats.
+	 */
+	protected BitSet members() {
+		if (members == null) {
+			members = new BitSet(dataset.size());
+			boolean repeated = false;
+			for (int row : rows) {
+				repeated |= members.get(row);
+				members.set(row);
+			}
+			if (repeated) {
+				repeats = new int[dataset.size()];
+				for (int row : rows) {
+					repeats[row] += 1;
+				}
+			}
+		}
+		return members;
+	}
+
+}
@@ -0,0 +1,15 @@
+package dt.core;
+
+/**
+ * A NumericVariable is an input Variable whose values are real numbers
+ * rather than values from a Domain (which is empty for a NumericVariable).
+ * A DecisionTree tests a NumericVariable by comparing it to a threshold,
+ * in the style of C4.5, rather than having a child for each value.
+ */
+public class NumericVariable extends Variable {
+	
+	public NumericVariable(String name) {
+		super(name, new Domain());
+	}
+
+}
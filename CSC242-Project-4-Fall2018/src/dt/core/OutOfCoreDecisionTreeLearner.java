@@ -0,0 +1,336 @@
+package dt.core;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A DecisionTreeLearner that can also learn from a DiskDataset, which
+ * may be much bigger than memory. The tree is learned a level at a time
+ * rather than depth-first: all the nodes at one depth are counted in one
+ * pass over the rows, which reads each column file that's needed from
+ * start to end, a block of rows at a time. The only things in memory
+ * are the number of the node each row is at (an int per row) and a
+ * CountTable for each node of the current level.
+ * <p>
+ * The counting is done by a LevelCounter, which for a DiskDataset is a
+ * LocalCounter (see ShardedDecisionTreeLearner for another).
+ * <p>
+ * The pass for a level first moves each row from its node in the level
+ * above to the child for its value of the attribute that node tests (or
+ * takes it out, if that node became a leaf), then counts it in its
+ * new node's CountTable. The nodes are then decided from their tables,
+ * as in DecisionTreeLearner, and the children of the ones that split are
+ * the next level. The tree is the same as the one DecisionTreeLearner
+ * would learn from the same examples, and the limits on its growth (see
+ * setMaxDepth and so on) apply too; a maximum number of nodes is used up
+ * level by level rather than branch by branch.
+ */
+public class OutOfCoreDecisionTreeLearner extends DecisionTreeLearner {
+
+	/**
+	 * The number of rows of each column read at a time.
+	 */
+	public static final int BLOCK_SIZE = 1 << 16;
+
+	/**
+	 * By default, the CountTables counted in one pass have at most this
+	 * many counts in all (64MB of them).
+	 */
+	public static final int DEFAULT_MAX_TABLE_SIZE = 1 << 24;
+
+	protected int maxTableSize = DEFAULT_MAX_TABLE_SIZE;
+
+	/**
+	 * Construct and return a new OutOfCoreDecisionTreeLearner for the
+	 * given Problem.
+	 */
+	public OutOfCoreDecisionTreeLearner(Problem problem) {
+		super(problem);
+	}
+
+	/**
+	 * Set the most counts in the CountTables counted in one pass over the
+	 * rows. If a level's nodes would need more, the level takes several
+	 * passes, each counting some of its nodes.
+	 */
+	public void setMaxTableSize(int maxTableSize) {
+		this.maxTableSize = maxTableSize;
+	}
+
+	/**
+	 * A node of the level being learned: the attributes it can still
+	 * test, their columns, and its counts.
+	 */
+	protected class Node {
+		protected Node parent;
+		protected List<Variable> attributes;
+		protected int[] columns;
+		protected int depth;
+		// The number of rows at this node, or the sum of their weights
+		protected int nrows;
+		protected CountTable table;
+		protected DecisionTree tree;
+		// The code of the most common output, for children with no examples
+		protected int plurality;
+		// The column this node splits on, or -1 if it's a leaf, and the
+		// index of its first child in the next level
+		protected int splitColumn = -1;
+		protected int firstChild;
+
+		protected Node(Node parent, List<Variable> attributes, int[] columns, int depth, int nrows) {
+			this.parent = parent;
+			this.attributes = attributes;
+			this.columns = columns;
+			this.depth = depth;
+			this.nrows = nrows;
+		}
+
+		/**
+		 * Return the number of counts in this node's CountTable, which it
+		 * only needs if it has rows.
+		 */
+		protected long tableSize() {
+			if (nrows == 0) {
+				return 0;
+			}
+			long size = 0;
+			for (Variable a : attributes) {
+				size += a.domain.size();
+			}
+			return (size + 1) * problem.getOutput().domain.size();
+		}
+	}
+
+	/**
+	 * Something that counts the rows of a ColumnSource (or of several)
+	 * for a level of nodes: see count.
+	 */
+	protected interface LevelCounter {
+		/**
+		 * Move each row from its node in the previous level (if that's
+		 * given) to its node in the given level, and if that is one of the
+		 * nodes from from up to to, count it in the node's CountTable,
+		 * which is there and empty.
+		 */
+		void count(Node[] previous, Node[] level, int from, int to) throws IOException;
+	}
+
+	/**
+	 * Compute and return a DecisionTree for this DecisionTreeLearner's
+	 * Problem using all the rows of the given DiskDataset.
+	 */
+	public DecisionTree learn(DiskDataset data) {
+		try {
+			return learn(new LocalCounter(data), data.size());
+		} catch (IOException ex) {
+			// A LocalCounter doesn't do any I/O that can fail
+			throw new RuntimeException(ex);
+		}
+	}
+
+	/**
+	 * Compute and return a DecisionTree for this DecisionTreeLearner's
+	 * Problem a level at a time, from the given number of rows counted by
+	 * the given LevelCounter.
+	 */
+	protected DecisionTree learn(LevelCounter counter, int nrows) throws IOException {
+		long start = System.nanoTime();
+		nodeCount.set(1);
+		Node root = new Node(null, problem.getInputs(), columnsOf(problem.getInputs()), 0, nrows);
+		Node[] previous = null;
+		Node[] level = { root };
+		while (level.length > 0) {
+			List<Node> next = new ArrayList<Node>();
+			int from = 0;
+			while (from < level.length) {
+				// As many nodes as fit in maxTableSize, but at least one
+				int to = from;
+				long size = 0;
+				while (to < level.length && (to == from || size + level[to].tableSize() <= maxTableSize)) {
+					size += level[to].tableSize();
+					to += 1;
+				}
+				for (int i=from; i < to; i++) {
+					Node node = level[i];
+					node.table = new CountTable(node.nrows > 0 ? node.attributes : new ArrayList<Variable>(), problem.getOutput());
+				}
+				// Rows are only moved to this level on its first pass
+				counter.count(from == 0 ? previous : null, level, from, to);
+				if (metrics != null) {
+					// Each pass reads every row
+					metrics.rowsScanned(nrows, 4 * size);
+				}
+				for (int i=from; i < to; i++) {
+					Node node = level[i];
+					decide(node, next);
+					if (metrics != null) {
+						metrics.nodeBuilt(node.depth, node.nrows, node.splitColumn < 0);
+					}
+					if (node.parent != null) {
+						node.parent.tree.children.add(node.tree);
+					}
+				}
+				from = to;
+			}
+			previous = level;
+			level = next.toArray(new Node[next.size()]);
+		}
+		return learned(root.tree, start);
+	}
+
+	/**
+	 * A LevelCounter for the rows of a ColumnSource in this JVM, which
+	 * keeps the number of the node each row is at (or -1 once it's at a
+	 * leaf). Each count is one pass over the columns that are needed, a
+	 * block of rows at a time.
+	 */
+	protected class LocalCounter implements LevelCounter {
+
+		protected ColumnSource data;
+		protected int[] nodeOf;
+
+		protected LocalCounter(ColumnSource data) {
+			this.data = data;
+			this.nodeOf = new int[data.size()];
+		}
+
+		public void count(Node[] previous, Node[] level, int from, int to) {
+			int noutputs = problem.getOutput().domain.size();
+			boolean[] needed = new boolean[data.getNumColumns()];
+			for (int i=from; i < to; i++) {
+				if (level[i].nrows > 0) {
+					for (int c : level[i].columns) {
+						needed[c] = true;
+					}
+				}
+			}
+			if (previous != null) {
+				for (Node node : previous) {
+					if (node.splitColumn >= 0) {
+						needed[node.splitColumn] = true;
+					}
+				}
+			}
+			byte[][] blocks = new byte[needed.length][];
+			for (int c=0; c < needed.length; c++) {
+				if (needed[c]) {
+					blocks[c] = new byte[BLOCK_SIZE];
+				}
+			}
+			byte[] outputs = new byte[BLOCK_SIZE];
+			int[] weights = new int[BLOCK_SIZE];
+			for (int start=0; start < data.size(); start += BLOCK_SIZE) {
+				int n = Math.min(BLOCK_SIZE, data.size() - start);
+				for (int c=0; c < needed.length; c++) {
+					if (needed[c]) {
+						data.readInputCodes(c, start, blocks[c], n);
+					}
+				}
+				data.readOutputCodes(start, outputs, n);
+				data.readWeights(start, weights, n);
+				for (int i=0; i < n; i++) {
+					int node = nodeOf[start + i];
+					if (node < 0) {
+						continue;
+					}
+					if (previous != null) {
+						Node parent = previous[node];
+						if (parent.splitColumn < 0) {
+							nodeOf[start + i] = -1;
+							continue;
+						}
+						node = parent.firstChild + (blocks[parent.splitColumn][i] & 0xFF);
+						nodeOf[start + i] = node;
+					}
+					if (node < from || node >= to) {
+						continue;
+					}
+					Node current = level[node];
+					CountTable table = current.table;
+					int ok = outputs[i] & 0xFF;
+					int w = weights[i];
+					table.outputCounts[ok] += w;
+					table.total += w;
+					int[] columns = current.columns;
+					for (int a=0; a < columns.length; a++) {
+						table.counts[table.offsets[a] + (blocks[columns[a]][i] & 0xFF)*noutputs + ok] += w;
+					}
+				}
+			}
+		}
+
+	}
+
+	/**
+	 * Make the given node a leaf or a split, following AIMA Fig 18.5 like
+	 * DecisionTreeLearner.learn, from its CountTable. If it splits, add
+	 * its children to the given next level.
+	 */
+	protected void decide(Node node, List<Node> next) {
+		CountTable table = node.table;
+		node.table = null;
+		Domain outputs = problem.getOutput().domain;
+		if (table.getTotal() == 0) {
+			node.plurality = node.parent != null ? node.parent.plurality : 0;
+			node.tree = new DecisionTree(outputs.get(node.plurality));
+			return;
+		}
+		node.plurality = 0;
+		int nonzero = 0;
+		for (int ok=0; ok < outputs.size(); ok++) {
+			if (table.getOutputCount(ok) > table.getOutputCount(node.plurality)) {
+				node.plurality = ok;
+			}
+			if (table.getOutputCount(ok) > 0) {
+				nonzero += 1;
+			}
+		}
+		if (nonzero == 1 || node.attributes.isEmpty() || !mightSplit(table.getTotal(), node.depth)) {
+			node.tree = new DecisionTree(outputs.get(node.plurality));
+			return;
+		}
+		long start = metrics != null ? System.nanoTime() : 0;
+		int a = table.bestAttribute(criterion);
+		if (metrics != null) {
+			metrics.splitSearched(table.getTotal(), node.attributes.size(), System.nanoTime() - start);
+		}
+		Variable var = node.attributes.get(a);
+		int nchildren = var.domain.size();
+		if (hasSplitLimits()) {
+			int[] counts = Arrays.copyOfRange(table.counts, table.offsets[a], table.offsets[a] + nchildren*outputs.size());
+			if (!allowsSplit(counts, nchildren)) {
+				node.tree = new DecisionTree(outputs.get(node.plurality));
+				return;
+			}
+		}
+		if (!reserveNodes(nchildren)) {
+			node.tree = new DecisionTree(outputs.get(node.plurality));
+			return;
+		}
+		node.tree = new DecisionTree(var);
+		node.splitColumn = node.columns[a];
+		node.firstChild = next.size();
+		// The children share their attributes and columns
+		List<Variable> remaining = new ArrayList<Variable>(node.attributes);
+		remaining.remove(a);
+		int[] columns = columnsOf(remaining);
+		for (int k=0; k < nchildren; k++) {
+			next.add(new Node(node, remaining, columns, node.depth+1, table.getCount(a, k)));
+		}
+	}
+
+	/**
+	 * Return the columns for the given inputs, which are their indices in
+	 * the Problem's inputs.
+	 */
+	protected int[] columnsOf(List<Variable> attributes) {
+		int[] columns = new int[attributes.size()];
+		for (int a=0; a < columns.length; a++) {
+			columns[a] = problem.getInputs().indexOf(attributes.get(a));
+		}
+		return columns;
+	}
+
+}
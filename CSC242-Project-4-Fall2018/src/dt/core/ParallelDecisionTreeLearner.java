@@ -0,0 +1,137 @@
+package dt.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * A DecisionTreeLearner that learns the subtrees of a node in parallel.
+ * The subtrees under a node are independent, so once a node has enough
+ * examples its children are forked as tasks on a ForkJoinPool, where idle
+ * threads steal them. The pool's parallelism caps the number of threads.
+ * <p>
+ * A learner given a pool, or using the common pool (the default),
+ * leaves it alone. One constructed with a number of threads makes its
+ * own pool, which belongs to it: call shutdown once it's done with.
+ * <p>
+ * Nothing else changes, so the tree is exactly the one that
+ * DecisionTreeLearner would learn from the same examples.
+ */
+public class ParallelDecisionTreeLearner extends DecisionTreeLearner {
+	
+	/**
+	 * By default, nodes with fewer examples than this learn their
+	 * children serially.
+	 */
+	public static final int DEFAULT_MIN_FORK_SIZE = 1000;
+	
+	protected ForkJoinPool pool;
+	// Whether the pool was made by (and so belongs to) this learner
+	protected boolean ownsPool;
+	protected int minForkSize = DEFAULT_MIN_FORK_SIZE;
+	
+	/**
+	 * Construct and return a new ParallelDecisionTreeLearner for the given
+	 * Problem that runs its tasks on the given ForkJoinPool.
+	 */
+	public ParallelDecisionTreeLearner(Problem problem, ForkJoinPool pool) {
+		super(problem);
+		this.pool = pool;
+	}
+	
+	/**
+	 * Construct and return a new ParallelDecisionTreeLearner for the given
+	 * Problem that uses at most the given number of threads, on a new
+	 * ForkJoinPool of its own (see shutdown).
+	 */
+	public ParallelDecisionTreeLearner(Problem problem, int parallelism) {
+		this(problem, new ForkJoinPool(parallelism));
+		this.ownsPool = true;
+	}
+	
+	/**
+	 * Construct and return a new ParallelDecisionTreeLearner for the given
+	 * Problem that runs its tasks on the common ForkJoinPool, which is
+	 * shared by everything in the JVM and never needs shutting down.
+	 */
+	public ParallelDecisionTreeLearner(Problem problem) {
+		this(problem, ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * Shut down this learner's ForkJoinPool if it made it (see the
+	 * constructors), so that its threads go away; it can't learn any more
+	 * trees after that. A pool it was given is left alone.
+	 */
+	public void shutdown() {
+		if (ownsPool) {
+			pool.shutdown();
+		}
+	}
+	
+	/**
+	 * Set the number of examples below which a node learns its children
+	 * serially rather than forking them.
+	 */
+	public void setMinForkSize(int minForkSize) {
+		this.minForkSize = minForkSize;
+	}
+	
+	/**
+	 * Compute and return a DecisionTree for this DecisionTreeLearner's
+	 * Problem using the given Set of Examples.
+	 * The learning runs on this ParallelDecisionTreeLearner's pool.
+	 */
+	@Override
+	public DecisionTree learn(final Set<Example> examples) {
+		return pool.invoke(new RecursiveTask<DecisionTree>() {
+			@Override
+			protected DecisionTree compute() {
+				return ParallelDecisionTreeLearner.super.learn(examples);
+			}
+		});
+	}
+	
+	/**
+	 * Learn the children of the given DecisionTree, forking a task for
+	 * each of them if there are enough examples.
+	 */
+	@Override
+	protected void learnChildren(DecisionTree tree, final Set<Example> examples, final List<Variable> remaining, final int depth) {
+		if (examples.size() < minForkSize || !ForkJoinTask.inForkJoinPool()) {
+			super.learnChildren(tree, examples, remaining, depth);
+			return;
+		}
+		List<Set<Example>> parts = partition(tree, examples);
+		// Children with no examples look at their parent's examples, which
+		// the others may be reordering (see DecisionTreeLearner.partition),
+		// so those are learned here before forking the rest
+		DecisionTree[] children = new DecisionTree[parts.size()];
+		List<RecursiveTask<DecisionTree>> tasks = new ArrayList<RecursiveTask<DecisionTree>>();
+		for (int k=0; k < children.length; k++) {
+			final Set<Example> exs = parts.get(k);
+			if (exs.isEmpty()) {
+				children[k] = learn(exs, remaining, examples, depth);
+			} else {
+				tasks.add(new RecursiveTask<DecisionTree>() {
+					@Override
+					protected DecisionTree compute() {
+						return learn(exs, remaining, examples, depth);
+					}
+				});
+			}
+		}
+		ForkJoinTask.invokeAll(tasks);
+		int next = 0;
+		for (int k=0; k < children.length; k++) {
+			if (children[k] == null) {
+				children[k] = tasks.get(next++).join();
+			}
+			tree.children.add(children[k]);
+		}
+	}
+	
+}
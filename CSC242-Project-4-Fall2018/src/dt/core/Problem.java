@@ -4,11 +4,8 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Scanner;
 import java.util.Set;
 
-import dt.util.ArraySet;
-
 /**
  * A Problem (specification) is a list of input Variables
  * with their Domains and a single output Variable with its
@@ -50,22 +47,30 @@ abstract public class Problem {
 	 * This format is common in UCI datasets.
 	 * It is easy to do override this method and do something
 	 * else if necessary for some problems.
+	 * The Examples are views of the rows of a Dataset
+	 * (see readDatasetFromCSVFile).
 	 */
 	public Set<Example> readExamplesFromCSVFile(File file) throws IOException {
-		Set<Example> examples = new ArraySet<Example>();
-		Scanner in = new Scanner(file);
-		in.useDelimiter("[,\n]");
-		while (in.hasNext()) {
-			Example example = new Example();
-			for (int i=0; i<this.inputs.size(); i++) {
-				String token = in.next();
-				example.setInputValue(this.inputs.get(i), token);
-			}
-			String token = in.next();
-			example.setOutputValue(token);
-			examples.add(example);
-		}
-		in.close();
-		return examples;
+		return readDatasetFromCSVFile(file).getExamples();
+	}
+	
+	/**
+	 * Read a Dataset from the given File and return it.
+	 * The file format is as for readExamplesFromCSVFile.
+	 * The file is memory-mapped and parsed in parallel (see MappedCSVReader).
+	 * Throws IOException if a value isn't in its Variable's Domain or a
+	 * line has the wrong number of values.
+	 */
+	public Dataset readDatasetFromCSVFile(File file) throws IOException {
+		return new MappedCSVReader(this).read(file);
+	}
+	
+	/**
+	 * Read a Dataset from the given File as for readDatasetFromCSVFile,
+	 * then collapse its identical rows into one row each, weighted by how
+	 * many there were (see Dataset.deduplicate).
+	 */
+	public Dataset readDeduplicatedDatasetFromCSVFile(File file) throws IOException {
+		return readDatasetFromCSVFile(file).deduplicate();
 	}
 }
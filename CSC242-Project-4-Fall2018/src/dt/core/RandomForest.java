@@ -0,0 +1,98 @@
+package dt.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A RandomForest is a set of DecisionTrees for the same Problem that
+ * vote on the output value (see RandomForestLearner). Ties go to the
+ * value that comes first in the output Domain.
+ * <p>
+ * For evaluating many examples, compile it into a CompiledForest.
+ */
+public class RandomForest {
+
+	protected Problem problem;
+	protected List<DecisionTree> trees;
+
+	/**
+	 * Construct and return a new RandomForest of the given trees for
+	 * the given Problem.
+	 */
+	public RandomForest(Problem problem, List<DecisionTree> trees) {
+		this.problem = problem;
+		this.trees = new ArrayList<DecisionTree>(trees);
+	}
+
+	public Problem getProblem() {
+		return problem;
+	}
+
+	public List<DecisionTree> getTrees() {
+		return Collections.unmodifiableList(trees);
+	}
+
+	/**
+	 * Return the number of trees in this RandomForest.
+	 */
+	public int size() {
+		return trees.size();
+	}
+
+	/**
+	 * Return the value voted for by the most trees for the given Example.
+	 * Trees that can't evaluate it because it's missing a value they need
+	 * don't vote, and if none can, return null, like DecisionTree.eval.
+	 */
+	public String eval(Example example) {
+		Domain domain = problem.getOutput().domain;
+		int[] votes = new int[domain.size()];
+		int nvotes = 0;
+		for (DecisionTree tree : trees) {
+			String value = tree.eval(example);
+			if (value != null) {
+				votes[domain.indexOf(value)] += 1;
+				nvotes += 1;
+			}
+		}
+		if (nvotes == 0) {
+			return null;
+		}
+		int best = 0;
+		for (int k=1; k < votes.length; k++) {
+			if (votes[k] > votes[best]) {
+				best = k;
+			}
+		}
+		return domain.get(best);
+	}
+
+	/**
+	 * Compile this RandomForest into a CompiledForest.
+	 */
+	public CompiledForest compile() {
+		return new CompiledForest(this);
+	}
+
+	/**
+	 * Test this RandomForest on the given set of Examples and print the
+	 * number and percentage it gets right. Unlike DecisionTree.test, this
+	 * doesn't print every Example.
+	 */
+	public void test(Set<Example> examples) {
+		int ntested = 0;
+		int ncorrect = 0;
+		for (Example e : examples) {
+			String result = this.eval(e);
+			ntested += 1;
+			if (result != null && result.equals(e.getOutputValue())) {
+				ncorrect += 1;
+			}
+		}
+		double pct = (double)ncorrect / ntested * 100;
+		System.out.format("correct: %d/%d (%.2f)%%", ncorrect, ntested, pct);
+	}
+
+}
@@ -0,0 +1,215 @@
+package dt.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A RandomForestLearner learns a RandomForest: many DecisionTrees, each
+ * learned from its own bootstrap sample of the examples (as many
+ * examples as there are, drawn with replacement), and each choosing the
+ * attribute at every node from a different random subset of the
+ * remaining attributes (by default, the square root of how many there
+ * are). The trees are learned by a DecisionTreeLearner that only does
+ * the choosing differently, on a pool of threads, one tree per task.
+ * <p>
+ * The bootstrap samples are RowSets with repeated rows rather than
+ * copies of the examples, so a row drawn k times just counts k times.
+ * Rows are drawn the same way if they have weights (see
+ * Dataset.deduplicate), and one drawn k times counts k times its weight,
+ * which gives each distinct example the same expected count as a sample
+ * of the examples it stands for, if a less random one.
+ * <p>
+ * Given the same seed, the same examples give the same RandomForest,
+ * however many threads there are.
+ */
+public class RandomForestLearner {
+
+	/**
+	 * By default, a RandomForest has this many trees.
+	 */
+	public static final int DEFAULT_NUM_TREES = 100;
+
+	protected Problem problem;
+	protected int nthreads;
+	protected int numTrees = DEFAULT_NUM_TREES;
+	protected int numAttributes = 0;
+	protected long seed = 1;
+	protected SplitCriterion criterion = SplitCriterion.INFORMATION_GAIN;
+	protected MetricsSink metrics;
+
+	/**
+	 * Construct and return a new RandomForestLearner for the given
+	 * Problem that learns its trees using the given number of threads.
+	 */
+	public RandomForestLearner(Problem problem, int nthreads) {
+		this.problem = problem;
+		this.nthreads = nthreads;
+	}
+
+	/**
+	 * Construct and return a new RandomForestLearner for the given
+	 * Problem with one thread per available processor.
+	 */
+	public RandomForestLearner(Problem problem) {
+		this(problem, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Set the number of trees to learn.
+	 */
+	public void setNumTrees(int numTrees) {
+		this.numTrees = numTrees;
+	}
+
+	/**
+	 * Set the number of attributes to choose from at each node, or 0 for
+	 * the square root of the number of inputs (the default).
+	 */
+	public void setNumAttributes(int numAttributes) {
+		this.numAttributes = numAttributes;
+	}
+
+	/**
+	 * Set the seed for the random numbers used to draw the bootstrap
+	 * samples and attribute subsets.
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * Set the SplitCriterion the trees choose their attributes by
+	 * (information gain by default).
+	 */
+	public void setSplitCriterion(SplitCriterion criterion) {
+		this.criterion = criterion;
+	}
+
+	/**
+	 * Tell the given MetricsSink (for example a TreeMetrics) about the
+	 * nodes built, the splits chosen and the rows scanned as each tree is
+	 * learned, or nothing if it's null (the default). The trees are
+	 * learned on several threads at once, so it must be thread-safe.
+	 */
+	public void setMetrics(MetricsSink metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Compute and return a RandomForest for this RandomForestLearner's
+	 * Problem using the given Set of Examples. If they aren't all views
+	 * of one Dataset, they are copied into a new one.
+	 */
+	public RandomForest learn(Set<Example> examples) {
+		Dataset dataset = CountTable.commonDataset(examples);
+		if (dataset != null) {
+			return learn(dataset, CountTable.rowsOf(examples));
+		}
+		dataset = new Dataset(problem, examples.size());
+		for (Example e : examples) {
+			dataset.addExample(e);
+		}
+		return learn(dataset);
+	}
+
+	/**
+	 * Compute and return a RandomForest for this RandomForestLearner's
+	 * Problem using all the rows of the given Dataset.
+	 */
+	public RandomForest learn(Dataset dataset) {
+		return learn(dataset, RowSet.identity(dataset.size()));
+	}
+
+	/**
+	 * Compute and return a RandomForest for this RandomForestLearner's
+	 * Problem using the given rows of the given Dataset.
+	 */
+	public RandomForest learn(final Dataset dataset, final int[] rows) {
+		int m = numAttributes > 0 ? numAttributes : (int)Math.max(1, Math.round(Math.sqrt(problem.getInputs().size())));
+		// Draw the seeds up front so the trees don't depend on the scheduling
+		Random random = new Random(seed);
+		List<Callable<DecisionTree>> tasks = new ArrayList<Callable<DecisionTree>>(numTrees);
+		for (int t=0; t < numTrees; t++) {
+			final Random treeRandom = new Random(random.nextLong());
+			final int numAttributes = m;
+			tasks.add(new Callable<DecisionTree>() {
+				public DecisionTree call() {
+					int[] sample = new int[rows.length];
+					for (int i=0; i < sample.length; i++) {
+						sample[i] = rows[treeRandom.nextInt(rows.length)];
+					}
+					TreeLearner learner = new TreeLearner(problem, numAttributes, treeRandom);
+					learner.setSplitCriterion(criterion);
+					learner.setMetrics(metrics);
+					return learner.learn(new RowSet(dataset, sample));
+				}
+			});
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(nthreads);
+		try {
+			List<DecisionTree> trees = new ArrayList<DecisionTree>(numTrees);
+			for (Future<DecisionTree> future : executor.invokeAll(tasks)) {
+				trees.add(future.get());
+			}
+			return new RandomForest(problem, trees);
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("interrupted while learning trees", ex);
+		} catch (ExecutionException ex) {
+			throw new RuntimeException("error learning trees", ex.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * The DecisionTreeLearner for the trees of a RandomForest, which
+	 * chooses the most important of a random subset of the attributes at
+	 * each node rather than of all of them.
+	 */
+	protected static class TreeLearner extends DecisionTreeLearner {
+
+		protected int numAttributes;
+		protected Random random;
+
+		public TreeLearner(Problem problem, int numAttributes, Random random) {
+			super(problem);
+			this.numAttributes = numAttributes;
+			this.random = random;
+		}
+
+		@Override
+		protected Variable mostImportantVariable(List<Variable> attributes, Set<Example> examples, NumericSplitter.Split[] split) {
+			int n = attributes.size();
+			if (n <= numAttributes) {
+				return super.mostImportantVariable(attributes, examples, split);
+			}
+			// Choose numAttributes of them by a partial shuffle of their
+			// indexes, but keep them in order so ties go the usual way
+			List<Variable> all = new ArrayList<Variable>(attributes);
+			int[] indexes = RowSet.identity(n);
+			for (int i=0; i < numAttributes; i++) {
+				int j = i + random.nextInt(n - i);
+				int t = indexes[i];
+				indexes[i] = indexes[j];
+				indexes[j] = t;
+			}
+			Arrays.sort(indexes, 0, numAttributes);
+			List<Variable> subset = new ArrayList<Variable>(numAttributes);
+			for (int i=0; i < numAttributes; i++) {
+				subset.add(all.get(indexes[i]));
+			}
+			return super.mostImportantVariable(subset, examples, split);
+		}
+
+	}
+
+}
@@ -0,0 +1,250 @@
+package dt.core;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A RowSet is a subset of the rows of a Dataset, viewed as a Set of
+ * Examples. It is just a range of an array of row numbers, so the
+ * learners can pass it around like any other Set of Examples, but
+ * splitting one never copies or even creates Examples: partition
+ * reorders the rows in place so that each part is a range of the same
+ * array, and returns RowSets for the parts.
+ * <p>
+ * The rows of a new RowSet are in increasing order, and partitioning
+ * keeps them that way within each part (though not across the whole
+ * range any more). That makes contains a binary search, and lets filter
+ * intersect the rows with those of the Dataset's InvertedIndex.
+ * <p>
+ * A RowSet may have the same row more than once, in which case it
+ * counts as that many Examples everywhere in the learners. That makes
+ * it a weighted view of the Dataset, as for the bootstrap samples of a
+ * RandomForestLearner. (It is then not strictly a Set, since iterating
+ * over it gives the same Example more than once.) The rows of a Dataset
+ * can also have weights of their own (see Dataset.deduplicate), and a
+ * row there twice counts twice its weight.
+ * <p>
+ * RowSets are unmodifiable as Sets. The Dataset shouldn't change while
+ * they're in use.
+ */
+public class RowSet extends AbstractSet<Example> {
+
+	protected Dataset dataset;
+	protected int[] rows;
+	protected int from;
+	protected int to;
+	// Whether rows[from..to) is in increasing order
+	protected boolean sorted;
+
+	/**
+	 * Construct and return a new RowSet with all the rows of the given
+	 * Dataset.
+	 */
+	public RowSet(Dataset dataset) {
+		this(dataset, identity(dataset.size()), 0, dataset.size(), true);
+	}
+
+	/**
+	 * Construct and return a new RowSet with the given rows of the given
+	 * Dataset, which may repeat. The array belongs to the RowSet after
+	 * this, and is sorted if it isn't already.
+	 */
+	public RowSet(Dataset dataset, int[] rows) {
+		this(dataset, rows, 0, rows.length, true);
+		if (!isSorted(rows, 0, rows.length)) {
+			Arrays.sort(rows);
+		}
+	}
+
+	protected RowSet(Dataset dataset, int[] rows, int from, int to, boolean sorted) {
+		this.dataset = dataset;
+		this.rows = rows;
+		this.from = from;
+		this.to = to;
+		this.sorted = sorted;
+	}
+
+	protected static int[] identity(int n) {
+		int[] rows = new int[n];
+		for (int i=0; i < n; i++) {
+			rows[i] = i;
+		}
+		return rows;
+	}
+
+	protected static boolean isSorted(int[] rows, int from, int to) {
+		for (int i=from+1; i < to; i++) {
+			if (rows[i] < rows[i-1]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public Dataset getDataset() {
+		return dataset;
+	}
+
+	@Override
+	public int size() {
+		return to - from;
+	}
+
+	/**
+	 * Return the i'th row of this RowSet.
+	 */
+	public int getRow(int i) {
+		return rows[from + i];
+	}
+
+	/**
+	 * Return a copy of the rows of this RowSet.
+	 */
+	public int[] toRowArray() {
+		return Arrays.copyOfRange(rows, from, to);
+	}
+
+	/**
+	 * Return the sum of the weights of the rows of this RowSet (see
+	 * Dataset.getWeight), which is its size if the Dataset has no weights.
+	 */
+	public int getWeight() {
+		int[] weights = dataset.getWeightColumn();
+		if (weights == null) {
+			return to - from;
+		}
+		int total = 0;
+		for (int i=from; i < to; i++) {
+			total += weights[rows[i]];
+		}
+		return total;
+	}
+
+	/**
+	 * Add the number of rows of this RowSet with each output code to
+	 * the given counts, or the sum of their weights if they have any.
+	 */
+	public void countOutputs(int[] counts) {
+		byte[] outcol = dataset.getOutputColumn();
+		int[] weights = dataset.getWeightColumn();
+		for (int i=from; i < to; i++) {
+			counts[outcol[rows[i]] & 0xFF] += weights == null ? 1 : weights[rows[i]];
+		}
+	}
+
+	@Override
+	public Iterator<Example> iterator() {
+		return new Iterator<Example>() {
+			int next = from;
+			public boolean hasNext() {
+				return next < to;
+			}
+			public Example next() {
+				if (next >= to) {
+					throw new NoSuchElementException();
+				}
+				return dataset.getExample(rows[next++]);
+			}
+		};
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		if (!(o instanceof Example) || ((Example)o).dataset != dataset) {
+			return false;
+		}
+		int row = ((Example)o).row;
+		if (sorted) {
+			return Arrays.binarySearch(rows, from, to, row) >= 0;
+		}
+		for (int i=from; i < to; i++) {
+			if (rows[i] == row) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Split this RowSet by the codes of its rows in the given (non-numeric)
+	 * column, and return one RowSet for each value of its Variable, in
+	 * order. The rows are reordered in place; afterwards this RowSet has
+	 * the same rows, but they are only in order within each part.
+	 */
+	public RowSet[] partition(int column) {
+		byte[] codes = dataset.getColumn(column);
+		int nvalues = dataset.getVariable(column).domain.size();
+		int[] bounds = new int[nvalues+1];
+		for (int i=from; i < to; i++) {
+			bounds[(codes[rows[i]] & 0xFF) + 1] += 1;
+		}
+		bounds[0] = from;
+		for (int k=0; k < nvalues; k++) {
+			bounds[k+1] += bounds[k];
+		}
+		// A stable counting sort, through a buffer
+		int[] next = Arrays.copyOf(bounds, nvalues);
+		int[] buffer = new int[to - from];
+		for (int i=from; i < to; i++) {
+			int row = rows[i];
+			buffer[next[codes[row] & 0xFF]++ - from] = row;
+		}
+		System.arraycopy(buffer, 0, rows, from, buffer.length);
+		RowSet[] parts = new RowSet[nvalues];
+		for (int k=0; k < nvalues; k++) {
+			parts[k] = new RowSet(dataset, rows, bounds[k], bounds[k+1], sorted);
+		}
+		if (nvalues > 1) {
+			this.sorted = false;
+		}
+		return parts;
+	}
+
+	/**
+	 * Split this RowSet by the values of its rows in the given numeric
+	 * column, and return a RowSet of those at most the given threshold and
+	 * one of the rest. The rows are reordered in place, as for partition.
+	 */
+	public RowSet[] partition(int column, double threshold) {
+		double[] values = dataset.getNumericColumn(column);
+		// Move the ones below down in place and the rest to a buffer
+		int[] buffer = new int[to - from];
+		int nbelow = from;
+		int nabove = 0;
+		for (int i=from; i < to; i++) {
+			int row = rows[i];
+			if (values[row] <= threshold) {
+				rows[nbelow++] = row;
+			} else {
+				buffer[nabove++] = row;
+			}
+		}
+		System.arraycopy(buffer, 0, rows, nbelow, nabove);
+		RowSet[] parts = new RowSet[] {
+			new RowSet(dataset, rows, from, nbelow, sorted),
+			new RowSet(dataset, rows, nbelow, to, sorted)
+		};
+		if (nbelow > from && nabove > 0) {
+			this.sorted = false;
+		}
+		return parts;
+	}
+
+	/**
+	 * Return a new RowSet with the rows of this one that have the given
+	 * code in the given (non-numeric) column, found by intersecting them
+	 * with the Dataset's InvertedIndex. This RowSet is left as it is.
+	 */
+	public RowSet filter(int column, int code) {
+		InvertedIndex index = dataset.getInvertedIndex();
+		if (sorted) {
+			return new RowSet(dataset, index.intersect(rows, from, to, column, code));
+		}
+		int[] copy = toRowArray();
+		Arrays.sort(copy);
+		return new RowSet(dataset, index.intersect(copy, 0, copy.length, column, code));
+	}
+
+}
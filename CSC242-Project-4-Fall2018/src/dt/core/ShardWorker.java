@@ -0,0 +1,252 @@
+package dt.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Serves the counts of one shard of the rows to a
+ * ShardedDecisionTreeLearner, which adds them up with those of the other
+ * shards. See ShardedDecisionTreeLearner for the protocol.
+ * <p>
+ * Run with a port (0 for any free one), the name of a Problem class with
+ * a public no-argument constructor, and the shard: a CSV file, as for
+ * Problem.readDatasetFromCSVFile, or the directory of a DiskDataset.
+ * It prints the port it's listening on and then serves coordinators one
+ * at a time until it's killed.
+ */
+public class ShardWorker {
+
+	protected Problem problem;
+	protected ColumnSource data;
+	protected OutOfCoreDecisionTreeLearner learner;
+	// The number of nodes in the level the rows are at, while serving a
+	// tree
+	protected int nnodes;
+
+	/**
+	 * Construct and return a new ShardWorker for the rows of the given
+	 * ColumnSource, which are examples for the given Problem.
+	 */
+	public ShardWorker(Problem problem, ColumnSource data) {
+		DiskDataset.checkProblem(problem);
+		this.problem = problem;
+		this.data = data;
+		// Only for its Nodes and LocalCounter
+		this.learner = new OutOfCoreDecisionTreeLearner(problem);
+	}
+
+	/**
+	 * Serve the coordinators that connect to the given ServerSocket, one
+	 * at a time, until it's closed. If serving one fails, the worker goes
+	 * on to the next.
+	 */
+	public void serve(ServerSocket server) throws IOException {
+		while (!server.isClosed()) {
+			try (Socket socket = server.accept()) {
+				serve(socket);
+			} catch (IOException | RuntimeException ex) {
+				if (server.isClosed()) {
+					break;
+				}
+				System.err.println("ShardWorker: " + ex);
+			}
+		}
+	}
+
+	/**
+	 * Serve the coordinator at the other end of the given Socket until it
+	 * says BYE, or until it sends a COUNT that doesn't fit.
+	 */
+	public void serve(Socket socket) throws IOException {
+		socket.setTcpNoDelay(true);
+		DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+		String error = hello(in);
+		if (error != null) {
+			out.writeByte(ShardedDecisionTreeLearner.ERROR);
+			out.writeUTF(error);
+			out.flush();
+			return;
+		}
+		out.writeByte(ShardedDecisionTreeLearner.OK);
+		out.writeInt(data.size());
+		out.flush();
+		OutOfCoreDecisionTreeLearner.LocalCounter counter = null;
+		while (true) {
+			int message = in.readByte();
+			if (message == ShardedDecisionTreeLearner.START) {
+				counter = learner.new LocalCounter(data);
+				nnodes = 1;
+			} else if (message == ShardedDecisionTreeLearner.COUNT && counter != null) {
+				boolean ok = count(counter, in, out);
+				out.flush();
+				if (!ok) {
+					return;
+				}
+			} else if (message == ShardedDecisionTreeLearner.BYE) {
+				return;
+			} else {
+				throw new IOException("unexpected message: " + message);
+			}
+		}
+	}
+
+	/**
+	 * Read a HELLO and return null if its Problem matches ours, with the
+	 * same variables and domain values in the same order, otherwise why
+	 * not.
+	 */
+	protected String hello(DataInputStream in) throws IOException {
+		if (in.readInt() != ShardedDecisionTreeLearner.MAGIC) {
+			throw new IOException("not a ShardedDecisionTreeLearner");
+		}
+		int version = in.readInt();
+		if (version != ShardedDecisionTreeLearner.VERSION) {
+			return "protocol version " + version + ", not " + ShardedDecisionTreeLearner.VERSION;
+		}
+		List<Variable> inputs = problem.getInputs();
+		int ninputs = in.readInt();
+		if (ninputs != inputs.size()) {
+			return ninputs + " inputs, not " + inputs.size();
+		}
+		List<Variable> vars = new ArrayList<Variable>(inputs);
+		vars.add(problem.getOutput());
+		for (Variable var : vars) {
+			String name = in.readUTF();
+			int nvalues = in.readInt();
+			if (!name.equals(var.getName()) || nvalues != var.domain.size()) {
+				return "variable " + name + " with " + nvalues + " values for " + var;
+			}
+			Domain domain = new Domain();
+			for (int k=0; k < nvalues; k++) {
+				domain.add(in.readUTF());
+			}
+			if (!MappedDecisionTree.sameValues(domain, var.domain)) {
+				return "variable " + name + " has values " + domain + ", not " + var.domain;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Read a COUNT (see ShardedDecisionTreeLearner.writeCount), count this
+	 * shard's rows with the given LocalCounter, and write back OK and the
+	 * CountTables and return true. If the COUNT doesn't fit the level the
+	 * rows are at, or the Problem, write back ERROR and a message instead
+	 * and return false, since the rest of it may not be what it seems.
+	 */
+	protected boolean count(OutOfCoreDecisionTreeLearner.LocalCounter counter, DataInputStream in, DataOutputStream out) throws IOException {
+		List<Variable> inputs = problem.getInputs();
+		OutOfCoreDecisionTreeLearner.Node[] previous = null;
+		int size = nnodes;
+		int nprevious = in.readInt();
+		if (nprevious >= 0) {
+			if (nprevious != nnodes) {
+				return error(out, nprevious + " nodes in the previous level, not " + nnodes);
+			}
+			// The children of the nodes that split are the next level, in order
+			size = 0;
+			previous = new OutOfCoreDecisionTreeLearner.Node[nprevious];
+			for (int i=0; i < nprevious; i++) {
+				previous[i] = learner.new Node(null, null, null, 0, 0);
+				int column = in.readInt();
+				int firstChild = in.readInt();
+				if (column < -1 || column >= inputs.size()) {
+					return error(out, "no column " + column);
+				}
+				if (column >= 0) {
+					if (firstChild != size) {
+						return error(out, "first child " + firstChild + ", not " + size);
+					}
+					size += inputs.get(column).domain.size();
+				}
+				previous[i].splitColumn = column;
+				previous[i].firstChild = firstChild;
+			}
+		} else if (nprevious != -1) {
+			return error(out, nprevious + " nodes in the previous level");
+		}
+		int from = in.readInt();
+		int to = in.readInt();
+		if (from < 0 || from > to || to > size) {
+			return error(out, "nodes " + from + " to " + to + " of " + size);
+		}
+		OutOfCoreDecisionTreeLearner.Node[] level = new OutOfCoreDecisionTreeLearner.Node[to];
+		for (int i=from; i < to; i++) {
+			int ncolumns = in.readInt();
+			if (ncolumns < -1 || ncolumns > inputs.size()) {
+				return error(out, ncolumns + " columns");
+			}
+			List<Variable> attributes = new ArrayList<Variable>();
+			int[] columns = new int[Math.max(ncolumns, 0)];
+			for (int a=0; a < columns.length; a++) {
+				columns[a] = in.readInt();
+				if (columns[a] < 0 || columns[a] >= inputs.size()) {
+					return error(out, "no column " + columns[a]);
+				}
+				attributes.add(inputs.get(columns[a]));
+			}
+			// Only whether a node has rows matters here
+			level[i] = learner.new Node(null, attributes, columns, 0, ncolumns < 0 ? 0 : 1);
+			level[i].table = new CountTable(attributes, problem.getOutput());
+		}
+		counter.count(previous, level, from, to);
+		nnodes = size;
+		out.writeByte(ShardedDecisionTreeLearner.OK);
+		for (int i=from; i < to; i++) {
+			CountTable table = level[i].table;
+			out.writeInt(table.total);
+			for (int ok=0; ok < table.outputCounts.length; ok++) {
+				out.writeInt(table.outputCounts[ok]);
+			}
+			out.writeInt(table.counts.length);
+			for (int count : table.counts) {
+				out.writeInt(count);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Write ERROR and the given message, and return false.
+	 */
+	protected static boolean error(DataOutputStream out, String message) throws IOException {
+		out.writeByte(ShardedDecisionTreeLearner.ERROR);
+		out.writeUTF(message);
+		return false;
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length != 3) {
+			System.err.println("usage: java dt.core.ShardWorker port problem-class shard.csv|shard-directory");
+			System.exit(1);
+		}
+		Problem problem;
+		try {
+			problem = (Problem)Class.forName(args[1]).getConstructor().newInstance();
+		} catch (ReflectiveOperationException ex) {
+			throw new IllegalArgumentException("can't make a " + args[1], ex);
+		}
+		File shard = new File(args[2]);
+		ColumnSource data;
+		if (shard.isDirectory()) {
+			data = DiskDataset.open(problem, shard);
+		} else {
+			data = problem.readDatasetFromCSVFile(shard);
+		}
+		try (ServerSocket server = new ServerSocket(Integer.parseInt(args[0]))) {
+			System.out.println("ShardWorker listening on port " + server.getLocalPort() + " with " + data.size() + " rows");
+			System.out.flush();
+			new ShardWorker(problem, data).serve(server);
+		}
+	}
+
+}
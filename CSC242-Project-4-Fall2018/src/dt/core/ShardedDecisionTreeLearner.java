@@ -0,0 +1,240 @@
+package dt.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An OutOfCoreDecisionTreeLearner whose rows are split into shards, each
+ * held by a ShardWorker in its own process (possibly on another host).
+ * The coordinator, this learner, never sees a row. For each level of the
+ * tree it sends every worker the splits of the level above and the
+ * attributes of the nodes to count; each worker moves and counts its own
+ * rows (with a LocalCounter) and sends back its CountTables, which the
+ * coordinator adds up and decides the nodes from. So the tree is the
+ * same as the one learned from all the rows in one place.
+ * <p>
+ * The protocol is over a socket to each worker, with DataOutputStream
+ * and DataInputStream. The coordinator starts with HELLO and the names
+ * and domain values of the Problem's variables, which the worker checks
+ * against its own, since codes only mean the same values if the domains
+ * are in the same order; the worker replies OK and its number of rows,
+ * or ERROR and a message. After that the coordinator sends START to
+ * begin a tree, COUNT for each pass over the rows (see
+ * LevelCounter.count), and BYE when it's done. The worker replies to a
+ * COUNT with OK and the CountTables, or with ERROR and a message if the
+ * COUNT doesn't fit the tree so far, after which it hangs up.
+ * A COUNT is sent to all the workers before any of their replies are
+ * read, so they count at the same time.
+ */
+public class ShardedDecisionTreeLearner extends OutOfCoreDecisionTreeLearner {
+
+	static final int MAGIC = 0x44547368;
+	static final int VERSION = 2;
+
+	static final int OK = 0;
+	static final int ERROR = 1;
+
+	static final int START = 1;
+	static final int COUNT = 2;
+	static final int BYE = 3;
+
+	/**
+	 * Construct and return a new ShardedDecisionTreeLearner for the given
+	 * Problem, which can't have NumericVariables.
+	 */
+	public ShardedDecisionTreeLearner(Problem problem) {
+		super(problem);
+		DiskDataset.checkProblem(problem);
+	}
+
+	/**
+	 * Compute and return a DecisionTree for this DecisionTreeLearner's
+	 * Problem using all the rows of the ShardWorkers at the given
+	 * addresses. Throws IOException if a worker can't be reached, has
+	 * a different Problem, or fails, or if there are more rows in all
+	 * than fit in an int.
+	 */
+	public DecisionTree learn(List<InetSocketAddress> workers) throws IOException {
+		List<Connection> connections = new ArrayList<Connection>();
+		try {
+			int nrows = 0;
+			for (InetSocketAddress address : workers) {
+				Connection connection = new Connection(address);
+				connections.add(connection);
+				int n = connection.hello();
+				if (n < 0 || n > Integer.MAX_VALUE - nrows) {
+					throw new IOException(address + ": " + n + " more rows are too many");
+				}
+				nrows += n;
+			}
+			for (Connection connection : connections) {
+				connection.out.writeByte(START);
+			}
+			return learn(new RemoteCounter(connections), nrows);
+		} finally {
+			for (Connection connection : connections) {
+				connection.close();
+			}
+		}
+	}
+
+	/**
+	 * A socket to a ShardWorker and the streams for its messages.
+	 */
+	protected class Connection {
+
+		protected InetSocketAddress address;
+		protected Socket socket;
+		protected DataOutputStream out;
+		protected DataInputStream in;
+
+		protected Connection(InetSocketAddress address) throws IOException {
+			this.address = address;
+			this.socket = new Socket(address.getAddress(), address.getPort());
+			socket.setTcpNoDelay(true);
+			this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+			this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+		}
+
+		/**
+		 * Send HELLO and return the worker's number of rows.
+		 */
+		protected int hello() throws IOException {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			List<Variable> inputs = problem.getInputs();
+			out.writeInt(inputs.size());
+			for (Variable var : inputs) {
+				writeVariable(out, var);
+			}
+			writeVariable(out, problem.getOutput());
+			out.flush();
+			checkReply();
+			return in.readInt();
+		}
+
+		protected void checkReply() throws IOException {
+			if (in.readByte() != OK) {
+				throw new IOException(address + ": " + in.readUTF());
+			}
+		}
+
+		protected void close() {
+			try {
+				out.writeByte(BYE);
+				out.flush();
+			} catch (IOException ex) {
+				// It's going anyway
+			}
+			try {
+				socket.close();
+			} catch (IOException ex) {
+				// Likewise
+			}
+		}
+
+	}
+
+	/**
+	 * A LevelCounter that has the ShardWorkers at the other end of the
+	 * given Connections count their rows and adds up their counts.
+	 */
+	protected class RemoteCounter implements LevelCounter {
+
+		protected List<Connection> connections;
+
+		protected RemoteCounter(List<Connection> connections) {
+			this.connections = connections;
+		}
+
+		public void count(Node[] previous, Node[] level, int from, int to) throws IOException {
+			for (Connection connection : connections) {
+				writeCount(connection.out, previous, level, from, to);
+				connection.out.flush();
+			}
+			for (Connection connection : connections) {
+				connection.checkReply();
+				for (int i=from; i < to; i++) {
+					readTable(connection, level[i].table);
+				}
+			}
+		}
+
+		/**
+		 * Read a CountTable from the given Connection and add it to the
+		 * given one. Throws IOException if it doesn't fit or a sum
+		 * overflows.
+		 */
+		protected void readTable(Connection connection, CountTable table) throws IOException {
+			DataInputStream in = connection.in;
+			try {
+				table.total = Math.addExact(table.total, in.readInt());
+				for (int ok=0; ok < table.outputCounts.length; ok++) {
+					table.outputCounts[ok] = Math.addExact(table.outputCounts[ok], in.readInt());
+				}
+				int n = in.readInt();
+				if (n != table.counts.length) {
+					throw new IOException(connection.address + ": " + n + " counts, not " + table.counts.length);
+				}
+				int[] counts = table.counts;
+				for (int j=0; j < n; j++) {
+					counts[j] = Math.addExact(counts[j], in.readInt());
+				}
+			} catch (ArithmeticException ex) {
+				throw new IOException(connection.address + ": counts add up to more than fit in an int", ex);
+			}
+		}
+
+	}
+
+	/**
+	 * Write the given Variable's name and domain values for a HELLO.
+	 */
+	protected static void writeVariable(DataOutputStream out, Variable var) throws IOException {
+		out.writeUTF(var.getName());
+		out.writeInt(var.domain.size());
+		for (int k=0; k < var.domain.size(); k++) {
+			out.writeUTF(var.domain.get(k));
+		}
+	}
+
+	/**
+	 * Write a COUNT message: the split column and first child of each
+	 * node of the previous level (or -1 if there isn't one to move rows
+	 * from), then the columns of the nodes from from up to to that have
+	 * rows.
+	 */
+	protected static void writeCount(DataOutputStream out, Node[] previous, Node[] level, int from, int to) throws IOException {
+		out.writeByte(COUNT);
+		if (previous == null) {
+			out.writeInt(-1);
+		} else {
+			out.writeInt(previous.length);
+			for (Node node : previous) {
+				out.writeInt(node.splitColumn);
+				out.writeInt(node.firstChild);
+			}
+		}
+		out.writeInt(from);
+		out.writeInt(to);
+		for (int i=from; i < to; i++) {
+			Node node = level[i];
+			if (node.nrows == 0) {
+				out.writeInt(-1);
+			} else {
+				out.writeInt(node.columns.length);
+				for (int c : node.columns) {
+					out.writeInt(c);
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,57 @@
+package dt.core;
+
+/**
+ * A SplitCriterion scores the ways of splitting a node's examples, from
+ * the counts of the examples by output value at the node and in each of
+ * its children, so the learners can choose the best one. The higher the
+ * score, the better the split. Counts are integers (sums of weights if
+ * the examples have any), and a criterion only ever sees counts.
+ * <p>
+ * Three are provided: INFORMATION_GAIN, the expected reduction in
+ * entropy (AIMA Sect. 18.3.4, the default everywhere), GAIN_RATIO, the
+ * information gain divided by the entropy of the split itself (as in
+ * C4.5), and GINI, the expected reduction in Gini impurity (as in CART).
+ * They are stateless, so one can be shared by any number of learners and
+ * threads.
+ * <p>
+ * Counts are given as noutputs consecutive elements of an array, starting
+ * at an offset, like in a CountTable or Histogram. For a split into
+ * nchildren children, child k's counts start at offset + k*noutputs.
+ */
+public interface SplitCriterion {
+
+	public static final SplitCriterion INFORMATION_GAIN = new InformationGain();
+	public static final SplitCriterion GAIN_RATIO = new GainRatio();
+	public static final SplitCriterion GINI = new GiniImpurity();
+
+	/**
+	 * Return the impurity of a node whose output counts are the noutputs
+	 * counts starting at the given offset in the given array, which sum
+	 * to n.
+	 */
+	public double impurity(int[] counts, int offset, int noutputs, int n);
+
+	/**
+	 * Return the score of splitting a node with the given impurity and n
+	 * examples into nchildren children, whose output counts are
+	 * counts[offset + k*noutputs + ok]. Children with no examples don't
+	 * count.
+	 */
+	public double score(double impurity, int[] counts, int offset, int nchildren, int noutputs, int n);
+
+	/**
+	 * Return the score of splitting a node with the given impurity into
+	 * two children, with output counts left and right summing to nleft
+	 * and nright (both more than 0).
+	 */
+	public double score(double impurity, int[] left, int nleft, int[] right, int nright);
+
+	/**
+	 * Return the greatest difference there can be between the scores of
+	 * two splits for an output with the given number of values, for
+	 * bounding the error of scores estimated from samples (see
+	 * AbstractDecisionTreeLearner.setSampleSize).
+	 */
+	public double range(int noutputs);
+
+}
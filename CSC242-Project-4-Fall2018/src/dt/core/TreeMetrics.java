@@ -0,0 +1,232 @@
+package dt.core;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A MetricsSink that adds up what it's told: the nodes and leaves built
+ * at each depth, the number of gains computed and the time spent choosing
+ * splits, the rows scanned and the bytes allocated for them, the largest
+ * nodes, the size of the last tree learned, and the number and depth of
+ * evaluations. Call dump to print it all.
+ * <p>
+ * One TreeMetrics can be given to several learners and trees, and it adds
+ * up all of them, until it's reset.
+ */
+public class TreeMetrics implements MetricsSink {
+
+	/**
+	 * By default, this many of the largest nodes are kept.
+	 */
+	public static final int DEFAULT_NUM_LARGEST = 10;
+
+	protected long[] nodesAtDepth = new long[8];
+	protected long[] leavesAtDepth = new long[8];
+	protected long splitSearches;
+	protected long gainEvaluations;
+	protected long splitNanos;
+	protected long maxSplitNanos;
+	protected long rowsScanned;
+	protected long bytesAllocated;
+	// The sizes and depths of the largest nodes, largest first
+	protected int[] largestSizes;
+	protected int[] largestDepths;
+	protected int nlargest;
+	protected long treesLearned;
+	protected long learnNanos;
+	protected int treeSize;
+	protected int treeLeaves;
+	protected int treeDepth;
+	protected AtomicLong evaluations = new AtomicLong();
+	protected AtomicLong evaluationTests = new AtomicLong();
+
+	/**
+	 * Construct and return a new TreeMetrics that keeps the given number
+	 * of the largest nodes.
+	 */
+	public TreeMetrics(int numLargest) {
+		this.largestSizes = new int[numLargest];
+		this.largestDepths = new int[numLargest];
+	}
+
+	/**
+	 * Construct and return a new TreeMetrics that keeps the
+	 * DEFAULT_NUM_LARGEST largest nodes.
+	 */
+	public TreeMetrics() {
+		this(DEFAULT_NUM_LARGEST);
+	}
+
+	public synchronized void nodeBuilt(int depth, int nexamples, boolean leaf) {
+		if (depth >= nodesAtDepth.length) {
+			int n = Math.max(depth+1, 2*nodesAtDepth.length);
+			nodesAtDepth = Arrays.copyOf(nodesAtDepth, n);
+			leavesAtDepth = Arrays.copyOf(leavesAtDepth, n);
+		}
+		nodesAtDepth[depth] += 1;
+		if (leaf) {
+			leavesAtDepth[depth] += 1;
+		}
+		// Insert it among the largest, if it's one of them
+		int i = nlargest;
+		if (i == largestSizes.length) {
+			if (i == 0 || nexamples <= largestSizes[i-1]) {
+				return;
+			}
+			i -= 1;
+		} else {
+			nlargest += 1;
+		}
+		while (i > 0 && largestSizes[i-1] < nexamples) {
+			largestSizes[i] = largestSizes[i-1];
+			largestDepths[i] = largestDepths[i-1];
+			i -= 1;
+		}
+		largestSizes[i] = nexamples;
+		largestDepths[i] = depth;
+	}
+
+	public synchronized void splitSearched(int nexamples, int ngains, long nanos) {
+		splitSearches += 1;
+		gainEvaluations += ngains;
+		splitNanos += nanos;
+		maxSplitNanos = Math.max(maxSplitNanos, nanos);
+	}
+
+	public synchronized void rowsScanned(long nrows, long nbytes) {
+		rowsScanned += nrows;
+		bytesAllocated += nbytes;
+	}
+
+	public synchronized void treeLearned(DecisionTree tree, long nanos) {
+		treesLearned += 1;
+		learnNanos += nanos;
+		treeSize = tree.size();
+		treeLeaves = tree.getNumLeaves();
+		treeDepth = tree.getDepth();
+	}
+
+	public void treeEvaluated(int depth) {
+		evaluations.incrementAndGet();
+		evaluationTests.addAndGet(depth);
+	}
+
+	/**
+	 * Forget everything, as if this TreeMetrics was new.
+	 */
+	public synchronized void reset() {
+		Arrays.fill(nodesAtDepth, 0);
+		Arrays.fill(leavesAtDepth, 0);
+		splitSearches = 0;
+		gainEvaluations = 0;
+		splitNanos = 0;
+		maxSplitNanos = 0;
+		rowsScanned = 0;
+		bytesAllocated = 0;
+		nlargest = 0;
+		treesLearned = 0;
+		learnNanos = 0;
+		treeSize = 0;
+		treeLeaves = 0;
+		treeDepth = 0;
+		evaluations.set(0);
+		evaluationTests.set(0);
+	}
+
+	/**
+	 * Return the number of nodes built at the given depth.
+	 */
+	public synchronized long getNodesAtDepth(int depth) {
+		return depth < nodesAtDepth.length ? nodesAtDepth[depth] : 0;
+	}
+
+	/**
+	 * Return the number of leaves built at the given depth.
+	 */
+	public synchronized long getLeavesAtDepth(int depth) {
+		return depth < leavesAtDepth.length ? leavesAtDepth[depth] : 0;
+	}
+
+	public synchronized long getNumSplitSearches() {
+		return splitSearches;
+	}
+
+	public synchronized long getNumGainEvaluations() {
+		return gainEvaluations;
+	}
+
+	public synchronized long getSplitNanos() {
+		return splitNanos;
+	}
+
+	public synchronized long getRowsScanned() {
+		return rowsScanned;
+	}
+
+	public synchronized long getBytesAllocated() {
+		return bytesAllocated;
+	}
+
+	/**
+	 * Return the numbers of examples of the largest nodes built, largest
+	 * first.
+	 */
+	public synchronized int[] getLargestNodes() {
+		return Arrays.copyOf(largestSizes, nlargest);
+	}
+
+	public synchronized long getNumTreesLearned() {
+		return treesLearned;
+	}
+
+	public synchronized long getLearnNanos() {
+		return learnNanos;
+	}
+
+	/**
+	 * Return the number of nodes of the last tree learned.
+	 */
+	public synchronized int getTreeSize() {
+		return treeSize;
+	}
+
+	public long getNumEvaluations() {
+		return evaluations.get();
+	}
+
+	/**
+	 * Return the mean number of tests per evaluation.
+	 */
+	public double getMeanEvaluationDepth() {
+		long n = evaluations.get();
+		return n == 0 ? 0 : (double)evaluationTests.get() / n;
+	}
+
+	/**
+	 * Dump these TreeMetrics to stdout.
+	 */
+	public synchronized void dump() {
+		if (treesLearned > 0) {
+			System.out.format("trees learned: %d in %.1f ms; last: %d nodes, %d leaves, depth %d%n",
+					treesLearned, learnNanos / 1e6, treeSize, treeLeaves, treeDepth);
+		}
+		System.out.println("depth\tnodes\tleaves");
+		for (int d=0; d < nodesAtDepth.length; d++) {
+			if (nodesAtDepth[d] > 0) {
+				System.out.println(d + "\t" + nodesAtDepth[d] + "\t" + leavesAtDepth[d]);
+			}
+		}
+		System.out.format("split searches: %d, %d gains, %.1f ms (max %.3f ms)%n",
+				splitSearches, gainEvaluations, splitNanos / 1e6, maxSplitNanos / 1e6);
+		System.out.format("rows scanned: %d, about %.1f MB allocated%n", rowsScanned, bytesAllocated / 1e6);
+		System.out.print("largest nodes (examples@depth):");
+		for (int i=0; i < nlargest; i++) {
+			System.out.print(" " + largestSizes[i] + "@" + largestDepths[i]);
+		}
+		System.out.println();
+		if (evaluations.get() > 0) {
+			System.out.format("evaluations: %d, %.2f tests each%n", evaluations.get(), getMeanEvaluationDepth());
+		}
+	}
+
+}
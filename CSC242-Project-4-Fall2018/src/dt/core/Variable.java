@@ -13,6 +13,14 @@ public class Variable {
 		this.domain = domain;
 	}
 	
+	public String getName() {
+		return name;
+	}
+	
+	public Domain getDomain() {
+		return domain;
+	}
+	
 	public String toString() {
 		return name;
 	}
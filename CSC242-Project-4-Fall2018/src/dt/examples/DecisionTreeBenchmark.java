@@ -0,0 +1,141 @@
+package dt.examples;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import dt.core.CompiledDecisionTree;
+import dt.core.Dataset;
+import dt.core.DecisionTree;
+import dt.core.DecisionTreeLearner;
+import dt.core.Domain;
+import dt.core.Example;
+import dt.core.GeneratedDecisionTree;
+import dt.core.NumericVariable;
+import dt.core.Problem;
+import dt.core.TreeMetrics;
+import dt.core.Variable;
+
+/**
+ * Compares the time it takes to evaluate a learned DecisionTree on every
+ * row of a Dataset with DecisionTree.eval, a CompiledDecisionTree, and a
+ * GeneratedDecisionTree. First it checks that all three give the same
+ * output for every row. The first passes include the JIT warming up,
+ * and later ones can be noisy, so at the end it prints the best time of
+ * each over all the passes. Which is fastest depends on the size of the
+ * tree, the JVM and the machine.
+ * <p>
+ * The examples are random, with an output that depends on some of the
+ * inputs plus some noise, so that the tree is fairly big. The
+ * TreeMetrics of learning it are printed first.
+ * <p>
+ * Run and pass the number of rows, the number of them to learn from,
+ * and the number of passes on cmd-line.
+ */
+public class DecisionTreeBenchmark {
+
+	public static void main(String[] args) {
+		int nrows = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+		int ntrain = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+		int npasses = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+		Problem problem = new BenchmarkProblem();
+		Dataset dataset = makeDataset(problem, nrows);
+		// Learn from some of the rows, so the tree isn't too big
+		Set<Example> training = new LinkedHashSet<Example>();
+		for (int row=0; row < Math.min(ntrain, nrows); row++) {
+			training.add(dataset.getExample(row));
+		}
+		DecisionTreeLearner learner = new DecisionTreeLearner(problem);
+		TreeMetrics metrics = new TreeMetrics();
+		learner.setMetrics(metrics);
+		DecisionTree tree = learner.learn(training);
+		metrics.dump();
+		CompiledDecisionTree compiled = tree.compile(problem);
+		long start = System.nanoTime();
+		GeneratedDecisionTree generated = new GeneratedDecisionTree(tree, problem);
+		System.out.format("tree: %d nodes, code generated: %s (%.1f ms)%n", compiled.size(),
+				generated.isGenerated() ? "yes" : "no, " + generated.getError(), (System.nanoTime() - start) / 1e6);
+		for (int row=0; row < nrows; row++) {
+			String value = tree.eval(dataset, row);
+			if (!value.equals(compiled.eval(dataset, row)) || !value.equals(generated.eval(dataset, row))) {
+				throw new IllegalStateException("eval, compiled and generated trees disagree on row " + row);
+			}
+		}
+		long[] best = { Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE };
+		for (int pass=0; pass < npasses; pass++) {
+			long t0 = System.nanoTime();
+			int a = 0;
+			for (int row=0; row < nrows; row++) {
+				a += tree.eval(dataset, row).length();
+			}
+			long t1 = System.nanoTime();
+			int b = 0;
+			for (int row=0; row < nrows; row++) {
+				b += compiled.evalCode(dataset, row);
+			}
+			long t2 = System.nanoTime();
+			int c = 0;
+			for (int row=0; row < nrows; row++) {
+				c += generated.evalCode(dataset, row);
+			}
+			long t3 = System.nanoTime();
+			best[0] = Math.min(best[0], t1 - t0);
+			best[1] = Math.min(best[1], t2 - t1);
+			best[2] = Math.min(best[2], t3 - t2);
+			System.out.format("pass %d: eval %.1f ns/row, compiled %.1f ns/row, generated %.1f ns/row (%d, %d)%n", pass,
+					(double)(t1 - t0) / nrows, (double)(t2 - t1) / nrows, (double)(t3 - t2) / nrows, a, b + c);
+		}
+		if (npasses > 0) {
+			System.out.format("best: eval %.1f ns/row, compiled %.1f ns/row, generated %.1f ns/row (%.2fx compiled)%n",
+					(double)best[0] / nrows, (double)best[1] / nrows, (double)best[2] / nrows, (double)best[1] / best[2]);
+		}
+	}
+
+	/**
+	 * Four NumericVariables and four Variables with three values each.
+	 */
+	static class BenchmarkProblem extends Problem {
+		public BenchmarkProblem() {
+			super();
+			for (int i=0; i < 4; i++) {
+				this.inputs.add(new NumericVariable("x" + i));
+			}
+			for (int i=0; i < 4; i++) {
+				this.inputs.add(new Variable("c" + i, new Domain("a", "b", "c")));
+			}
+			this.output = new Variable("y", new Domain("no", "yes"));
+		}
+	}
+
+	/**
+	 * Return a Dataset of the given number of random rows for the given
+	 * BenchmarkProblem.
+	 */
+	protected static Dataset makeDataset(Problem problem, int nrows) {
+		Random random = new Random(42);
+		List<Variable> inputs = problem.getInputs();
+		Dataset dataset = new Dataset(problem, nrows);
+		String[] values = new String[inputs.size() + 1];
+		for (int r=0; r < nrows; r++) {
+			double[] x = new double[4];
+			for (int i=0; i < 4; i++) {
+				x[i] = Math.round(random.nextGaussian() * 100) / 10.0;
+				values[i] = Double.toString(x[i]);
+			}
+			int[] k = new int[4];
+			for (int i=0; i < 4; i++) {
+				k[i] = random.nextInt(3);
+				values[4+i] = "abc".substring(k[i], k[i]+1);
+			}
+			boolean y = (x[0] + 0.5 * x[1] > 1) ^ (k[0] == 1) ^ (x[2] > 0 && k[1] == 2);
+			if (random.nextDouble() < 0.05) {
+				y = !y;
+			}
+			values[inputs.size()] = y ? "yes" : "no";
+			dataset.addRow(values);
+		}
+		return dataset;
+	}
+
+}
@@ -0,0 +1,76 @@
+package dt.examples;
+
+import java.util.Arrays;
+
+import dt.core.Dataset;
+import dt.core.DecisionTree;
+import dt.core.GradientBoostedTrees;
+import dt.core.GradientBoostingLearner;
+import dt.core.HistogramDecisionTreeLearner;
+import dt.core.Problem;
+import dt.core.RowSet;
+
+/**
+ * Learns GradientBoostedTrees from two thirds of some random examples
+ * like DecisionTreeBenchmark's, whose output has two values, and tests
+ * them on the rest. It learns them first with one thread and then with
+ * the given number, printing how long each took, their accuracy, and
+ * whether the two models give the same margins (they should). For
+ * comparison, it also learns and tests a single DecisionTree. The
+ * output depends on several inputs at once, so the trees need to be
+ * deeper than GradientBoostingLearner's default to do about as well.
+ * <p>
+ * Run and pass the number of rows, the number of rounds, the depth of
+ * the trees, and the number of threads on cmd-line.
+ */
+public class GradientBoostingExample {
+
+	public static void main(String[] args) {
+		int nrows = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+		int nrounds = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+		int depth = args.length > 2 ? Integer.parseInt(args[2]) : 6;
+		int nthreads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+		Problem problem = new DecisionTreeBenchmark.BenchmarkProblem();
+		Dataset dataset = DecisionTreeBenchmark.makeDataset(problem, nrows);
+		int ntrain = nrows * 2 / 3;
+		int[] training = new int[ntrain];
+		for (int i=0; i < ntrain; i++) {
+			training[i] = i;
+		}
+		double[] first = null;
+		for (int threads : new int[] { 1, nthreads }) {
+			GradientBoostingLearner learner = new GradientBoostingLearner(problem, threads);
+			learner.setNumRounds(nrounds);
+			learner.setMaxDepth(depth);
+			long start = System.nanoTime();
+			GradientBoostedTrees model = learner.learn(dataset, training.clone());
+			long nanos = System.nanoTime() - start;
+			double[] margins = new double[nrows - ntrain];
+			model.margins(dataset, ntrain, nrows, margins);
+			int ncorrect = 0;
+			for (int row=ntrain; row < nrows; row++) {
+				if (model.evalCode(dataset, row) == dataset.getOutputCode(row)) {
+					ncorrect += 1;
+				}
+			}
+			System.out.format("%d thread(s): %d trees, %d nodes, learned in %.1f ms, accuracy %.4f%n", threads,
+					model.getNumTrees(), model.size(), nanos / 1e6, (double)ncorrect / (nrows - ntrain));
+			if (first == null) {
+				first = margins;
+			} else {
+				System.out.println("same margins: " + Arrays.equals(first, margins));
+			}
+		}
+		HistogramDecisionTreeLearner learner = new HistogramDecisionTreeLearner(problem);
+		learner.setSignificance(0.01);
+		DecisionTree tree = learner.learn(new RowSet(dataset, training));
+		int ncorrect = 0;
+		for (int row=ntrain; row < nrows; row++) {
+			if (tree.eval(dataset, row).equals(dataset.getOutputValue(row))) {
+				ncorrect += 1;
+			}
+		}
+		System.out.format("single tree: %d nodes, accuracy %.4f%n", tree.size(), (double)ncorrect / (nrows - ntrain));
+	}
+
+}
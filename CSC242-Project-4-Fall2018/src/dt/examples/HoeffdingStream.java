@@ -0,0 +1,76 @@
+package dt.examples;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import dt.core.Example;
+import dt.core.HoeffdingTreeLearner;
+import dt.core.Problem;
+import dt.core.Variable;
+
+/**
+ * Learns a tree with a HoeffdingTreeLearner from a stream of random
+ * examples for the DecisionTreeBenchmark's problem, which are made up as
+ * they're needed and never kept, in batches of 1000. Every so often it
+ * prints the size of the tree and how well it does on the next examples
+ * of the stream, before learning from them.
+ * <p>
+ * Run and pass the number of examples on cmd-line.
+ */
+public class HoeffdingStream {
+
+	public static void main(String[] args) {
+		long nexamples = args.length > 0 ? Long.parseLong(args[0]) : 1000000;
+		Problem problem = new DecisionTreeBenchmark.BenchmarkProblem();
+		HoeffdingTreeLearner learner = new HoeffdingTreeLearner(problem);
+		Random random = new Random(42);
+		long start = System.nanoTime();
+		int batches = 0;
+		while (learner.getNumExamples() < nexamples) {
+			List<Example> batch = new ArrayList<Example>(1000);
+			for (int i=0; i < 1000; i++) {
+				batch.add(makeExample(problem, random));
+			}
+			if (++batches % 100 == 0) {
+				int ncorrect = 0;
+				for (Example e : batch) {
+					if (e.getOutputValue().equals(learner.eval(e))) {
+						ncorrect += 1;
+					}
+				}
+				System.out.format("%d examples: %d leaves (%d active), %.1f%% correct on the next %d%n",
+						learner.getNumExamples(), learner.getNumLeaves(), learner.getNumActiveLeaves(),
+						100.0 * ncorrect / batch.size(), batch.size());
+			}
+			learner.update(batch);
+		}
+		System.out.format("%.0f examples/s%n", learner.getNumExamples() / ((System.nanoTime() - start) / 1e9));
+	}
+
+	/**
+	 * Return a new random Example like the rows of
+	 * DecisionTreeBenchmark.makeDataset.
+	 */
+	protected static Example makeExample(Problem problem, Random random) {
+		List<Variable> inputs = problem.getInputs();
+		Example example = new Example();
+		double[] x = new double[4];
+		for (int i=0; i < 4; i++) {
+			x[i] = Math.round(random.nextGaussian() * 100) / 10.0;
+			example.setInputValue(inputs.get(i), Double.toString(x[i]));
+		}
+		int[] k = new int[4];
+		for (int i=0; i < 4; i++) {
+			k[i] = random.nextInt(3);
+			example.setInputValue(inputs.get(4+i), "abc".substring(k[i], k[i]+1));
+		}
+		boolean y = (x[0] + 0.5 * x[1] > 1) ^ (k[0] == 1) ^ (x[2] > 0 && k[1] == 2);
+		if (random.nextDouble() < 0.05) {
+			y = !y;
+		}
+		example.setOutputValue(y ? "yes" : "no");
+		return example;
+	}
+
+}
@@ -0,0 +1,51 @@
+package dt.examples;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Set;
+
+import dt.core.CrossValidator;
+import dt.core.Dataset;
+import dt.core.DecisionTree;
+import dt.core.DecisionTreeLearner;
+import dt.core.Example;
+import dt.core.Problem;
+import dt.core.SplitCriterion;
+
+/**
+ * Runs k-fold cross-validation experiments with a CrossValidator for the
+ * IrisNumericProblem, first with folds chosen at random and then with
+ * stratified folds, and then with stratified folds and each of the other
+ * SplitCriteria.
+ * <p>
+ * Run and pass dataset filename (iris.data.txt) and optionally k on
+ * cmd-line.
+ */
+public class IrisCrossValidation {
+
+	public static void main(String[] args) throws IOException {
+		final Problem problem = new IrisNumericProblem();
+		Dataset dataset = problem.readDatasetFromCSVFile(new File(args[0]));
+		int k = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+		CrossValidator validator = new CrossValidator(problem);
+		CrossValidator.Trainer trainer = CrossValidator.decisionTreeTrainer(problem);
+		System.out.println("random folds:");
+		validator.crossValidate(dataset, k, trainer).dump();
+		System.out.println();
+		System.out.println("stratified folds:");
+		validator.setStratified(true);
+		validator.crossValidate(dataset, k, trainer).dump();
+		for (final SplitCriterion criterion : new SplitCriterion[] { SplitCriterion.GAIN_RATIO, SplitCriterion.GINI }) {
+			System.out.println();
+			System.out.println("stratified folds, " + criterion + ":");
+			validator.crossValidate(dataset, k, new CrossValidator.Trainer() {
+				public DecisionTree train(Set<Example> examples) {
+					DecisionTreeLearner learner = new DecisionTreeLearner(problem);
+					learner.setSplitCriterion(criterion);
+					return learner.learn(examples);
+				}
+			}).dump();
+		}
+	}
+
+}
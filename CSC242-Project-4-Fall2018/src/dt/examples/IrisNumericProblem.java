@@ -0,0 +1,44 @@
+package dt.examples;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Set;
+
+import dt.core.DecisionTree;
+import dt.core.DecisionTreeLearner;
+import dt.core.Domain;
+import dt.core.Example;
+import dt.core.NumericVariable;
+import dt.core.Problem;
+import dt.core.Variable;
+
+/**
+ * The UCI Iris dataset with its original real-valued measurements,
+ * learned with threshold splits on NumericVariables, from file
+ * iris.data.txt (rather than the discretized iris.data.discrete.txt).
+ * <p>
+ * Run and pass dataset filename on cmd-line.
+ */
+public class IrisNumericProblem extends Problem {
+	
+	public IrisNumericProblem() {
+		super();
+		// Input variables
+		this.inputs.add(new NumericVariable("SepalLength"));
+		this.inputs.add(new NumericVariable("SepalWidth"));
+		this.inputs.add(new NumericVariable("PetalLength"));
+		this.inputs.add(new NumericVariable("PetalWidth"));
+		// Output variable
+		this.output = new Variable("Class", new Domain("Iris-setosa", "Iris-versicolor", "Iris-virginica"));
+	}
+	
+	public static void main(String[] args) throws IOException {
+		Problem problem = new IrisNumericProblem();
+		problem.dump();
+		Set<Example> examples = problem.readExamplesFromCSVFile(new File(args[0]));
+		DecisionTree tree = new DecisionTreeLearner(problem).learn(examples);
+		tree.dump();
+		tree.test(examples);
+	}
+
+}
@@ -0,0 +1,34 @@
+package dt.examples;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Set;
+
+import dt.core.Example;
+import dt.core.Problem;
+import dt.core.RandomForest;
+import dt.core.RandomForestLearner;
+
+/**
+ * Learns a RandomForest for the IrisNumericProblem and tests it on the
+ * same examples.
+ * <p>
+ * Run and pass dataset filename (iris.data.txt) and optionally the
+ * number of trees on cmd-line.
+ */
+public class IrisRandomForest {
+
+	public static void main(String[] args) throws IOException {
+		Problem problem = new IrisNumericProblem();
+		Set<Example> examples = problem.readExamplesFromCSVFile(new File(args[0]));
+		RandomForestLearner learner = new RandomForestLearner(problem);
+		if (args.length > 1) {
+			learner.setNumTrees(Integer.parseInt(args[1]));
+		}
+		RandomForest forest = learner.learn(examples);
+		System.out.println("trees: " + forest.size() + ", nodes: " + forest.compile().size());
+		forest.test(examples);
+		System.out.println();
+	}
+
+}
@@ -0,0 +1,59 @@
+package dt.examples;
+
+import dt.core.Dataset;
+import dt.core.DecisionTree;
+import dt.core.HistogramDecisionTreeLearner;
+import dt.core.LevelWiseDecisionTreeLearner;
+import dt.core.Problem;
+import dt.core.TreeMetrics;
+
+/**
+ * Learns a tree from random examples like DecisionTreeBenchmark's, with
+ * numeric and categorical inputs, first depth-first with a
+ * HistogramDecisionTreeLearner and then a level at a time with a
+ * LevelWiseDecisionTreeLearner, printing how long each took and its
+ * TreeMetrics. The trees should be the same.
+ * <p>
+ * Run and pass the number of rows and the number of passes on cmd-line.
+ */
+public class LevelWiseExample {
+
+	public static void main(String[] args) {
+		int nrows = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+		int npasses = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+		Problem problem = new DecisionTreeBenchmark.BenchmarkProblem();
+		Dataset dataset = DecisionTreeBenchmark.makeDataset(problem, nrows);
+		for (int pass=0; pass < npasses; pass++) {
+			System.out.println("pass " + pass + ":");
+			HistogramDecisionTreeLearner depthFirst = new HistogramDecisionTreeLearner(problem);
+			DecisionTree a = learn("depth-first", depthFirst, dataset);
+			HistogramDecisionTreeLearner levelWise = new LevelWiseDecisionTreeLearner(problem);
+			DecisionTree b = learn("level-wise", levelWise, dataset);
+			int nsame = 0;
+			for (int row=0; row < nrows; row++) {
+				if (a.eval(dataset, row).equals(b.eval(dataset, row))) {
+					nsame += 1;
+				}
+			}
+			System.out.format("same output on %d of %d rows (%d vs %d nodes)%n", nsame, nrows, a.size(), b.size());
+			System.out.println();
+		}
+	}
+
+	/**
+	 * Learn and return a tree from the given Dataset with the given
+	 * learner, printing how long it took and, on the last pass, its
+	 * TreeMetrics.
+	 */
+	protected static DecisionTree learn(String name, HistogramDecisionTreeLearner learner, Dataset dataset) {
+		TreeMetrics metrics = new TreeMetrics();
+		learner.setSignificance(0.01);
+		learner.setMetrics(metrics);
+		long start = System.nanoTime();
+		DecisionTree tree = learner.learn(dataset);
+		System.out.format("%s: %.1f ms%n", name, (System.nanoTime() - start) / 1e6);
+		metrics.dump();
+		return tree;
+	}
+
+}
@@ -0,0 +1,78 @@
+package dt.examples;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import dt.core.DecisionTree;
+import dt.core.DiskDataset;
+import dt.core.Domain;
+import dt.core.OutOfCoreDecisionTreeLearner;
+import dt.core.Problem;
+import dt.core.Variable;
+
+/**
+ * Writes a DiskDataset of random examples, with an output that depends
+ * on a few of the inputs plus some noise, to the given directory, then
+ * learns a tree from it with an OutOfCoreDecisionTreeLearner. Neither
+ * needs the examples to fit in memory: try more rows than would fit in
+ * the JVM's heap (with -Xmx).
+ * <p>
+ * Run and pass the directory and the number of rows on cmd-line.
+ */
+public class OutOfCoreExample {
+
+	public static void main(String[] args) throws IOException {
+		File directory = new File(args[0]);
+		int nrows = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+		Problem problem = new RandomProblem();
+		long start = System.nanoTime();
+		Random random = new Random(42);
+		try (DiskDataset.Writer writer = DiskDataset.create(problem, directory)) {
+			int[] codes = new int[problem.getInputs().size()];
+			for (int r=0; r < nrows; r++) {
+				int y = makeRow(random, codes);
+				writer.addRow(codes, y);
+			}
+		}
+		long written = System.nanoTime();
+		DiskDataset data = DiskDataset.open(problem, directory);
+		OutOfCoreDecisionTreeLearner learner = new OutOfCoreDecisionTreeLearner(problem);
+		learner.setSignificance(0.01);
+		DecisionTree tree = learner.learn(data);
+		long learned = System.nanoTime();
+		tree.dump();
+		System.out.format("%d rows: written in %.1f s, learned from in %.1f s%n", data.size(),
+				(written - start) / 1e9, (learned - written) / 1e9);
+	}
+
+	/**
+	 * Set the given input codes of a new random row and return its output
+	 * code.
+	 */
+	static int makeRow(Random random, int[] codes) {
+		for (int i=0; i < codes.length; i++) {
+			codes[i] = random.nextInt(4);
+		}
+		int y = (codes[0] + codes[1] * codes[2]) % 3 == 0 ? 1 : 0;
+		if (random.nextDouble() < 0.1) {
+			y = 1 - y;
+		}
+		return y;
+	}
+
+	/**
+	 * Twenty inputs with four values each and a yes/no output.
+	 */
+	public static class RandomProblem extends Problem {
+		public RandomProblem() {
+			super();
+			Domain domain = new Domain("a", "b", "c", "d");
+			for (int i=0; i < 20; i++) {
+				this.inputs.add(new Variable("x" + i, domain));
+			}
+			this.output = new Variable("y", new Domain("no", "yes"));
+		}
+	}
+
+}
@@ -0,0 +1,85 @@
+package dt.examples;
+
+import java.util.Random;
+
+import dt.core.Dataset;
+import dt.core.DecisionTree;
+import dt.core.DecisionTreeLearner;
+import dt.core.Problem;
+import dt.core.TreeMetrics;
+
+/**
+ * Learns trees from random examples like OutOfCoreExample's with a
+ * DecisionTreeLearner, first scoring the attributes at every node on all
+ * of its examples, and then on samples of the examples of the nodes that
+ * have more than a given number (see
+ * AbstractDecisionTreeLearner.setSampleSize). It first times choosing
+ * just the root's split both ways, then learns whole trees both ways,
+ * printing their TreeMetrics and how often they agree.
+ * <p>
+ * Run and pass the number of rows and optionally the sample size on
+ * cmd-line.
+ */
+public class SampledSplitExample {
+
+	public static void main(String[] args) {
+		int nrows = args.length > 0 ? Integer.parseInt(args[0]) : 10000000;
+		int sampleSize = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+		Problem problem = new OutOfCoreExample.RandomProblem();
+		Dataset dataset = new Dataset(problem, nrows);
+		Random random = new Random(42);
+		int[] codes = new int[problem.getInputs().size()];
+		for (int r=0; r < nrows; r++) {
+			int y = OutOfCoreExample.makeRow(random, codes);
+			dataset.addRow(codes, y);
+		}
+		for (int s : new int[] { 0, sampleSize }) {
+			TreeMetrics metrics = new TreeMetrics();
+			DecisionTreeLearner learner = newLearner(problem, s, metrics);
+			learner.setMaxDepth(1);
+			learner.learn(dataset);
+			System.out.format("root split %s: %.1f ms, %d rows scanned%n", s == 0 ? "exact" : "sampled",
+					metrics.getSplitNanos() / 1e6, metrics.getRowsScanned());
+		}
+		System.out.println();
+		System.out.println("exact:");
+		DecisionTree exact = learn(problem, dataset, 0);
+		System.out.println();
+		System.out.println("sampled (" + sampleSize + " examples):");
+		DecisionTree sampled = learn(problem, dataset, sampleSize);
+		int nsame = 0;
+		for (int row=0; row < nrows; row++) {
+			if (sampled.eval(dataset, row).equals(exact.eval(dataset, row))) {
+				nsame += 1;
+			}
+		}
+		System.out.println();
+		System.out.format("same output on %d of %d rows (%d vs %d nodes)%n",
+				nsame, nrows, sampled.size(), exact.size());
+	}
+
+	/**
+	 * Learn and return a tree from the given Dataset with the given
+	 * sample size (0 for none), printing how long it took and its
+	 * TreeMetrics.
+	 */
+	protected static DecisionTree learn(Problem problem, Dataset dataset, int sampleSize) {
+		TreeMetrics metrics = new TreeMetrics();
+		DecisionTree tree = newLearner(problem, sampleSize, metrics).learn(dataset);
+		metrics.dump();
+		return tree;
+	}
+
+	/**
+	 * Return a new DecisionTreeLearner for the given Problem with the
+	 * given sample size that tells the given TreeMetrics what it does.
+	 */
+	protected static DecisionTreeLearner newLearner(Problem problem, int sampleSize, TreeMetrics metrics) {
+		DecisionTreeLearner learner = new DecisionTreeLearner(problem);
+		learner.setSignificance(0.01);
+		learner.setSampleSize(sampleSize);
+		learner.setMetrics(metrics);
+		return learner;
+	}
+
+}
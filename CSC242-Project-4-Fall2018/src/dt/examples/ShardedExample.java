@@ -0,0 +1,139 @@
+package dt.examples;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import dt.core.Dataset;
+import dt.core.DecisionTree;
+import dt.core.DecisionTreeLearner;
+import dt.core.Problem;
+import dt.core.ShardWorker;
+import dt.core.ShardedDecisionTreeLearner;
+import dt.core.Variable;
+
+/**
+ * Splits random examples like OutOfCoreExample's into shards, one CSV
+ * file per shard in the given directory, and starts a ShardWorker process
+ * for each shard on this host, standing in for a cluster. It then learns
+ * a tree from all the shards with a ShardedDecisionTreeLearner, and
+ * checks that it's the same as the one a DecisionTreeLearner learns from
+ * all the examples in this process.
+ * <p>
+ * Run and pass the directory, the number of rows, and the number of
+ * shards on cmd-line.
+ */
+public class ShardedExample {
+
+	public static void main(String[] args) throws IOException {
+		File directory = new File(args[0]);
+		int nrows = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+		int nshards = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+		Problem problem = new OutOfCoreExample.RandomProblem();
+		Dataset dataset = new Dataset(problem, nrows);
+		List<File> shards = writeShards(problem, dataset, directory, nrows, nshards);
+		List<Process> workers = new ArrayList<Process>();
+		try {
+			List<InetSocketAddress> addresses = new ArrayList<InetSocketAddress>();
+			for (File shard : shards) {
+				Process worker = startWorker(problem, shard);
+				workers.add(worker);
+				addresses.add(new InetSocketAddress("localhost", readPort(worker)));
+			}
+			ShardedDecisionTreeLearner learner = new ShardedDecisionTreeLearner(problem);
+			learner.setSignificance(0.01);
+			long start = System.nanoTime();
+			DecisionTree sharded = learner.learn(addresses);
+			long learned = System.nanoTime();
+			sharded.dump();
+			System.out.format("%d rows in %d shards: learned from in %.1f s%n", nrows, nshards, (learned - start) / 1e9);
+			DecisionTreeLearner local = new DecisionTreeLearner(problem);
+			local.setSignificance(0.01);
+			DecisionTree tree = local.learn(dataset.getExamples());
+			int nsame = 0;
+			for (int row=0; row < nrows; row++) {
+				if (sharded.eval(dataset, row).equals(tree.eval(dataset, row))) {
+					nsame += 1;
+				}
+			}
+			System.out.format("same output as the tree learned in one process on %d of %d rows (%d vs %d nodes)%n",
+					nsame, nrows, sharded.compile(problem).size(), tree.compile(problem).size());
+		} finally {
+			for (Process worker : workers) {
+				worker.destroy();
+			}
+		}
+	}
+
+	/**
+	 * Add nrows random rows to the given Dataset, and write them to
+	 * nshards CSV files in the given directory, a row to each in turn.
+	 * Return the files.
+	 */
+	protected static List<File> writeShards(Problem problem, Dataset dataset, File directory, int nrows, int nshards) throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("can't create directory " + directory);
+		}
+		List<File> shards = new ArrayList<File>();
+		PrintWriter[] writers = new PrintWriter[nshards];
+		try {
+			for (int s=0; s < nshards; s++) {
+				File shard = new File(directory, "shard" + s + ".csv");
+				shards.add(shard);
+				writers[s] = new PrintWriter(new FileWriter(shard));
+			}
+			List<Variable> inputs = problem.getInputs();
+			Random random = new Random(42);
+			int[] codes = new int[inputs.size()];
+			for (int r=0; r < nrows; r++) {
+				int y = OutOfCoreExample.makeRow(random, codes);
+				dataset.addRow(codes, y);
+				StringBuilder line = new StringBuilder();
+				for (int i=0; i < codes.length; i++) {
+					line.append(inputs.get(i).getDomain().get(codes[i])).append(',');
+				}
+				line.append(problem.getOutput().getDomain().get(y));
+				writers[r % nshards].println(line);
+			}
+		} finally {
+			for (PrintWriter writer : writers) {
+				if (writer != null) {
+					writer.close();
+				}
+			}
+		}
+		return shards;
+	}
+
+	/**
+	 * Start a ShardWorker for the given shard in a new JVM with our
+	 * classpath, on any free port.
+	 */
+	protected static Process startWorker(Problem problem, File shard) throws IOException {
+		String java = new File(new File(System.getProperty("java.home"), "bin"), "java").getPath();
+		ProcessBuilder builder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+				ShardWorker.class.getName(), "0", problem.getClass().getName(), shard.getPath());
+		builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+		return builder.start();
+	}
+
+	/**
+	 * Return the port the given ShardWorker says it's listening on.
+	 */
+	protected static int readPort(Process worker) throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(worker.getInputStream()));
+		String line = reader.readLine();
+		if (line == null || !line.startsWith("ShardWorker listening on port ")) {
+			throw new IOException("ShardWorker didn't start: " + line);
+		}
+		return Integer.parseInt(line.split(" ")[4]);
+	}
+
+}
@@ -12,6 +12,8 @@ import java.util.*;
  * A Set implementation backed by an ArrayList.
  * This is good for more or less immutable sets, but isn't part of
  * standard Java.
+ * Note that add() and contains() scan the whole list, so for big sets
+ * use IndexedArraySet instead.
  */
 public class ArraySet<E> extends AbstractSet<E> {
 
@@ -0,0 +1,193 @@
+package dt.util;
+import java.util.*;
+
+/**
+ * An ArraySet with a hash index over its backing list, so that
+ * contains() and add() take constant time rather than a linear scan.
+ * It keeps the insertion order and get(int) of ArraySet.
+ * <p>
+ * The index is an open-addressing (linear probing) table of positions
+ * in the backing list, so it costs one int per slot and no objects
+ * per element.
+ * <p>
+ * In identity mode, elements are compared with == and hashed with
+ * System.identityHashCode, like an IdentityHashMap. That's what you want
+ * for sets of objects that are never equal to anything but themselves
+ * anyway, and it saves calling their equals and hashCode methods.
+ */
+public class IndexedArraySet<E> extends ArraySet<E> {
+
+	protected boolean identity;
+	// Positions in elements plus one; zero means the slot is empty
+	protected int[] table;
+	protected int mask;
+
+	/**
+	 * Construct and return a new IndexedArraySet with the given initial
+	 * capacity, comparing elements by identity if identity is true and
+	 * by equals() otherwise.
+	 */
+	public IndexedArraySet(int initialCapacity, boolean identity) {
+		super(initialCapacity);
+		this.identity = identity;
+		allocateTable(initialCapacity);
+	}
+
+	/**
+	 * Construct and return a new IndexedArraySet with some default initial
+	 * capacity, comparing elements by identity if identity is true and
+	 * by equals() otherwise.
+	 */
+	public IndexedArraySet(boolean identity) {
+		this(10, identity);
+	}
+
+	/**
+	 * Construct and return a new IndexedArraySet with some default initial
+	 * capacity that compares elements by equals().
+	 */
+	public IndexedArraySet() {
+		this(false);
+	}
+
+	/**
+	 * Construct and return a new IndexedArraySet containing the elements
+	 * of the given collection, comparing elements by identity if identity
+	 * is true and by equals() otherwise.
+	 */
+	public IndexedArraySet(Collection<? extends E> c, boolean identity) {
+		this(c.size(), identity);
+		for (E e : c) {
+			add(e);
+		}
+	}
+
+	protected void allocateTable(int capacity) {
+		int n = 16;
+		while (n < 2*capacity) {
+			n <<= 1;
+		}
+		table = new int[n];
+		mask = n - 1;
+	}
+
+	protected int hash(Object o) {
+		int h;
+		if (o == null) {
+			h = 0;
+		} else if (identity) {
+			h = System.identityHashCode(o);
+		} else {
+			h = o.hashCode();
+		}
+		h *= 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	protected boolean same(Object o, Object e) {
+		if (identity) {
+			return o == e;
+		} else {
+			return o == null ? e == null : o.equals(e);
+		}
+	}
+
+	/**
+	 * Return the slot in the index for the given object: either the
+	 * one that refers to it or the empty one where it would go.
+	 */
+	protected int slot(Object o) {
+		int i = hash(o) & mask;
+		while (table[i] != 0 && !same(o, elements.get(table[i]-1))) {
+			i = (i + 1) & mask;
+		}
+		return i;
+	}
+
+	/**
+	 * Returns true if this IndexedArraySet contains the given object.
+	 */
+	@Override
+	public boolean contains(Object o) {
+		return table[slot(o)] != 0;
+	}
+
+	/**
+	 * Adds the specified element to this IndexedArraySet if it is not already present.
+	 * Returns true if the element was added, else false.
+	 */
+	@Override
+	public boolean add(E e) {
+		int i = slot(e);
+		if (table[i] != 0) {
+			return false;
+		}
+		elements.add(e);
+		table[i] = elements.size();
+		if (2*elements.size() > table.length) {
+			rehash();
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the position of the given object in this IndexedArraySet,
+	 * or -1 if it isn't there.
+	 */
+	public int indexOf(Object o) {
+		return table[slot(o)] - 1;
+	}
+
+	/**
+	 * Removes the given object from this IndexedArraySet if it is present.
+	 * This has to shift the elements after it, so it is not cheap.
+	 */
+	@Override
+	public boolean remove(Object o) {
+		int index = indexOf(o);
+		if (index < 0) {
+			return false;
+		}
+		elements.remove(index);
+		rehash();
+		return true;
+	}
+
+	@Override
+	public void clear() {
+		elements.clear();
+		Arrays.fill(table, 0);
+	}
+
+	/**
+	 * Returns an iterator over the elements in this IndexedArraySet.
+	 * Its remove method keeps the index up to date.
+	 */
+	@Override
+	public Iterator<E> iterator() {
+		final Iterator<E> iter = elements.iterator();
+		return new Iterator<E>() {
+			public boolean hasNext() {
+				return iter.hasNext();
+			}
+			public E next() {
+				return iter.next();
+			}
+			public void remove() {
+				iter.remove();
+				rehash();
+			}
+		};
+	}
+
+	/**
+	 * Rebuild the index from the backing list.
+	 */
+	protected void rehash() {
+		allocateTable(elements.size());
+		for (int index=0; index < elements.size(); index++) {
+			table[slot(elements.get(index))] = index + 1;
+		}
+	}
+
+}
@@ -0,0 +1,66 @@
+package dt.util;
+
+/**
+ * Sorting routines for primitive arrays that java.util.Arrays doesn't
+ * have, so that we don't have to box everything to use a Comparator.
+ */
+public class Sorting {
+
+	private static final int INSERTION_SORT_THRESHOLD = 16;
+
+	/**
+	 * Sort the given range of the given array of indexes into increasing
+	 * order of their keys, keys[indexes[i]]. The sort is not stable.
+	 * The keys must not be NaN, which isn't less than, equal to, or
+	 * greater than anything.
+	 */
+	static public void sortByKey(int[] indexes, int from, int to, double[] keys) {
+		while (to - from > INSERTION_SORT_THRESHOLD) {
+			// Median of three as pivot
+			int mid = (from + to) >>> 1;
+			double a = keys[indexes[from]];
+			double b = keys[indexes[mid]];
+			double c = keys[indexes[to-1]];
+			double pivot = a < b ? (b < c ? b : (a < c ? c : a)) : (a < c ? a : (b < c ? c : b));
+			// Three-way partition: [from,lt) < pivot, [lt,i) == pivot, (gt,to) > pivot
+			int lt = from;
+			int gt = to - 1;
+			int i = from;
+			while (i <= gt) {
+				double k = keys[indexes[i]];
+				if (k < pivot) {
+					swap(indexes, lt++, i++);
+				} else if (k > pivot) {
+					swap(indexes, i, gt--);
+				} else {
+					i++;
+				}
+			}
+			// Recurse on the smaller part and loop on the larger
+			if (lt - from < to - gt - 1) {
+				sortByKey(indexes, from, lt, keys);
+				from = gt + 1;
+			} else {
+				sortByKey(indexes, gt + 1, to, keys);
+				to = lt;
+			}
+		}
+		for (int i=from+1; i < to; i++) {
+			int x = indexes[i];
+			double k = keys[x];
+			int j = i - 1;
+			while (j >= from && keys[indexes[j]] > k) {
+				indexes[j+1] = indexes[j];
+				j--;
+			}
+			indexes[j+1] = x;
+		}
+	}
+
+	private static void swap(int[] a, int i, int j) {
+		int t = a[i];
+		a[i] = a[j];
+		a[j] = t;
+	}
+
+}